@@ -0,0 +1,145 @@
+package org.example;
+
+import org.example.sistema_de_arquivos.SistemaArquivos;
+import org.example.sistema_de_arquivos.TabelaUsuarios;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// Modo servidor: várias sessões do terminal ao mesmo tempo numa porta TCP local, uma virtual thread por conexão
+// Todas as sessões dividem o mesmo SistemaArquivos (árvore, índices, cache, journal);
+// cada uma tem o seu diretório atual, usuário logado e histórico (SistemaArquivos.abrirSessao)
+//
+// Protocolo: texto em UTF-8, uma linha por comando. O servidor pede o usuário ("login: "; vazio = user)
+// e depois responde cada comando seguido do prompt ("/caminho$ "), como o terminal local
+// Não há senha: o login como root é recusado, e os comandos que usam o disco do host ou trocam a árvore
+// de todas as sessões ficam desligados (Terminal.restringirSessaoRemota)
+public class ServidorTerminal implements AutoCloseable {
+    // Conexões esperando o accept: muitos clientes podem conectar de uma vez (o sistema operacional pode limitar a menos)
+    private static final int FILA_CONEXOES = 16 * 1024;
+    private static final int TAMANHO_BUFFER = 1024;
+    private static final long ESPERA_ENCERRAMENTO_SEGUNDOS = 10;
+    private static final Pattern PADRAO_USUARIO = Pattern.compile("^[a-z_][a-z0-9_-]{0,31}$");
+
+    private final SistemaArquivos sistemaArquivos;
+    private final ServerSocket servidor;
+    private final ExecutorService sessoes = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicInteger sessoesAbertas = new AtomicInteger();
+    private final AtomicLong totalSessoes = new AtomicLong();
+
+    // porta = 0: o sistema escolhe uma livre (veja getPorta)
+    public ServidorTerminal(SistemaArquivos sistemaArquivos, int porta) throws IOException {
+        this.sistemaArquivos = sistemaArquivos;
+        // Só aceita conexões da própria máquina (além disso, save/load/import/export ficam desligados nas sessões)
+        this.servidor = new ServerSocket(porta, FILA_CONEXOES, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPorta() {
+        return servidor.getLocalPort();
+    }
+
+    public int getSessoesAbertas() {
+        return sessoesAbertas.get();
+    }
+
+    public long getTotalSessoes() {
+        return totalSessoes.get();
+    }
+
+    // Aceita conexões até o close (bloqueia a thread que chamou)
+    public void atender() {
+        while (!servidor.isClosed()) {
+            Socket conexao;
+            try {
+                conexao = servidor.accept();
+            } catch (IOException e) {
+                if (servidor.isClosed()) return; // close() chamado
+                System.err.println("Erro no accept: " + e.getMessage());
+                continue;
+            }
+            sessoes.submit(() -> atenderSessao(conexao));
+        }
+    }
+
+    private void atenderSessao(Socket conexao) {
+        sessoesAbertas.incrementAndGet();
+        totalSessoes.incrementAndGet();
+        try (conexao) {
+            // Respostas pequenas: sem Nagle, o prompt sai na hora
+            conexao.setTcpNoDelay(true);
+            // Buffers pequenos: com milhares de sessões abertas, os 8 KB padrão de cada um somariam centenas de MB
+            BufferedReader leitor = new BufferedReader(new InputStreamReader(conexao.getInputStream(), StandardCharsets.UTF_8), TAMANHO_BUFFER);
+            PrintStream saida = new PrintStream(new BufferedOutputStream(conexao.getOutputStream(), TAMANHO_BUFFER), false, StandardCharsets.UTF_8);
+
+            saida.print("login: ");
+            saida.flush();
+            String usuario = leitor.readLine();
+            if (usuario == null) return;
+            usuario = usuario.trim().isEmpty() ? "user" : usuario.trim();
+            if (!PADRAO_USUARIO.matcher(usuario).matches()) {
+                saida.println("Erro: Nome de usuário inválido: '" + usuario + "'.");
+                saida.flush();
+                return;
+            }
+            // Sem senha, root daria todas as permissões a qualquer conexão
+            if (usuario.equals(TabelaUsuarios.nomeDe(TabelaUsuarios.ROOT))) {
+                saida.println("Erro: Login como root não é permitido no servidor.");
+                saida.flush();
+                return;
+            }
+
+            new Terminal(sistemaArquivos.abrirSessao(usuario), leitor, saida).restringirSessaoRemota().iniciarSessao();
+        } catch (IOException e) {
+            // Cliente desconectou no meio: só esta sessão termina
+        } finally {
+            sessoesAbertas.decrementAndGet();
+        }
+    }
+
+    // Para de aceitar conexões e interrompe as sessões abertas (o sistema de arquivos não é encerrado aqui)
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+        sessoes.shutdownNow();
+    }
+
+    // Espera as sessões interrompidas terminarem o comando em andamento (a espera do fsync não é interrompida)
+    public boolean aguardarSessoes(long segundos) throws InterruptedException {
+        return sessoes.awaitTermination(segundos, TimeUnit.SECONDS);
+    }
+
+    // Roda o servidor até o processo terminar (Ctrl+C fecha o servidor e o sistema de arquivos)
+    public static void executar(SistemaArquivos fs, int porta) throws IOException {
+        ServidorTerminal servidor = new ServidorTerminal(fs, porta);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                servidor.close();
+                // Uma sessão no meio de uma operação ainda vai registrá-la: o journal só fecha depois
+                if (!servidor.aguardarSessoes(ESPERA_ENCERRAMENTO_SEGUNDOS)) {
+                    System.err.println("Sessões ainda em andamento após " + ESPERA_ENCERRAMENTO_SEGUNDOS + " s: encerrando assim mesmo.");
+                }
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o servidor: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            fs.encerrar(); // O que foi confirmado às sessões já está no journal
+        }));
+        System.out.println("Servidor do simulador ouvindo em " + servidor.servidor.getInetAddress().getHostAddress() + ":" + servidor.getPorta());
+        servidor.atender();
+    }
+}
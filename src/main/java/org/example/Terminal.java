@@ -4,20 +4,50 @@ import org.example.comandos.Comandos;
 import org.example.comandos.CommandExecutor;
 import org.example.sistema_de_arquivos.SistemaArquivos;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Terminal {
 
+    // Conteúdo entre aspas ou sequências sem espaço (compilado uma vez: cada sessão do servidor interpreta muitos comandos)
+    private static final Pattern PADRAO_TOKEN = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+    private static final int TAMANHO_BUFFER_SCRIPT = 64 * 1024;
+    // Desligados nas sessões do servidor: leem/gravam qualquer caminho do disco do host com os direitos do processo
+    // do servidor (save, load, import, export) ou trocam a árvore de todas as sessões (load, rollback)
+    private static final List<String> COMANDOS_SO_LOCAIS = List.of("save", "load", "import", "export", "rollback");
+
     private SistemaArquivos sistemaArquivos;
     private Map<String, CommandExecutor> mapaComandos;
     private Comandos implementacao;
     private boolean executando;
 
+    // De onde vêm os comandos e para onde vão as respostas (teclado/tela, ou a conexão de uma sessão do servidor)
+    private final BufferedReader leitor;
+    private final PrintStream saida;
+
     public Terminal() {
-        this.sistemaArquivos = new SistemaArquivos();
-        this.implementacao = new Comandos();
+        this(new SistemaArquivos());
+    }
+
+    public Terminal(SistemaArquivos sistemaArquivos) {
+        this(sistemaArquivos, new BufferedReader(new InputStreamReader(System.in)), System.out);
+    }
+
+    public Terminal(SistemaArquivos sistemaArquivos, BufferedReader leitor, PrintStream saida) {
+        this.sistemaArquivos = sistemaArquivos;
+        this.leitor = leitor;
+        this.saida = saida;
+        this.implementacao = new Comandos(saida);
         this.mapaComandos = new HashMap<>();
         this.executando = true;
         inicializarComandos();
@@ -94,6 +124,7 @@ public class Terminal {
         // Busca e Filtagem
         mapaComandos.put("find", implementacao::find);
         mapaComandos.put("grep", implementacao::grep);
+        mapaComandos.put("grep-index", implementacao::grepIndex);
 
         // Permissões e Propriedades
         mapaComandos.put("chmod", implementacao::chmod);
@@ -104,44 +135,113 @@ public class Terminal {
         mapaComandos.put("mv", implementacao::mv);
         mapaComandos.put("zip", implementacao::zip);
         mapaComandos.put("unzip", implementacao::unzip);
+        mapaComandos.put("import", implementacao::importar);
+        mapaComandos.put("export", implementacao::exportar);
+        mapaComandos.put("snapshot", implementacao::snapshot);
+        mapaComandos.put("snapshots", implementacao::snapshots);
+        mapaComandos.put("rollback", implementacao::rollback);
 
         // Outros
         mapaComandos.put("clear", implementacao::clear);
+        mapaComandos.put("cache-stats", implementacao::cacheStats);
+        mapaComandos.put("dedup-stats", implementacao::dedupStats);
+        mapaComandos.put("paralelismo", implementacao::paralelismo);
+        mapaComandos.put("save", implementacao::save);
+        mapaComandos.put("load", implementacao::load);
+        mapaComandos.put("checkpoint", implementacao::checkpoint);
+        mapaComandos.put("journal", implementacao::journal);
         mapaComandos.put("help", (fs, args) -> {
-            System.out.println("Comandos disponíveis: " + mapaComandos.keySet());
+            saida.println("Comandos disponíveis: " + mapaComandos.keySet());
         });
         mapaComandos.put("exit", (fs, args) -> {
             this.executando = false;
-            System.out.println("Encerrando simulação...");
+            saida.println("Encerrando simulação...");
         });
 
     }
 
+    // Sessão do servidor: os COMANDOS_SO_LOCAIS respondem com erro em vez de executar
+    public Terminal restringirSessaoRemota() {
+        for (String comando : COMANDOS_SO_LOCAIS) {
+            mapaComandos.put(comando, (fs, args) -> implementacao.indisponivel(comando, "nas sessões do servidor"));
+        }
+        return this;
+    }
+
+    // Terminal local: no fim, encerra o sistema de arquivos (journal, pools)
     public void iniciar() {
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("=== Simulador de Terminal Linux ===");
-        System.out.println("Digite 'help' para ver comandos ou 'exit' para sair.");
+        iniciarSessao();
+        sistemaArquivos.encerrar();
+    }
+
+    // Sessão do servidor: o sistema de arquivos continua aberto para as outras sessões
+    public void iniciarSessao() {
+        saida.println("=== Simulador de Terminal Linux ===");
+        saida.println("Digite 'help' para ver comandos ou 'exit' para sair.");
 
         while (executando) {
             // Prompt: /caminho/atual$
-            System.out.print(sistemaArquivos.getCaminhoCompleto() + "$ ");
+            saida.print(sistemaArquivos.getCaminhoCompleto() + "$ ");
+            saida.flush();
 
-            String entrada = scanner.nextLine();
+            String entrada;
+            try {
+                entrada = leitor.readLine();
+            } catch (IOException e) {
+                break; // Conexão caiu
+            }
+            if (entrada == null) break; // Fim da entrada
             if (entrada.trim().isEmpty()) continue;
 
+            // Enquanto esperava o comando, outra sessão pode ter removido o diretório atual ou trocado a árvore (rollback, load)
+            sistemaArquivos.sincronizarSessao();
+
             // 1. Registrar no Histórico
             sistemaArquivos.registrarComando(entrada);
 
             // 2. Interpretar
             processarEntrada(entrada);
         }
-        scanner.close();
+        saida.flush();
     }
 
-    private void processarEntrada(String entrada) {
+    // Modo script (--script <arquivo> ou --batch): executa os comandos de 'leitor' sem prompt nem boas-vindas
+    // A saída vai para 'destino', que deve ter um buffer grande: só é descarregada quando enche, no fim ou num erro com set -e
+    // Linhas vazias e comentários (#) são ignorados; "set -e" para o script no primeiro comando que falhar ("set +e" desliga)
+    // Devolve 0, ou 1 se o script foi interrompido pelo set -e
+    public static int executarScript(SistemaArquivos fs, BufferedReader leitor, PrintStream destino) throws IOException {
+        Terminal terminal = new Terminal(fs, leitor, destino);
+
+        boolean pararNoErro = false;
+        int numeroLinha = 0;
+        String entrada;
+        while (terminal.executando && (entrada = leitor.readLine()) != null) {
+            numeroLinha++;
+            String linha = entrada.trim();
+            if (linha.isEmpty() || linha.startsWith("#")) continue;
+            if (linha.equals("set -e") || linha.equals("set +e")) {
+                pararNoErro = linha.equals("set -e");
+                continue;
+            }
+
+            fs.sincronizarSessao();
+            fs.registrarComando(entrada);
+            // O set -e olha o status do comando, e não o texto da resposta (que pode ser o conteúdo de um arquivo)
+            if (!terminal.processarEntrada(entrada) && pararNoErro) {
+                destino.flush();
+                System.err.println("Script interrompido na linha " + numeroLinha + " (set -e): " + linha);
+                return 1;
+            }
+        }
+        destino.flush();
+        return 0;
+    }
+
+    // Devolve false se o comando falhou (não existe, uso incorreto, erro do sistema de arquivos ou exceção)
+    private boolean processarEntrada(String entrada) {
         // 1. Captura: Conteúdo entre aspas ou sequências sem espaço
         List<String> tokens = new ArrayList<>();
-        Matcher m = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(entrada);
+        Matcher m = PADRAO_TOKEN.matcher(entrada);
 
         while (m.find()) {
             String token = m.group(1);
@@ -152,7 +252,7 @@ public class Terminal {
             tokens.add(token);
         }
 
-        if (tokens.isEmpty()) return;
+        if (tokens.isEmpty()) return true;
 
         // 2. Separação
         String comando = tokens.getFirst();
@@ -160,19 +260,81 @@ public class Terminal {
 
         // 3. Execução
         CommandExecutor executor = mapaComandos.get(comando);
-        if (executor != null) {
+        if (executor == null) {
+            saida.println(comando + ": comando não encontrado");
+            return false;
+        }
+        // Descarta uma falha que tenha ficado marcada fora de um comando (ex: na inicialização do sistema)
+        implementacao.consumirFalha(sistemaArquivos);
+        try {
+            executor.executar(sistemaArquivos, args);
+        } catch (Exception e) {
+            saida.println("Erro inesperado: " + e.getMessage());
+            e.printStackTrace();
+            implementacao.consumirFalha(sistemaArquivos);
+            return false;
+        }
+        return !implementacao.consumirFalha(sistemaArquivos);
+    }
+
+    // Uso: Terminal [--snapshot <arquivo>] [--dados <diretorio>] [--servidor <porta> | --script <arquivo> | --batch]
+    // --snapshot: inicia a partir de um snapshot salvo com save
+    // --dados: persistência (snapshot + journal) nesse diretório do host, com recuperação na inicialização
+    // --servidor: em vez do terminal local, aceita várias sessões por TCP nessa porta (só conexões locais)
+    // --script / --batch: executa os comandos de um arquivo do host / da entrada padrão, sem prompt (veja executarScript)
+    public static void main(String[] args) throws IOException {
+        SistemaArquivos fs = null;
+        Integer portaServidor = null;
+        String script = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--batch")) {
+                script = "-";
+                continue;
+            }
+            if (i + 1 == args.length) break; // Opção sem valor
+            String valor = args[++i];
+            if (args[i - 1].equals("--servidor")) {
+                portaServidor = Integer.parseInt(valor);
+                continue;
+            }
+            if (args[i - 1].equals("--script")) {
+                script = valor;
+                continue;
+            }
             try {
-                executor.executar(sistemaArquivos, args);
-            } catch (Exception e) {
-                System.out.println("Erro inesperado: " + e.getMessage());
-                e.printStackTrace();
+                long inicio = System.nanoTime();
+                if (args[i - 1].equals("--snapshot")) {
+                    fs = SistemaArquivos.abrirSnapshot(valor);
+                    System.out.printf("Snapshot '%s' aberto em %.1f ms.%n", valor, (System.nanoTime() - inicio) / 1_000_000.0);
+                } else if (args[i - 1].equals("--dados")) {
+                    fs = SistemaArquivos.abrirComDados(valor);
+                    System.out.println(fs.getResumoRecuperacao());
+                }
+            } catch (IOException e) {
+                System.out.println("Erro ao abrir '" + valor + "': " + e.getMessage() + " (iniciando com a estrutura padrão)");
             }
-        } else {
-            System.out.println(comando + ": comando não encontrado");
         }
+        if (fs == null) fs = new SistemaArquivos();
+        if (portaServidor != null) ServidorTerminal.executar(fs, portaServidor);
+        else if (script != null) System.exit(executarScript(fs, script));
+        else new Terminal(fs).iniciar();
     }
 
-    public static void main(String[] args) {
-        new Terminal().iniciar();
+    // "-" = entrada padrão; devolve o código de saída do processo
+    private static int executarScript(SistemaArquivos fs, String script) {
+        // Saída direto no descritor, com um buffer grande: o System.out descarrega a cada linha
+        PrintStream destino = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), TAMANHO_BUFFER_SCRIPT),
+                false, System.out.charset());
+        try (BufferedReader leitor = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(script))) {
+            return executarScript(fs, leitor, destino);
+        } catch (IOException e) {
+            destino.flush();
+            System.err.println("Erro ao ler o script '" + script + "': " + e.getMessage());
+            return 1;
+        } finally {
+            fs.encerrar();
+        }
     }
-}
\ No newline at end of file
+}
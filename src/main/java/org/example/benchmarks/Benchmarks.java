@@ -0,0 +1,923 @@
+package org.example.benchmarks;
+
+import org.example.ServidorTerminal;
+import org.example.Terminal;
+import org.example.sistema_de_arquivos.Arquivo;
+import org.example.sistema_de_arquivos.Compactador;
+import org.example.sistema_de_arquivos.Diretorio;
+import org.example.sistema_de_arquivos.Journal;
+import org.example.sistema_de_arquivos.NoSistema;
+import org.example.sistema_de_arquivos.SistemaArquivos;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Medições simples de desempenho do simulador (executar com: java org.example.benchmarks.Benchmarks <cenario> [tamanho])
+public class Benchmarks {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Uso: Benchmarks <cenario> [tamanho]");
+            System.out.println("Cenários: find, percurso, ls, memoria, inicializacao, journal, rle, rle-formatos, rle-paralelo (tamanho em MB), zip, cp, versoes, dedup, concorrencia (tamanho = operações por thread), leituras, servidor (tamanho = máximo de sessões), script (tamanho = comandos)");
+            return;
+        }
+
+        int tamanho = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        switch (args[0]) {
+            case "find":
+                benchmarkFind(tamanho);
+                break;
+            case "percurso":
+                benchmarkPercurso(tamanho);
+                break;
+            case "ls":
+                benchmarkLs(tamanho);
+                break;
+            case "memoria":
+                benchmarkMemoria(tamanho);
+                break;
+            case "inicializacao":
+                benchmarkInicializacao(tamanho);
+                break;
+            case "journal":
+                benchmarkJournal(tamanho);
+                break;
+            case "rle":
+                benchmarkRle(args.length > 1 ? tamanho : 2048);
+                break;
+            case "rle-formatos":
+                benchmarkFormatosRle(args.length > 1 ? tamanho : 256);
+                break;
+            case "cp":
+                benchmarkCp(tamanho);
+                break;
+            case "zip":
+                benchmarkZip(tamanho);
+                break;
+            case "versoes":
+                benchmarkVersoes(tamanho);
+                break;
+            case "dedup":
+                benchmarkDedup(args.length > 1 ? tamanho : 10_000);
+                break;
+            case "concorrencia":
+                benchmarkConcorrencia(args.length > 1 ? tamanho : 20_000);
+                break;
+            case "leituras":
+                benchmarkLeituras(args.length > 1 ? tamanho : 20_000);
+                break;
+            case "servidor":
+                benchmarkServidor(args.length > 1 ? tamanho : 10_000);
+                break;
+            case "script":
+                benchmarkScript(args.length > 1 ? tamanho : 20_000);
+                break;
+            case "rle-paralelo":
+                benchmarkRleParalelo(args.length > 1 ? tamanho : 1024);
+                break;
+            default:
+                System.out.println("Cenário desconhecido: " + args[0]);
+        }
+    }
+
+    // Monta uma árvore sintética em /bench com aproximadamente 'totalNos' nós
+    // Estrutura: /bench/dI/sJ/arquivo_K.txt (10 subdiretórios por diretório, 10 arquivos por subdiretório)
+    static SistemaArquivos criarArvore(int totalNos) {
+        return criarArvore(totalNos, 0);
+    }
+
+    // Mesma árvore, com 'linhasPorArquivo' linhas de texto em cada arquivo
+    static SistemaArquivos criarArvore(int totalNos, int linhasPorArquivo) {
+        SistemaArquivos fs = new SistemaArquivos();
+        fs.mkdir("/bench");
+        int criados = 0;
+        for (int i = 0; criados < totalNos; i++) {
+            String dir = "/bench/d" + i;
+            fs.mkdir(dir);
+            criados++;
+            for (int j = 0; j < 10 && criados < totalNos; j++) {
+                String sub = dir + "/s" + j;
+                fs.mkdir(sub);
+                criados++;
+                for (int k = 0; k < 10 && criados < totalNos; k++) {
+                    String arquivo = sub + "/arquivo_" + k + ".txt";
+                    fs.touch(arquivo);
+                    for (int l = 0; l < linhasPorArquivo; l++) {
+                        fs.escreverNoArquivo(arquivo, "linha " + l + " do arquivo " + arquivo, true);
+                    }
+                    criados++;
+                }
+            }
+        }
+        return fs;
+    }
+
+    // Tempo médio de uma execução, em milissegundos (com aquecimento antes da medição)
+    static double medirMs(int repeticoes, Runnable tarefa) {
+        for (int i = 0; i < Math.max(1, repeticoes / 5); i++) tarefa.run();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < repeticoes; i++) tarefa.run();
+        return (System.nanoTime() - inicio) / 1_000_000.0 / repeticoes;
+    }
+
+    // FIND: índice de nomes x varredura recursiva da subárvore
+    static void benchmarkFind(int totalNos) {
+        SistemaArquivos fs = criarArvore(totalNos);
+        System.out.println("Árvore com ~" + totalNos + " nós em /bench");
+
+        String[] nomes = {"arquivo_3.txt", "s7", "nao_existe"};
+        for (String nome : nomes) {
+            String porIndice = fs.find("/bench", nome);
+            String porVarredura = fs.findPorVarredura("/bench", nome);
+            int linhas = porIndice.isEmpty() ? 0 : porIndice.split("\n").length;
+            boolean mesmoResultado = linhas == (porVarredura.isEmpty() ? 0 : porVarredura.split("\n").length);
+
+            double msIndice = medirMs(20, () -> fs.find("/bench", nome));
+            double msVarredura = medirMs(20, () -> fs.findPorVarredura("/bench", nome));
+
+            System.out.printf("find -name %-14s | %6d resultados | índice: %8.3f ms | varredura: %8.3f ms | %5.1fx | resultados iguais: %s%n",
+                    nome, linhas, msIndice, msVarredura, msVarredura / Math.max(msIndice, 0.0001), mesmoResultado);
+        }
+    }
+
+    // PERCURSO: tree, du, find (varredura), cp e zip com o motor de percurso de 1 até N threads
+    static void benchmarkPercurso(int totalNos) {
+        SistemaArquivos fs = criarArvore(totalNos, 20);
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        System.out.println("Árvore com ~" + totalNos + " nós em /bench (20 linhas por arquivo) | núcleos disponíveis: " + nucleos);
+
+        List<Integer> niveis = new ArrayList<>();
+        for (int p = 1; p < nucleos; p *= 2) niveis.add(p);
+        niveis.add(nucleos);
+        if (nucleos == 1) niveis.add(4); // Mesmo sem núcleos extras, mostra o custo das tarefas do ForkJoinPool
+
+        double[] base = null;
+        for (int paralelismo : niveis) {
+            fs.setParalelismo(paralelismo);
+            double[] tempos = {
+                    medirMs(5, () -> fs.tree("/bench", false)),
+                    medirMs(5, () -> fs.du("/bench")),
+                    medirMs(5, () -> fs.findPorVarredura("/bench", "arquivo_3.txt")),
+                    medirMs(5, () -> {
+                        fs.cp("/bench", "/tmp");
+                        fs.rm("/tmp/bench", true);
+                    }),
+                    medirMs(3, () -> {
+                        fs.zip("/tmp/bench.zip", "/bench");
+                        fs.rm("/tmp/bench.zip", false);
+                    })
+            };
+            if (base == null) base = tempos;
+            System.out.printf("threads %2d | tree %8.2f ms | du %7.2f ms | find %7.2f ms | cp %8.2f ms | zip %8.2f ms | speedup zip %.2fx%n",
+                    paralelismo, tempos[0], tempos[1], tempos[2], tempos[3], tempos[4], base[4] / tempos[4]);
+        }
+    }
+
+    // LS: listagem completa e paginada de um único diretório com 'totalFilhos' entradas
+    static void benchmarkLs(int totalFilhos) {
+        SistemaArquivos fs = new SistemaArquivos();
+        fs.mkdir("/grande");
+        for (int i = 0; i < totalFilhos; i++) {
+            fs.touch("/grande/arquivo_" + i);
+        }
+        System.out.println("Diretório com " + totalFilhos + " entradas em /grande");
+
+        double msCompleto = medirMs(10, () -> fs.ls("/grande", false, false));
+        double msInicio = medirMs(200, () -> fs.ls("/grande", false, false, 0, 50));
+        double msMeio = medirMs(50, () -> fs.ls("/grande", false, false, totalFilhos / 2, 50));
+        double msTree = medirMs(10, () -> fs.tree("/grande", false));
+
+        System.out.printf("ls completo %8.3f ms | página inicial (50) %7.3f ms | página no meio (50) %7.3f ms | tree %8.3f ms%n",
+                msCompleto, msInicio, msMeio, msTree);
+    }
+
+    // Heap ocupado depois de forçar a coleta (várias vezes, para estabilizar a medição)
+    static long memoriaUsada() {
+        Runtime rt = Runtime.getRuntime();
+        long anterior = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long usada = rt.totalMemory() - rt.freeMemory();
+            if (usada >= anterior) return usada;
+            anterior = usada;
+        }
+        return anterior;
+    }
+
+    // MEMÓRIA: bytes de heap por nó da árvore, logo após a criação e depois de chmod/chown em todos os arquivos
+    // (executar com -Xmx alto o bastante para a árvore, ex: -Xmx2g)
+    static void benchmarkMemoria(int totalNos) {
+        long antes = memoriaUsada();
+        SistemaArquivos fs = criarArvore(totalNos);
+        long depoisCriacao = memoriaUsada();
+
+        String[] donos = {"ana", "bruno", "carla"};
+        int criados = 0;
+        for (int i = 0; criados < totalNos; i++) {
+            criados++;
+            for (int j = 0; j < 10 && criados < totalNos; j++) {
+                criados++;
+                for (int k = 0; k < 10 && criados < totalNos; k++) {
+                    String arquivo = "/bench/d" + i + "/s" + j + "/arquivo_" + k + ".txt";
+                    fs.chmod("640", arquivo);
+                    fs.chown(donos[k % donos.length], arquivo);
+                    criados++;
+                }
+            }
+        }
+        long depoisMetadados = memoriaUsada();
+
+        System.out.printf("Árvore com ~%d nós em /bench%n", totalNos);
+        System.out.printf("após criação:      %6.1f bytes por nó%n", (depoisCriacao - antes) / (double) totalNos);
+        System.out.printf("após chmod/chown:  %6.1f bytes por nó%n", (depoisMetadados - antes) / (double) totalNos);
+        if (fs.getDiretorioAtual() == null) System.out.println(); // Mantém a árvore viva até aqui
+    }
+
+    // INICIALIZAÇÃO: abrir um snapshot (mapeado, nós sob demanda) x ler a árvore inteira x recriar a árvore do zero
+    static void benchmarkInicializacao(int maiorTamanho) {
+        try {
+            Path arquivo = Files.createTempFile("bench", ".snap");
+            for (int totalNos = Math.max(1000, maiorTamanho / 100); totalNos <= maiorTamanho; totalNos *= 10) {
+                long inicio = System.nanoTime();
+                SistemaArquivos original = criarArvore(totalNos, 5);
+                double msCriacao = (System.nanoTime() - inicio) / 1_000_000.0;
+                original.salvarSnapshot(arquivo.toString());
+                original = null;
+
+                String caminho = arquivo.toString();
+                double msAbrir = medirMs(5, () -> abrir(caminho));
+                double msPrimeiroLs = medirMs(5, () -> abrir(caminho).ls("/bench/d0/s0", false, false));
+                double msCompleto = medirMs(3, () -> abrir(caminho).du("/")); // du lê todos os diretórios
+                double msConteudo = medirMs(3, () -> abrir(caminho).grepRecursivo("linha 3", "/bench"));
+
+                System.out.printf("%8d nós | %9d bytes | abrir %7.2f ms | abrir + ls %7.2f ms | abrir + du (todos os diretórios) %8.2f ms | abrir + grep -r (todo o conteúdo) %8.2f ms | recriar do zero %9.2f ms%n",
+                        totalNos, Files.size(arquivo), msAbrir, msPrimeiroLs, msCompleto, msConteudo, msCriacao);
+            }
+            Files.deleteIfExists(arquivo);
+        } catch (IOException e) {
+            System.out.println("Erro no benchmark: " + e.getMessage());
+        }
+    }
+
+    private static SistemaArquivos abrir(String caminho) {
+        try {
+            return SistemaArquivos.abrirSnapshot(caminho);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // JOURNAL: operações confirmadas por segundo com commit em grupo x fsync por operação, de 1 a 32 threads escrevendo
+    // e o tempo de recuperação (reaplicar o journal) em função da quantidade de registros
+    static void benchmarkJournal(int totalOperacoes) {
+        try {
+            Path arquivo = Files.createTempFile("bench", ".journal");
+            for (int threads : new int[]{1, 4, 16, 32}) {
+                for (boolean emGrupo : new boolean[]{false, true}) {
+                    Files.write(arquivo, new byte[0]);
+                    int porThread = Math.max(1, Math.min(totalOperacoes, 2000) / threads);
+                    double segundos;
+                    String estatisticas;
+                    try (Journal journal = new Journal(arquivo, 0, emGrupo)) {
+                        List<Thread> escritores = new ArrayList<>();
+                        long inicio = System.nanoTime();
+                        for (int t = 0; t < threads; t++) {
+                            int id = t;
+                            Thread escritor = new Thread(() -> {
+                                for (int i = 0; i < porThread; i++) {
+                                    long seq = journal.registrar(Journal.MKDIR, "user", "/", List.of("/bench/t" + id + "_" + i));
+                                    journal.aguardar(seq);
+                                }
+                            });
+                            escritores.add(escritor);
+                            escritor.start();
+                        }
+                        for (Thread escritor : escritores) escritor.join();
+                        segundos = (System.nanoTime() - inicio) / 1e9;
+                        estatisticas = journal.estatisticas().lines().skip(1).findFirst().orElse("").trim();
+                    }
+                    System.out.printf("threads %2d | %-16s | %9.0f ops/s | %s%n", threads,
+                            emGrupo ? "commit em grupo" : "fsync por op", threads * porThread / segundos, estatisticas);
+                }
+            }
+
+            // Recuperação: diretório de dados só com journal (sem snapshot), reaplicado na inicialização
+            Path dados = Files.createTempDirectory("bench-dados");
+            for (int registros = Math.max(100, totalOperacoes / 100); registros <= totalOperacoes; registros *= 10) {
+                Files.deleteIfExists(dados.resolve("snapshot.bin"));
+                try (Journal journal = new Journal(dados.resolve("journal.log"), 0, true)) {
+                    journal.truncar(Long.MAX_VALUE);
+                    long seq = 0;
+                    for (int i = 0; i < registros; i++) {
+                        seq = journal.registrar(Journal.MKDIR, "user", "/tmp", List.of("d" + i));
+                    }
+                    journal.aguardar(seq);
+                }
+                long inicio = System.nanoTime();
+                SistemaArquivos fs = SistemaArquivos.abrirComDados(dados.toString());
+                double msRecuperacao = (System.nanoTime() - inicio) / 1_000_000.0;
+                inicio = System.nanoTime();
+                fs.checkpoint();
+                double msCheckpoint = (System.nanoTime() - inicio) / 1_000_000.0;
+                fs.encerrar();
+                inicio = System.nanoTime();
+                SistemaArquivos.abrirComDados(dados.toString()).encerrar();
+                double msAposCheckpoint = (System.nanoTime() - inicio) / 1_000_000.0;
+                System.out.printf("recuperação com %7d registros: %8.1f ms | checkpoint %7.1f ms | recuperação após checkpoint %6.1f ms%n",
+                        registros, msRecuperacao, msCheckpoint, msAposCheckpoint);
+            }
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Erro no benchmark: " + e.getMessage());
+        }
+    }
+
+    // RLE: MB/s do Compactador em blocos (formato 1) x a versão original byte a byte
+    // A versão byte a byte faz uma chamada ao sistema por byte, então é medida só num trecho de até 16 MB
+    static void benchmarkRle(int megabytes) {
+        try {
+            File origem = Files.createTempFile("bench", ".bin").toFile();
+            File trecho = Files.createTempFile("bench", ".bin").toFile();
+            File zip = Files.createTempFile("bench", ".rle").toFile();
+            File zipReferencia = Files.createTempFile("bench", ".rle").toFile();
+            File saida = Files.createTempFile("bench", ".out").toFile();
+
+            gerarDadosRle(origem.toPath(), (long) megabytes << 20);
+            gerarDadosRle(trecho.toPath(), (long) Math.min(megabytes, 16) << 20);
+
+            double mbOrigem = origem.length() / (1024.0 * 1024.0);
+            double mbTrecho = trecho.length() / (1024.0 * 1024.0);
+
+            long inicio = System.nanoTime();
+            Compactador.compactarV1(origem, zip);
+            double sCompactar = (System.nanoTime() - inicio) / 1e9;
+            inicio = System.nanoTime();
+            Compactador.descompactar(zip, saida);
+            double sDescompactar = (System.nanoTime() - inicio) / 1e9;
+            boolean ok = Files.mismatch(saida.toPath(), origem.toPath()) == -1;
+            System.out.printf("em blocos    | %8.1f MB -> %8.1f MB | compactar %8.1f MB/s | descompactar %8.1f MB/s (da saída) | conteúdo confere: %s%n",
+                    mbOrigem, zip.length() / (1024.0 * 1024.0), mbOrigem / sCompactar, mbOrigem / sDescompactar, ok);
+
+            inicio = System.nanoTime();
+            Compactador.compactarPorByte(trecho, zipReferencia);
+            sCompactar = (System.nanoTime() - inicio) / 1e9;
+            inicio = System.nanoTime();
+            Compactador.descompactarPorByte(zipReferencia, saida);
+            sDescompactar = (System.nanoTime() - inicio) / 1e9;
+            System.out.printf("byte a byte  | %8.1f MB -> %8.1f MB | compactar %8.1f MB/s | descompactar %8.1f MB/s (da saída)%n",
+                    mbTrecho, zipReferencia.length() / (1024.0 * 1024.0), mbTrecho / sCompactar, mbTrecho / sDescompactar);
+
+            // Mesmo formato: as duas versões precisam gerar exatamente os mesmos bytes
+            Compactador.compactarV1(trecho, zip);
+            System.out.println("mesma saída nas duas versões: " + (Files.mismatch(zip.toPath(), zipReferencia.toPath()) == -1));
+
+            for (File arquivo : new File[]{origem, trecho, zip, zipReferencia, saida}) Files.deleteIfExists(arquivo.toPath());
+        } catch (IOException e) {
+            System.out.println("Erro no benchmark: " + e.getMessage());
+        }
+    }
+
+    // Mistura sequências longas (bem compactáveis) com trechos de bytes variados, gerada em blocos de 1 MB
+    private static void gerarDadosRle(Path destino, long tamanho) throws IOException {
+        Random aleatorio = new Random(42);
+        byte[] bloco = new byte[1 << 20];
+        try (var out = Files.newOutputStream(destino)) {
+            for (long gerados = 0; gerados < tamanho; gerados += bloco.length) {
+                int i = 0;
+                while (i < bloco.length) {
+                    int tamanhoSequencia = aleatorio.nextInt(4) == 0 ? 1 + aleatorio.nextInt(600) : 1;
+                    byte valor = (byte) ('a' + aleatorio.nextInt(26));
+                    for (int r = 0; r < tamanhoSequencia && i < bloco.length; r++) bloco[i++] = valor;
+                }
+                out.write(bloco, 0, (int) Math.min(bloco.length, tamanho - gerados));
+            }
+        }
+    }
+
+    // RLE: taxa de compressão e MB/s do formato 1 ([Quantidade][Byte]) x formato 2 (literais e repetições)
+    // em texto, binário sem repetições e dados muito repetitivos
+    static void benchmarkFormatosRle(int megabytes) {
+        try {
+            long tamanho = (long) megabytes << 20;
+            File origem = Files.createTempFile("bench", ".bin").toFile();
+            File zip = Files.createTempFile("bench", ".rle").toFile();
+            File saida = Files.createTempFile("bench", ".out").toFile();
+
+            for (String corpus : new String[]{"texto", "binário", "repetitivo"}) {
+                switch (corpus) {
+                    case "texto" -> gerarTexto(origem.toPath(), tamanho);
+                    case "binário" -> gerarBinario(origem.toPath(), tamanho);
+                    default -> gerarDadosRle(origem.toPath(), tamanho);
+                }
+                double mb = origem.length() / (1024.0 * 1024.0);
+
+                for (int formato = 1; formato <= 2; formato++) {
+                    long inicio = System.nanoTime();
+                    if (formato == 1) Compactador.compactarV1(origem, zip);
+                    else Compactador.compactar(origem, zip);
+                    double sCompactar = (System.nanoTime() - inicio) / 1e9;
+                    inicio = System.nanoTime();
+                    Compactador.descompactar(zip, saida);
+                    double sDescompactar = (System.nanoTime() - inicio) / 1e9;
+                    boolean ok = Files.mismatch(saida.toPath(), origem.toPath()) == -1;
+
+                    System.out.printf("%-10s | formato %d | %7.1f MB -> %7.1f MB (%6.1f%%) | compactar %7.1f MB/s | descompactar %7.1f MB/s | conteúdo confere: %s%n",
+                            corpus, formato, mb, zip.length() / (1024.0 * 1024.0), 100.0 * zip.length() / origem.length(),
+                            mb / sCompactar, mb / sDescompactar, ok);
+                }
+            }
+
+            for (File arquivo : new File[]{origem, zip, saida}) Files.deleteIfExists(arquivo.toPath());
+        } catch (IOException e) {
+            System.out.println("Erro no benchmark: " + e.getMessage());
+        }
+    }
+
+    // Texto com palavras e espaços (quase nenhuma sequência de 3 bytes iguais)
+    private static void gerarTexto(Path destino, long tamanho) throws IOException {
+        String[] palavras = {"arquivo", "diretorio", "sistema", "usuario", "permissao", "conteudo", "simulador",
+                "terminal", "comando", "caminho", "linha", "de", "o", "a", "para", "com", "um", "dados"};
+        Random aleatorio = new Random(42);
+        StringBuilder bloco = new StringBuilder(1 << 20);
+        try (var out = Files.newOutputStream(destino)) {
+            for (long gerados = 0; gerados < tamanho; ) {
+                bloco.setLength(0);
+                while (bloco.length() < (1 << 20)) {
+                    bloco.append(palavras[aleatorio.nextInt(palavras.length)]);
+                    bloco.append(aleatorio.nextInt(12) == 0 ? ".\n" : " ");
+                }
+                byte[] bytes = bloco.toString().getBytes(StandardCharsets.UTF_8);
+                int gravar = (int) Math.min(bytes.length, tamanho - gerados);
+                out.write(bytes, 0, gravar);
+                gerados += gravar;
+            }
+        }
+    }
+
+    // Bytes aleatórios (como dados já comprimidos ou criptografados)
+    private static void gerarBinario(Path destino, long tamanho) throws IOException {
+        Random aleatorio = new Random(42);
+        byte[] bloco = new byte[1 << 20];
+        try (var out = Files.newOutputStream(destino)) {
+            for (long gerados = 0; gerados < tamanho; gerados += bloco.length) {
+                aleatorio.nextBytes(bloco);
+                out.write(bloco, 0, (int) Math.min(bloco.length, tamanho - gerados));
+            }
+        }
+    }
+
+    // RLE em blocos independentes (formato 3) com 1..N threads x o caminho sequencial (formato 2)
+    static void benchmarkRleParalelo(int megabytes) {
+        try {
+            File origem = Files.createTempFile("bench", ".bin").toFile();
+            File zip = Files.createTempFile("bench", ".rle").toFile();
+            File saida = Files.createTempFile("bench", ".out").toFile();
+            gerarTexto(origem.toPath(), (long) megabytes << 20);
+            double mb = origem.length() / (1024.0 * 1024.0);
+            int nucleos = Runtime.getRuntime().availableProcessors();
+            System.out.printf("%.1f MB de texto | %d núcleos disponíveis%n", mb, nucleos);
+
+            long inicio = System.nanoTime();
+            Compactador.compactar(origem, zip);
+            double sCompactar = (System.nanoTime() - inicio) / 1e9;
+            inicio = System.nanoTime();
+            Compactador.descompactar(zip, saida);
+            double sDescompactar = (System.nanoTime() - inicio) / 1e9;
+            System.out.printf("sequencial (formato 2) | compactar %7.1f MB/s | descompactar %7.1f MB/s%n", mb / sCompactar, mb / sDescompactar);
+
+            for (int threads = 1; threads <= Math.max(8, nucleos); threads *= 2) {
+                inicio = System.nanoTime();
+                Compactador.compactarEmBlocos(origem, zip, threads);
+                sCompactar = (System.nanoTime() - inicio) / 1e9;
+                inicio = System.nanoTime();
+                Compactador.descompactarEmBlocos(zip, saida, threads);
+                sDescompactar = (System.nanoTime() - inicio) / 1e9;
+                boolean ok = Files.mismatch(saida.toPath(), origem.toPath()) == -1;
+                System.out.printf("blocos, %2d threads     | compactar %7.1f MB/s | descompactar %7.1f MB/s | conteúdo confere: %s%n",
+                        threads, mb / sCompactar, mb / sDescompactar, ok);
+            }
+
+            // Acesso direto: o último bloco sem descompactar os anteriores
+            List<Compactador.Bloco> blocos = Compactador.lerIndice(zip);
+            inicio = System.nanoTime();
+            byte[] ultimo = Compactador.lerBloco(zip, blocos.size() - 1);
+            System.out.printf("leitura direta do bloco %d de %d (%d bytes): %.2f ms%n", blocos.size() - 1, blocos.size(),
+                    ultimo.length, (System.nanoTime() - inicio) / 1e6);
+
+            for (File arquivo : new File[]{origem, zip, saida}) Files.deleteIfExists(arquivo.toPath());
+        } catch (IOException e) {
+            System.out.println("Erro no benchmark: " + e.getMessage());
+        }
+    }
+
+    // ZIP: zip/unzip de /bench com 1, 2, 4 e 8 threads (pipeline com janela limitada e compressores reaproveitados)
+    static void benchmarkZip(int totalNos) {
+        SistemaArquivos fs = criarArvore(totalNos, 20);
+        System.out.printf("Árvore com ~%d nós em /bench | %d núcleos disponíveis%n", totalNos, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            fs.setParalelismo(threads);
+            fs.rm("/tmp/bench.zip", false);
+            fs.rm("/tmp/extraido", true);
+            long antes = memoriaUsada();
+
+            long inicio = System.nanoTime();
+            String resultado = fs.zip("/tmp/bench.zip", "/bench");
+            double msZip = (System.nanoTime() - inicio) / 1_000_000.0;
+            long memoriaZip = memoriaUsada() - antes;
+
+            fs.mkdir("/tmp/extraido");
+            fs.cd("/tmp/extraido");
+            inicio = System.nanoTime();
+            String resultadoUnzip = fs.unzip("/tmp/bench.zip");
+            double msUnzip = (System.nanoTime() - inicio) / 1_000_000.0;
+            fs.cd("/");
+
+            System.out.printf("threads %d | zip %8.1f ms | unzip %8.1f ms | memória após o zip %+7.1f MB | compressores criados até aqui: %d | %s | %s%n",
+                    threads, msZip, msUnzip, memoriaZip / (1024.0 * 1024.0), fs.getCompressoresCriados(),
+                    resultado.startsWith("Sucesso") ? "ok" : resultado, resultadoUnzip.startsWith("Sucesso") ? "ok" : resultadoUnzip);
+        }
+        fs.encerrar();
+    }
+
+    // CP: tempo e memória de copiar /bench (com conteúdo) conforme a árvore cresce
+    // As cópias compartilham o conteúdo: o custo é por nó, e só o arquivo alterado depois ganha conteúdo próprio
+    static void benchmarkCp(int maiorTamanho) {
+        for (int totalNos = Math.max(1000, maiorTamanho / 100); totalNos <= maiorTamanho; totalNos *= 10) {
+            SistemaArquivos fs = criarArvore(totalNos, 50);
+            fs.setParalelismo(1);
+            fs.mkdir("/copia");
+            long antes = memoriaUsada();
+            long inicio = System.nanoTime();
+            String resultado = fs.cp("/bench", "/copia");
+            double msCp = (System.nanoTime() - inicio) / 1_000_000.0;
+            long depois = memoriaUsada();
+
+            inicio = System.nanoTime();
+            fs.escreverNoArquivo("/copia/bench/d0/s0/arquivo_0.txt", "primeira escrita na cópia", true);
+            double msPrimeiraEscrita = (System.nanoTime() - inicio) / 1_000_000.0;
+
+            System.out.printf("%8d nós (50 linhas por arquivo) | cp %8.1f ms | memória do cp %+8.1f MB | primeira escrita na cópia %.3f ms | %s%n",
+                    totalNos, msCp, (depois - antes) / (1024.0 * 1024.0), msPrimeiraEscrita, resultado.startsWith("Sucesso") ? "ok" : resultado);
+            fs.encerrar();
+        }
+    }
+
+    // Snapshot/rollback: tempo do snapshot (O(1)), da primeira escrita depois dele (guarda só o caminho até a raiz),
+    // memória gasta por ciclos de snapshot + escrita e rollback (proporcional aos nós alterados, não à árvore)
+    static void benchmarkVersoes(int maiorTamanho) {
+        int ciclos = 100;
+        for (int totalNos = Math.max(1000, maiorTamanho / 100); totalNos <= maiorTamanho; totalNos *= 10) {
+            SistemaArquivos fs = criarArvore(totalNos, 5);
+            fs.find("/", "arquivo_0.txt"); // Carrega o índice de nomes antes das medições
+
+            long inicio = System.nanoTime();
+            fs.criarVersao("v0");
+            double msSnapshot = (System.nanoTime() - inicio) / 1_000_000.0;
+
+            inicio = System.nanoTime();
+            fs.escreverNoArquivo("/bench/d0/s0/arquivo_0.txt", "escrita depois do snapshot", true);
+            double msPrimeiraEscrita = (System.nanoTime() - inicio) / 1_000_000.0;
+
+            long antes = memoriaUsada();
+            for (int i = 1; i <= ciclos; i++) {
+                fs.criarVersao("v" + i);
+                fs.escreverNoArquivo("/bench/d" + (i % 10) + "/s" + (i % 10) + "/arquivo_" + (i % 10) + ".txt", "ciclo " + i, true);
+            }
+            long depois = memoriaUsada();
+
+            inicio = System.nanoTime();
+            String resultado = fs.rollback("v0");
+            double msRollback = (System.nanoTime() - inicio) / 1_000_000.0;
+
+            System.out.printf("%8d nós | snapshot %.3f ms | primeira escrita %.3f ms | rollback %.3f ms | %d ciclos snapshot+escrita %+7.2f MB | %s%n",
+                    totalNos, msSnapshot, msPrimeiraEscrita, msRollback, ciclos, (depois - antes) / (1024.0 * 1024.0),
+                    resultado.startsWith("Rollback") ? "ok" : resultado);
+            fs.encerrar();
+        }
+    }
+
+    // Arquivos quase iguais (mesmo modelo de 32 KB + uma linha própria): memória por arquivo e taxa de deduplicação
+    static void benchmarkDedup(int totalArquivos) {
+        StringBuilder modelo = new StringBuilder();
+        for (int i = 0; modelo.length() < 32 * 1024; i++) {
+            modelo.append("linha ").append(i).append(" do modelo compartilhado entre os arquivos\n");
+        }
+        SistemaArquivos fs = new SistemaArquivos();
+        fs.mkdir("/modelos");
+        long antes = memoriaUsada();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < totalArquivos; i++) {
+            String caminho = "/modelos/arquivo_" + i + ".txt";
+            fs.touch(caminho);
+            fs.escreverNoArquivo(caminho, modelo.toString(), false);
+            fs.escreverNoArquivo(caminho, "cópia " + i, true);
+        }
+        double msEscrita = (System.nanoTime() - inicio) / 1_000_000.0;
+        long depois = memoriaUsada();
+        System.out.printf("%d arquivos de %d KB | escrita %.1f ms | memória %+.1f MB (%.1f KB por arquivo)%n",
+                totalArquivos, modelo.length() / 1024, msEscrita, (depois - antes) / (1024.0 * 1024.0),
+                (depois - antes) / 1024.0 / totalArquivos);
+        System.out.print(fs.estatisticasDedup());
+        fs.encerrar();
+    }
+
+    // CONCORRÊNCIA (teste de estresse): várias threads fazendo mkdir/touch/echo/rm/mv/cp/rename/ls/cat/find/grep
+    // sobre os mesmos poucos nomes em /stress, para forçar disputas. No fim confere os invariantes da árvore:
+    // totais agregados = totais recalculados, pai de cada filho, índice de nomes = varredura
+    // Termina com código 1 se algo falhar (deadlock, exceção ou invariante quebrado)
+    static void benchmarkConcorrencia(int operacoesPorThread) {
+        int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        SistemaArquivos fs = new SistemaArquivos();
+        fs.setParalelismo(2); // cp/zip/tree também usam o pool do motor no meio da disputa
+        fs.mkdir("/stress");
+        for (int i = 0; i < 4; i++) fs.mkdir("/stress/a" + i);
+
+        ConcurrentLinkedQueue<String> falhas = new ConcurrentLinkedQueue<>();
+        AtomicLong executadas = new AtomicLong();
+        List<Thread> trabalhadores = new ArrayList<>();
+        long inicio = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            // Uma sessão por thread (diretório atual e histórico são da sessão), todas na mesma árvore
+            SistemaArquivos sessao = fs.abrirSessao("user");
+            Thread trabalhador = new Thread(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                for (int i = 0; i < operacoesPorThread; i++) {
+                    try {
+                        String resultado = operacaoAleatoria(sessao, aleatorio);
+                        // Os comandos devolvem as exceções como texto: ": null" ou "Exception" indicam um erro inesperado
+                        if (resultado.contains("Exception") || resultado.endsWith(": null")) falhas.add(resultado);
+                    } catch (RuntimeException e) {
+                        falhas.add(e.toString());
+                    }
+                    executadas.incrementAndGet();
+                }
+            }, "estresse-" + t);
+            trabalhadores.add(trabalhador);
+            trabalhador.start();
+        }
+
+        for (Thread trabalhador : trabalhadores) {
+            try {
+                trabalhador.join(120_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (trabalhador.isAlive()) {
+                long[] travadas = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+                System.out.println("FALHA: " + trabalhador.getName() + " não terminou em 2 min ("
+                        + (travadas == null ? "sem deadlock detectado" : travadas.length + " threads em deadlock") + ")");
+                System.exit(1);
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        List<String> invariantes = conferirArvore(fs);
+        for (String nome : new String[]{"b0", "b1", "f0", "f1", "f2"}) {
+            String porIndice = fs.find("/stress", nome);
+            String porVarredura = fs.findPorVarredura("/stress", nome);
+            if (!porIndice.equals(porVarredura)) invariantes.add("find -name " + nome + ": índice e varredura diferem");
+        }
+
+        System.out.printf("%d threads | %d operações em %.2f s (%.0f ops/s) | %d nós em /stress | exceções: %d | invariantes quebrados: %d%n",
+                threads, executadas.get(), segundos, executadas.get() / segundos, contarNos(fs),
+                falhas.size(), invariantes.size());
+        falhas.stream().limit(5).forEach(f -> System.out.println("  exceção: " + f));
+        invariantes.stream().limit(5).forEach(f -> System.out.println("  invariante: " + f));
+        fs.encerrar();
+        if (!falhas.isEmpty() || !invariantes.isEmpty()) System.exit(1);
+        System.out.println("OK");
+    }
+
+    private static String operacaoAleatoria(SistemaArquivos fs, ThreadLocalRandom aleatorio) {
+        String a = "/stress/a" + aleatorio.nextInt(4);
+        String outro = "/stress/a" + aleatorio.nextInt(4);
+        String b = a + "/b" + aleatorio.nextInt(3);
+        String arquivo = (aleatorio.nextBoolean() ? a : b) + "/f" + aleatorio.nextInt(3);
+        return switch (aleatorio.nextInt(14)) {
+            case 0 -> fs.mkdir(b);
+            case 1 -> fs.touch(arquivo);
+            case 2 -> fs.escreverNoArquivo(arquivo, "linha " + aleatorio.nextInt(1000), true);
+            case 3 -> fs.escreverNoArquivo(arquivo, "conteúdo novo " + aleatorio.nextInt(1000), false);
+            case 4 -> fs.rm(aleatorio.nextBoolean() ? b : arquivo, true);
+            case 5 -> fs.mv(b, outro);
+            case 6 -> fs.mv(arquivo, outro);
+            case 7 -> fs.cp(b, outro);
+            case 8 -> fs.rename(b, "b" + aleatorio.nextInt(3));
+            case 9 -> fs.ls(aleatorio.nextBoolean() ? a : b, true, true);
+            case 10 -> fs.cat(arquivo);
+            case 11 -> fs.find("/stress", "f" + aleatorio.nextInt(3));
+            case 12 -> fs.grepRecursivo("linha", a);
+            default -> aleatorio.nextInt(10) == 0 ? fs.tree("/stress", true) : fs.du(a);
+        };
+    }
+
+    // Recalcula tamanhos e quantidades de nós a partir das folhas e compara com os totais mantidos incrementalmente
+    private static List<String> conferirArvore(SistemaArquivos fs) {
+        List<String> problemas = new ArrayList<>();
+        fs.cd("/");
+        conferirDiretorio(fs.getDiretorioAtual(), problemas);
+        return problemas;
+    }
+
+    // Devolve {tamanho, nós} recalculados da subárvore
+    private static long[] conferirDiretorio(Diretorio dir, List<String> problemas) {
+        long tamanho = 4096;
+        long nos = 1;
+        for (NoSistema filho : dir.getFilhosOrdenados(true)) {
+            if (filho.getPai() != dir) problemas.add(filho.getNome() + ": pai errado");
+            if (filho instanceof Diretorio sub) {
+                long[] totais = conferirDiretorio(sub, problemas);
+                tamanho += totais[0];
+                nos += totais[1];
+            } else {
+                tamanho += ((Arquivo) filho).getBytes().length;
+                nos++;
+            }
+        }
+        if (tamanho != dir.getTamanho() || nos != dir.getTotalNos()) {
+            problemas.add(dir.getNome() + ": totais " + dir.getTamanho() + " bytes/" + dir.getTotalNos()
+                    + " nós, recalculados " + tamanho + "/" + nos);
+        }
+        return new long[]{tamanho, nos};
+    }
+
+    private static int contarNos(SistemaArquivos fs) {
+        fs.cd("/stress");
+        int total = fs.getDiretorioAtual().getTotalNos();
+        fs.cd("/");
+        return total;
+    }
+
+    // LEITURAS: vazão de ls/cat/find com 1 até N threads na mesma árvore, sem e com uma thread escrevendo ao mesmo tempo
+    // (as leituras só pegam travas de leitura, então devem escalar com os núcleos)
+    static void benchmarkLeituras(int totalNos) {
+        SistemaArquivos fs = criarArvore(totalNos, 5);
+        fs.setParalelismo(1);
+        fs.find("/bench", "arquivo_0.txt"); // Índice de nomes pronto antes da medição
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        int diretorios = Math.max(1, totalNos / 111);
+        System.out.printf("Árvore com ~%d nós em /bench (5 linhas por arquivo) | núcleos disponíveis: %d%n", totalNos, nucleos);
+
+        List<Integer> niveis = new ArrayList<>();
+        for (int t = 1; t < Math.max(nucleos, 4); t *= 2) niveis.add(t);
+        niveis.add(Math.max(nucleos, 4));
+
+        medirLeituras(fs, 1, diretorios, true); // Aquecimento (JIT) fora da medição
+        for (boolean comEscritor : new boolean[]{false, true}) {
+            double base = 0;
+            for (int threads : niveis) {
+                double vazao = medirLeituras(fs, threads, diretorios, comEscritor);
+                if (base == 0) base = vazao;
+                System.out.printf("%-13s threads %2d | %10.0f leituras/s | %5.2fx%n",
+                        comEscritor ? "com escritor" : "só leitura", threads, vazao, vazao / base);
+            }
+        }
+        fs.encerrar();
+    }
+
+    // Leituras por segundo de 'threads' leitores durante 2 s (mais um escritor fazendo append, se pedido)
+    private static double medirLeituras(SistemaArquivos fs, int threads, int diretorios, boolean comEscritor) {
+        long duracaoNs = 2_000_000_000L;
+        AtomicLong leituras = new AtomicLong();
+        long fim = System.nanoTime() + duracaoNs;
+        Deque<Thread> ativas = new ArrayDeque<>();
+        for (int t = 0; t < threads; t++) {
+            SistemaArquivos sessao = fs.abrirSessao("user");
+            Thread leitor = new Thread(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                long feitas = 0;
+                while (System.nanoTime() < fim) {
+                    String dir = "/bench/d" + aleatorio.nextInt(diretorios) + "/s" + aleatorio.nextInt(10);
+                    switch (aleatorio.nextInt(3)) {
+                        case 0 -> sessao.ls(dir, false, true);
+                        case 1 -> sessao.cat(dir + "/arquivo_" + aleatorio.nextInt(10) + ".txt");
+                        default -> sessao.find("/bench/d" + aleatorio.nextInt(diretorios), "arquivo_" + aleatorio.nextInt(10) + ".txt");
+                    }
+                    feitas++;
+                }
+                leituras.addAndGet(feitas);
+            });
+            ativas.add(leitor);
+            leitor.start();
+        }
+        if (comEscritor) {
+            SistemaArquivos sessao = fs.abrirSessao("user");
+            Thread escritor = new Thread(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                while (System.nanoTime() < fim) {
+                    sessao.escreverNoArquivo("/bench/d" + aleatorio.nextInt(diretorios) + "/s" + aleatorio.nextInt(10)
+                            + "/arquivo_" + aleatorio.nextInt(10) + ".txt", "escrita concorrente", true);
+                }
+            });
+            ativas.add(escritor);
+            escritor.start();
+        }
+        for (Thread thread : ativas) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return leituras.get() / (duracaoNs / 1e9);
+    }
+
+    // SERVIDOR: comandos por segundo sustentados pelo modo servidor com muitas sessões abertas ao mesmo tempo
+    // Servidor e cliente de carga (ClienteCarga) no mesmo processo, pela interface de loopback
+    static void benchmarkServidor(int maxSessoes) {
+        SistemaArquivos fs = new SistemaArquivos();
+        try (ServidorTerminal servidor = new ServidorTerminal(fs, 0)) {
+            Thread aceitador = new Thread(servidor::atender, "servidor-accept");
+            aceitador.setDaemon(true);
+            aceitador.start();
+            System.out.println("Servidor na porta " + servidor.getPorta() + " | ciclo por sessão: pwd, echo >, cat, ls, mkdir, ls -l, stat, rm");
+
+            List<Integer> niveis = new ArrayList<>();
+            for (int n : new int[]{1_000, 2_000, 5_000, 10_000}) {
+                if (n < maxSessoes) niveis.add(n);
+            }
+            niveis.add(maxSessoes);
+
+            for (int sessoes : niveis) {
+                ClienteCarga.Resultado resultado = ClienteCarga.executar("localhost", servidor.getPorta(), sessoes, 5);
+                // Todas as sessões mandaram exit: o servidor tem que voltar a zero sessões abertas
+                long limite = System.currentTimeMillis() + 10_000;
+                while (servidor.getSessoesAbertas() > 0 && System.currentTimeMillis() < limite) Thread.sleep(10);
+                System.out.println(resultado.formatar() + " | abertas no servidor depois: " + servidor.getSessoesAbertas());
+            }
+            System.out.println("Sessões atendidas: " + servidor.getTotalSessoes());
+        } catch (IOException e) {
+            System.out.println("Erro no servidor: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fs.encerrar();
+        }
+    }
+
+    // SCRIPT: comandos/s de um script de fixture no terminal interativo (prompt a cada comando, saída como a do System.out:
+    // buffer de 128 bytes descarregado a cada linha) x modo script (sem prompt, buffer de 64 KB)
+    // A saída vai para um arquivo temporário; num console de verdade cada descarga custa bem mais
+    static void benchmarkScript(int totalComandos) {
+        StringBuilder script = new StringBuilder("set -e\nmkdir /fx\n");
+        String[] ciclo = {"echo \"linha %d\" > /fx/d%d/f%d.txt", "echo \"mais uma\" >> /fx/d%d/f%d.txt", "cat /fx/d%d/f%d.txt", "ls /fx/d%d"};
+        for (int i = 0; i < totalComandos; i++) {
+            int arquivo = i / ciclo.length;
+            int dir = arquivo / 100;
+            if (i % (100 * ciclo.length) == 0) script.append("mkdir /fx/d").append(dir).append('\n');
+            String comando = switch (i % ciclo.length) {
+                case 0 -> String.format(ciclo[0], arquivo, dir, arquivo);
+                case 3 -> String.format(ciclo[3], dir);
+                default -> String.format(ciclo[i % ciclo.length], dir, arquivo);
+            };
+            script.append(comando).append('\n');
+        }
+        try {
+            File saida = File.createTempFile("bench-script", ".out");
+            saida.deleteOnExit();
+            for (int rodada = 0; rodada < 3; rodada++) {
+                SistemaArquivos fs = new SistemaArquivos();
+                PrintStream interativa = new PrintStream(new BufferedOutputStream(new FileOutputStream(saida), 128), true, StandardCharsets.UTF_8);
+                long inicio = System.nanoTime();
+                new Terminal(fs, new BufferedReader(new StringReader(script.toString())), interativa).iniciarSessao();
+                double msInterativo = (System.nanoTime() - inicio) / 1_000_000.0;
+                interativa.close();
+                long bytesInterativo = saida.length();
+                fs.encerrar();
+
+                fs = new SistemaArquivos();
+                PrintStream emLote = new PrintStream(new BufferedOutputStream(new FileOutputStream(saida), 64 * 1024), false, StandardCharsets.UTF_8);
+                inicio = System.nanoTime();
+                int status = Terminal.executarScript(fs, new BufferedReader(new StringReader(script.toString())), emLote);
+                double msScript = (System.nanoTime() - inicio) / 1_000_000.0;
+                emLote.close();
+                long bytesScript = saida.length();
+                fs.encerrar();
+
+                System.out.printf("%d comandos | interativo: %8.1f ms (%7.0f comandos/s, %d bytes) | script: %8.1f ms (%7.0f comandos/s, %d bytes) | %.1fx | status do script: %d%n",
+                        totalComandos, msInterativo, totalComandos / (msInterativo / 1000), bytesInterativo,
+                        msScript, totalComandos / (msScript / 1000), bytesScript, msInterativo / msScript, status);
+            }
+        } catch (IOException e) {
+            System.out.println("Erro no benchmark: " + e.getMessage());
+        }
+    }
+}
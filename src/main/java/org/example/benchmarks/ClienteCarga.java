@@ -0,0 +1,206 @@
+package org.example.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Cliente de carga do modo servidor (Terminal --servidor <porta>)
+// Abre N sessões TCP ao mesmo tempo, uma virtual thread por sessão; cada sessão repete um ciclo de comandos
+// no seu próprio diretório, sempre esperando a resposta (o prompt) antes de mandar o próximo
+// Uso: java org.example.benchmarks.ClienteCarga <porta> <sessoes> [segundos]
+public class ClienteCarga {
+
+    // Ciclo de cada sessão: leituras e escritas pequenas, sem saída que cresça com o tempo
+    private static final String[] CICLO = {
+            "pwd",
+            "echo \"linha de teste\" > a.txt",
+            "cat a.txt",
+            "ls",
+            "mkdir d",
+            "ls -l",
+            "stat a.txt",
+            "rm d",
+    };
+
+    private static final int SEGUNDOS_AQUECIMENTO = 1;
+
+    public record Resultado(int sessoes, double segundosConexao, long comandos, double segundos,
+                            long p50Micros, long p99Micros, long maxMicros, int erros, int sessoesPerdidas) {
+        public double comandosPorSegundo() {
+            return comandos / segundos;
+        }
+
+        public String formatar() {
+            return String.format("%6d sessões | conexão: %6.2f s | %9.0f comandos/s | latência p50: %6d µs | p99: %7d µs | máx: %8d µs | erros: %d | sessões perdidas: %d",
+                    sessoes, segundosConexao, comandosPorSegundo(), p50Micros, p99Micros, maxMicros, erros, sessoesPerdidas);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Uso: ClienteCarga <porta> <sessoes> [segundos]");
+            return;
+        }
+        int porta = Integer.parseInt(args[0]);
+        int sessoes = Integer.parseInt(args[1]);
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        System.out.println(executar("localhost", porta, sessoes, segundos).formatar());
+    }
+
+    // Conecta todas as sessões, aquece, mede por 'segundos' e fecha as sessões (exit)
+    public static Resultado executar(String host, int porta, int sessoes, int segundos) throws IOException, InterruptedException {
+        // Diretório próprio desta rodada: rodadas seguidas no mesmo servidor não colidem
+        String base = "/tmp/carga_" + sessoes + "_" + System.currentTimeMillis();
+        try (Conexao preparacao = new Conexao(host, porta)) {
+            preparacao.enviar("mkdir " + base);
+            preparacao.enviar("exit");
+        }
+
+        CountDownLatch conectadas = new CountDownLatch(sessoes);
+        CountDownLatch largada = new CountDownLatch(1);
+        Estado estado = new Estado();
+        long[][] latencias = new long[sessoes][];
+        int[] totais = new int[sessoes];
+        AtomicInteger erros = new AtomicInteger();
+        AtomicInteger perdidas = new AtomicInteger();
+
+        long inicioConexao = System.nanoTime();
+        double segundosConexao;
+        long inicioMedicao;
+        long fimMedicao;
+        ExecutorService clientes = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (int i = 0; i < sessoes; i++) {
+                int indice = i;
+                clientes.submit(() -> {
+                    boolean contada = false;
+                    try (Conexao conexao = new Conexao(host, porta)) {
+                        String dir = base + "/s" + indice;
+                        conexao.enviar("mkdir " + dir);
+                        conexao.enviar("cd " + dir);
+                        conectadas.countDown();
+                        contada = true;
+                        largada.await();
+
+                        long[] minhas = new long[1024];
+                        int total = 0;
+                        for (int c = 0; !estado.parar; c++) {
+                            boolean medindo = estado.medindo;
+                            long inicio = System.nanoTime();
+                            String resposta = conexao.enviar(CICLO[c % CICLO.length]);
+                            long duracao = System.nanoTime() - inicio;
+                            if (resposta.contains("Erro") || resposta.contains("negada")) erros.incrementAndGet();
+                            if (!medindo || !estado.medindo) continue;
+                            if (total == minhas.length) minhas = Arrays.copyOf(minhas, total * 2);
+                            minhas[total++] = duracao;
+                        }
+                        latencias[indice] = minhas;
+                        totais[indice] = total;
+                        conexao.enviar("exit");
+                    } catch (IOException | InterruptedException e) {
+                        perdidas.incrementAndGet();
+                    } finally {
+                        if (!contada) conectadas.countDown();
+                    }
+                    return null;
+                });
+            }
+
+            conectadas.await();
+            segundosConexao = (System.nanoTime() - inicioConexao) / 1e9;
+            largada.countDown();
+            Thread.sleep(SEGUNDOS_AQUECIMENTO * 1000L);
+            estado.medindo = true;
+            inicioMedicao = System.nanoTime();
+            Thread.sleep(segundos * 1000L);
+            estado.medindo = false;
+            fimMedicao = System.nanoTime();
+        } finally {
+            estado.parar = true;
+            clientes.shutdown();
+            // Espera todas as sessões mandarem exit
+            clientes.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // Junta as latências medidas de todas as sessões
+        long comandos = 0;
+        for (int total : totais) comandos += total;
+        long[] todas = new long[(int) comandos];
+        int posicao = 0;
+        for (int i = 0; i < sessoes; i++) {
+            if (latencias[i] == null) continue;
+            System.arraycopy(latencias[i], 0, todas, posicao, totais[i]);
+            posicao += totais[i];
+        }
+        Arrays.sort(todas);
+
+        return new Resultado(sessoes, segundosConexao, comandos, (fimMedicao - inicioMedicao) / 1e9,
+                percentil(todas, 0.50) / 1000, percentil(todas, 0.99) / 1000,
+                todas.length == 0 ? 0 : todas[todas.length - 1] / 1000, erros.get(), perdidas.get());
+    }
+
+    private static long percentil(long[] ordenados, double p) {
+        if (ordenados.length == 0) return 0;
+        return ordenados[Math.min(ordenados.length - 1, (int) (p * ordenados.length))];
+    }
+
+    // Sinais da thread que mede para as sessões
+    private static final class Estado {
+        volatile boolean medindo;
+        volatile boolean parar;
+    }
+
+    // Uma sessão no servidor: faz o login e lê cada resposta até o prompt
+    private static final class Conexao implements AutoCloseable {
+        private final Socket socket;
+        private final InputStream entrada;
+        private final OutputStream saida;
+        private final ByteArrayOutputStream resposta = new ByteArrayOutputStream();
+
+        Conexao(String host, int porta) throws IOException {
+            socket = new Socket(host, porta);
+            socket.setTcpNoDelay(true);
+            entrada = new BufferedInputStream(socket.getInputStream(), 1024);
+            saida = socket.getOutputStream();
+            lerAte(':'); // "login: "
+            enviar("user");
+        }
+
+        // Manda um comando e devolve a resposta (sem o prompt)
+        String enviar(String comando) throws IOException {
+            saida.write((comando + "\n").getBytes(StandardCharsets.UTF_8));
+            saida.flush();
+            if (comando.equals("exit")) return "";
+            return lerAte('$');
+        }
+
+        // Lê até o fim do prompt: o caractere 'marca' seguido de espaço (o prompt não tem quebra de linha)
+        private String lerAte(char marca) throws IOException {
+            resposta.reset();
+            int anterior = -1;
+            while (true) {
+                int atual = entrada.read();
+                if (atual == -1) throw new IOException("Conexão fechada pelo servidor.");
+                if (anterior == marca && atual == ' ' && entrada.available() == 0) break;
+                resposta.write(atual);
+                anterior = atual;
+            }
+            return resposta.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
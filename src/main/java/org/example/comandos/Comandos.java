@@ -1,18 +1,53 @@
 package org.example.comandos;
 
+import org.example.sistema_de_arquivos.OpcoesGrep;
 import org.example.sistema_de_arquivos.SistemaArquivos;
 
+import java.io.PrintStream;
 import java.util.List;
 
 // Classe que contém os comandos e seus comportamentos específicos.
 public class Comandos {
 
+    // Para onde vão as respostas dos comandos (a saída padrão ou a conexão de uma sessão do servidor)
+    private final PrintStream saida;
+
+    public Comandos() {
+        this(System.out);
+    }
+
+    public Comandos(PrintStream saida) {
+        this.saida = saida;
+    }
+
+    // Se algum comando falhou por uso incorreto desde a última consulta (ver consumirFalha)
+    private boolean falhou;
+
+    // Comando desligado nesta sessão (ex: save numa sessão do servidor): conta como falha, como o uso incorreto
+    public void indisponivel(String comando, String motivo) {
+        erro("Erro: '" + comando + "' não está disponível " + motivo + ".");
+    }
+
+    // Mensagem de uso incorreto: também conta como falha do comando
+    private void erro(String mensagem) {
+        falhou = true;
+        saida.println(mensagem);
+    }
+
+    // Diz se o último comando falhou, por uso incorreto ou no sistema de arquivos (e zera a marcação)
+    // É o status que o 'set -e' dos scripts confere, em vez de olhar o texto da saída
+    public boolean consumirFalha(SistemaArquivos fs) {
+        boolean resultado = fs.consumirFalha() | falhou;
+        falhou = false;
+        return resultado;
+    }
+
     /*
     Todo comando deve ser do tipo object, receber parâmetros genéricos e ter um retorno, mesmo que seja nulo
      */
 
     public Object kill(String... strings) {
-        System.out.println("Matando terminal. ");
+        saida.println("Matando terminal. ");
         System.exit(0);
         return null;
     }
@@ -21,26 +56,40 @@ public class Comandos {
     public void cd(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
             // Comportamento padrão Linux sem args: vai para home
-            System.out.println(fs.cd("/home/user"));
+            saida.println(fs.cd(fs.getDiretorioHome()));
             return;
         }
         String msg = fs.cd(args.getFirst());
-        if (!msg.isEmpty()) System.out.println(msg);
+        if (!msg.isEmpty()) saida.println(msg);
     }
 
     // [pwd] - Extra, só para testar navegação
     public void pwd(SistemaArquivos fs, List<String> args) {
-        System.out.println(fs.getCaminhoCompleto());
+        saida.println(fs.getCaminhoCompleto());
     }
 
-    // [ls <caminho> -modificadores] (flags tratadas: -a, -l, -la)
+    // [ls <caminho> -modificadores] (flags tratadas: -a, -l, -la, --offset N, --limit N)
     public void ls(SistemaArquivos fs, List<String> args) {
         boolean mostrarOcultos = false;
         boolean formatoLongo = false;
         String caminho = null;
+        int deslocamento = 0;
+        int limite = -1;
 
-        for (String arg : args) {
-            if (arg.startsWith("-")) {
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            // Paginação: ls --offset N --limit M
+            if ((arg.equals("--offset") || arg.equals("--limit")) && i + 1 < args.size()) {
+                try {
+                    int valor = Integer.parseInt(args.get(++i));
+                    if (valor < 0) throw new NumberFormatException();
+                    if (arg.equals("--offset")) deslocamento = valor;
+                    else limite = valor;
+                } catch (NumberFormatException e) {
+                    erro("Erro: " + arg + " espera um número inteiro não negativo.");
+                    return;
+                }
+            } else if (arg.startsWith("-")) {
                 if (arg.contains("a")) mostrarOcultos = true;
                 if (arg.contains("l")) formatoLongo = true;
             } else {
@@ -48,47 +97,47 @@ public class Comandos {
             }
         }
 
-        System.out.print(fs.ls(caminho, mostrarOcultos, formatoLongo));
+        saida.print(fs.ls(caminho, mostrarOcultos, formatoLongo, deslocamento, limite));
     }
 
     // [touch <caminho>]
     public void tree(SistemaArquivos fs, List<String> args) {
         // Valida flag
         boolean mostrarOcultos = !args.isEmpty() && args.contains("-a");
-        System.out.println(fs.tree(args.isEmpty() || args.getFirst().isEmpty() ?  "" : args.getFirst(), mostrarOcultos));
+        saida.println(fs.tree(args.isEmpty() || args.getFirst().isEmpty() ?  "" : args.getFirst(), mostrarOcultos));
     }
 
     // [cat <caminho>]
     public void cat(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: cat <arquivo>");
+            erro("Uso: cat <arquivo>");
             return;
         }
         // Suporta múltiplos arquivos: cat a.txt b.txt
         for (String arg : args) {
-            System.out.println(fs.cat(arg));
+            saida.println(fs.cat(arg));
         }
     }
 
     // [history]
     public void history(SistemaArquivos fs, List<String> args) {
-        System.out.print(fs.getHistorico());
+        saida.print(fs.getHistorico());
     }
 
     // [mkdir <nome>]
     public void mkdir(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: mkdir <nome_diretorio>");
+            erro("Uso: mkdir <nome_diretorio>");
             return;
         }
         // Executa e imprime o resultado
-        System.out.println(fs.mkdir(args.getFirst()));
+        saida.println(fs.mkdir(args.getFirst()));
     }
 
     // [rm <nome/caminho> -modificadores]
     public void rm(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: rm [-rf] <caminho>");
+            erro("Uso: rm [-rf] <caminho>");
             return;
         }
 
@@ -108,26 +157,26 @@ public class Comandos {
         }
 
         if (caminho == null) {
-            System.out.println("Erro: Nenhum caminho especificado.");
+            erro("Erro: Nenhum caminho especificado.");
             return;
         }
 
-        System.out.println(fs.rm(caminho, recursivo));
+        saida.println(fs.rm(caminho, recursivo));
     }
 
     // [touch <nome>]
     public void touch(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: touch <arquivo>");
+            erro("Uso: touch <arquivo>");
             return;
         }
-        System.out.println(fs.touch(args.getFirst()));
+        saida.println(fs.touch(args.getFirst()));
     }
 
     // [echo <texto >|>> arq>]
     public void echo(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println(); // echo vazio imprime linha em branco
+            saida.println(); // echo vazio imprime linha em branco
             return;
         }
         int indexRedirecionar = -1;
@@ -148,7 +197,7 @@ public class Comandos {
         if (indexRedirecionar != -1) {
             // Validação: Tem que ter arquivo depois do >
             if (indexRedirecionar + 1 >= args.size()) {
-                System.out.println("Erro: Sintaxe inválida. Esperado arquivo após redirecionador.");
+                erro("Erro: Sintaxe inválida. Esperado arquivo após redirecionador.");
                 return;
             }
 
@@ -159,21 +208,21 @@ public class Comandos {
 
             // Chama o sistema para efetuar a escrita
             String erro = fs.escreverNoArquivo(arquivoDestino, texto, append);
-            if (!erro.isEmpty()) System.out.println(erro);
+            if (!erro.isEmpty()) saida.println(erro);
 
         } else {
             // Apenas imprime o texto caso os operadores não tenham sido encontrados
-            System.out.println(String.join(" ", args));
+            saida.println(String.join(" ", args));
         }
     }
 
     // [rename <antigo> <novo>]
     public void rename(SistemaArquivos fs, List<String> args) {
         if (args.size() < 2) {
-            System.out.println("Uso: rename <nome_antigo> <novo_nome>");
+            erro("Uso: rename <nome_antigo> <novo_nome>");
             return;
         }
-        System.out.println(fs.rename(args.get(0), args.get(1)));
+        saida.println(fs.rename(args.get(0), args.get(1)));
     }
 
     // [head <caminho> ou head -n 5 <arquivo>]
@@ -199,45 +248,45 @@ public class Comandos {
                 linhas = Integer.parseInt(args.get(1));
                 arquivo = args.get(2);
             } catch (NumberFormatException e) {
-                System.out.println("Erro: Número de linhas inválido.");
+                erro("Erro: Número de linhas inválido.");
                 return;
             }
         } else {
             arquivo = args.getFirst();
         }
 
-        if (isHead) System.out.print(fs.head(arquivo, linhas));
-        else System.out.print(fs.tail(arquivo, linhas));
+        if (isHead) saida.print(fs.head(arquivo, linhas));
+        else saida.print(fs.tail(arquivo, linhas));
     }
 
     // [wc] wc <arquivo>
     public void wc(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: wc <arquivo>");
+            erro("Uso: wc <arquivo>");
             return;
         }
-        System.out.println(fs.wc(args.getFirst()));
+        saida.println(fs.wc(args.getFirst()));
     }
 
     // [stat <caminho>]
     public void stat(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: stat <caminho>");
+            erro("Uso: stat <caminho>");
             return;
         }
 
-        System.out.print(fs.stat(args.getFirst()));
+        saida.print(fs.stat(args.getFirst()));
     }
 
     // clear (simulação, só adiciona uns espaços)
     public void clear(SistemaArquivos fs, List<String> args) {
-        for(int i = 0; i < 50; i++) System.out.println();
+        for(int i = 0; i < 50; i++) saida.println();
     }
 
     // Permissões e Propriedades:
     public void chmod(SistemaArquivos fs, List<String> args) {
         if (args.size() < 2) {
-            System.out.println("Uso incorreto. Tente: chmod <codigo_octal> <caminho>");
+            erro("Uso incorreto. Tente: chmod <codigo_octal> <caminho>");
             // chmod 777 arquivo.txt
             return;
         }
@@ -245,13 +294,13 @@ public class Comandos {
         String codigo = args.get(0);
         String caminho = args.get(1);
 
-        System.out.println(fs.chmod(codigo, caminho));
+        saida.println(fs.chmod(codigo, caminho));
     }
 
     // [chown <novo_dono> <arquivo>]
     public void chown(SistemaArquivos fs, List<String> args) {
         if (args.size() < 2) {
-            System.out.println("Uso incorreto. Tente: chown <novo_usuario> <caminho>");
+            erro("Uso incorreto. Tente: chown <novo_usuario> <caminho>");
             // chown admin arquivo.txt
             return;
         }
@@ -259,85 +308,214 @@ public class Comandos {
         String usuario = args.get(0);
         String caminho = args.get(1);
 
-        System.out.println(fs.chown(usuario, caminho));
+        saida.println(fs.chown(usuario, caminho));
     }
 
     // [find <caminho> -name <nome>]
     public void find(SistemaArquivos fs, List<String> args) {
         if (args.size() < 3 || !args.get(1).equals("-name")) {
-            System.out.println("Uso disponível: find <caminho> -name <nome>");
+            erro("Uso disponível: find <caminho> -name <nome>");
             return;
         }
 
         String caminho = args.get(0);
         String nome = args.get(2);
 
-        System.out.print(fs.find(caminho, nome));
+        saida.print(fs.find(caminho, nome));
     }
 
-    // [grep <termo> <arquivo>]
+    // [grep [-rEcln] <termo> <arquivo|diretorio|glob>...]
     public void grep(SistemaArquivos fs, List<String> args) {
-        if (args.size() < 2) {
-            System.out.println("Uso: grep <termo> <arquivo>");
+        boolean regex = false, contar = false, soNomes = false, numerar = false, recursivo = false;
+        int i = 0;
+
+        // Flags podem vir separadas (-r -n) ou juntas (-rn)
+        while (i < args.size() && args.get(i).startsWith("-") && args.get(i).length() > 1) {
+            for (char flag : args.get(i).substring(1).toCharArray()) {
+                switch (flag) {
+                    case 'E' -> regex = true;
+                    case 'c' -> contar = true;
+                    case 'l' -> soNomes = true;
+                    case 'n' -> numerar = true;
+                    case 'r' -> recursivo = true;
+                    default -> {
+                        erro("grep: opção inválida -- '" + flag + "'");
+                        return;
+                    }
+                }
+            }
+            i++;
+        }
+
+        if (args.size() - i < 2) {
+            erro("Uso: grep [-r] [-E] [-c] [-l] [-n] <termo> <arquivo>...");
             return;
         }
 
-        String termo = args.get(0);
-        String arquivo = args.get(1);
+        String termo = args.get(i);
+        List<String> alvos = args.subList(i + 1, args.size());
+
+        // Os resultados são impressos conforme cada arquivo termina, sem juntar tudo antes
+        fs.grep(termo, alvos, new OpcoesGrep(regex, contar, soNomes, numerar, recursivo), saida::print);
+    }
 
-        System.out.print(fs.grep(termo, arquivo));
+    // [grep-index on|off|stats]
+    public void grepIndex(SistemaArquivos fs, List<String> args) {
+        saida.println(fs.indiceConteudo(args.isEmpty() ? "stats" : args.get(0)));
     }
 
     // [du <caminho>]
     public void du(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: du <caminho>");
+            erro("Uso: du <caminho>");
             return;
         }
 
-        System.out.print(fs.du(args.get(0)));
+        saida.print(fs.du(args.get(0)));
     }
 
     // cp
     public void cp(SistemaArquivos fs, List<String> args) {
         // Validação básica, cp precisa de 2 coisas (origem e destino)
         if (args.size() < 2) {
-            System.out.println("Uso: cp <origem> <destino>");
+            erro("Uso: cp <origem> <destino>");
             return;
         }
 
         String origem = args.get(0);
         String destino = args.get(1);
 
-        System.out.println(fs.cp(origem, destino));
+        saida.println(fs.cp(origem, destino));
     }
 
     // mv
     public void mv(SistemaArquivos fs, List<String> args) {
         if (args.size() < 2) {
-            System.out.println("Uso: mv <origem> <destino>");
+            erro("Uso: mv <origem> <destino>");
             return;
         }
-        System.out.println(fs.mv(args.get(0), args.get(1)));
+        saida.println(fs.mv(args.get(0), args.get(1)));
     }
 
     // [zip <nome_saida.zip> <arquivo_ou_pasta_alvo>]
     public void zip(SistemaArquivos fs, List<String> args) {
+        // [zip -l <arquivo.zip>] Lista o conteúdo
+        if (args.size() == 2 && args.get(0).equals("-l")) {
+            saida.println(fs.listarZip(args.get(1)));
+            return;
+        }
         if (args.size() < 2) {
-            System.out.println("Uso: zip <nome_arquivo.zip> <caminho_alvo>");
+            erro("Uso: zip <nome_arquivo.zip> <caminho_alvo> | zip -l <arquivo.zip>");
             return;
         }
         // args.get(0) = nome do zip
         // args.get(1) = o que vai ser zipado
-        System.out.println(fs.zip(args.get(0), args.get(1)));
+        saida.println(fs.zip(args.get(0), args.get(1)));
     }
 
-    // [unzip <arquivo.zip>]
+    // [unzip <arquivo.zip> [item]]
     public void unzip(SistemaArquivos fs, List<String> args) {
         if (args.isEmpty()) {
-            System.out.println("Uso: unzip <arquivo.zip>");
+            erro("Uso: unzip <arquivo.zip> [item]");
+            return;
+        }
+        saida.println(fs.unzip(args.get(0), args.size() > 1 ? args.get(1) : null));
+    }
+
+    // [cache-stats] Exibe acertos e falhas do cache de caminhos
+    public void cacheStats(SistemaArquivos fs, List<String> args) {
+        saida.print(fs.estatisticasCache());
+    }
+
+    // [dedup-stats] Exibe o tamanho lógico, o físico e a taxa de deduplicação dos conteúdos
+    public void dedupStats(SistemaArquivos fs, List<String> args) {
+        saida.print(fs.estatisticasDedup());
+    }
+
+    // [paralelismo <n>] Define quantas threads tree, du, find, cp e zip podem usar
+    public void paralelismo(SistemaArquivos fs, List<String> args) {
+        if (args.isEmpty()) {
+            saida.println("Paralelismo do percurso: " + fs.getParalelismo());
+            return;
+        }
+        try {
+            saida.println(fs.setParalelismo(Integer.parseInt(args.getFirst())));
+        } catch (NumberFormatException e) {
+            erro("Uso: paralelismo <numero_de_threads>");
+        }
+    }
+
+    // [save <arquivo_no_host>] Grava a árvore inteira num snapshot binário
+    public void save(SistemaArquivos fs, List<String> args) {
+        if (args.isEmpty()) {
+            erro("Uso: save <arquivo_no_host>");
+            return;
+        }
+        saida.println(fs.salvarSnapshot(args.getFirst()));
+    }
+
+    // [load <arquivo_no_host>] Troca a árvore atual pela de um snapshot
+    public void load(SistemaArquivos fs, List<String> args) {
+        if (args.isEmpty()) {
+            erro("Uso: load <arquivo_no_host>");
+            return;
+        }
+        saida.println(fs.carregarSnapshot(args.getFirst()));
+    }
+
+    // [checkpoint] Grava um snapshot no diretório de dados e compacta o journal
+    public void checkpoint(SistemaArquivos fs, List<String> args) {
+        saida.println(fs.checkpoint());
+    }
+
+    // [journal] Estatísticas do journal (registros, fsyncs, tamanho)
+    public void journal(SistemaArquivos fs, List<String> args) {
+        saida.print(fs.estatisticasJournal());
+    }
+
+    // [import <caminho_no_host> <diretorio_no_simulador>]
+    public void importar(SistemaArquivos fs, List<String> args) {
+        if (args.size() < 2) {
+            erro("Uso: import <caminho_no_host> <diretorio_no_simulador>");
+            return;
+        }
+        saida.println(fs.importar(args.get(0), args.get(1)));
+    }
+
+    // [export <caminho_no_simulador> <caminho_no_host>]
+    public void exportar(SistemaArquivos fs, List<String> args) {
+        if (args.size() < 2) {
+            erro("Uso: export <caminho_no_simulador> <caminho_no_host>");
+            return;
+        }
+        saida.println(fs.exportar(args.get(0), args.get(1)));
+    }
+
+    // [snapshot <nome>] Congela a árvore atual (O(1); o snapshot não pode ser lido, só restaurado) | [snapshot -d <nome>] Descarta
+    public void snapshot(SistemaArquivos fs, List<String> args) {
+        if (args.size() == 2 && args.get(0).equals("-d")) {
+            saida.println(fs.removerVersao(args.get(1)));
+            return;
+        }
+        if (args.size() != 1) {
+            erro("Uso: snapshot <nome> | snapshot -d <nome>");
+            return;
+        }
+        saida.println(fs.criarVersao(args.get(0)));
+    }
+
+    // [snapshots] Lista os snapshots
+    public void snapshots(SistemaArquivos fs, List<String> args) {
+        saida.println(fs.listarVersoes());
+    }
+
+    // [rollback <nome>] Volta a árvore para um snapshot (custo proporcional ao que mudou desde ele)
+    public void rollback(SistemaArquivos fs, List<String> args) {
+        if (args.size() != 1) {
+            erro("Uso: rollback <nome> (restaura na árvore em uso só o que mudou desde o snapshot; "
+                    + "o snapshot em si não pode ser lido, só restaurado)");
             return;
         }
-        System.out.println(fs.unzip(args.get(0)));
+        saida.println(fs.rollback(args.get(0)));
     }
 }
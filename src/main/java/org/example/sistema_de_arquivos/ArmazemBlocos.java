@@ -0,0 +1,89 @@
+package org.example.sistema_de_arquivos;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Armazém global de blocos endereçados pelo conteúdo: blocos iguais (em qualquer arquivo) viram um único array
+// O endereço é um hash de 64 bits do bloco; num acerto o conteúdo é comparado antes de reaproveitar, então uma colisão
+// só deixa de deduplicar, nunca mistura conteúdos
+// As referências são fracas: quando nenhum arquivo usa mais um bloco, o GC o recolhe e a entrada sai do mapa
+public final class ArmazemBlocos {
+    private static final Map<Long, Referencia> blocos = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<byte[]> recolhidos = new ReferenceQueue<>();
+    private static final AtomicLong reaproveitados = new AtomicLong();
+    private static final AtomicLong guardados = new AtomicLong();
+
+    private static final class Referencia extends WeakReference<byte[]> {
+        private final long endereco;
+
+        Referencia(byte[] bloco, long endereco) {
+            super(bloco, recolhidos);
+            this.endereco = endereco;
+        }
+    }
+
+    private ArmazemBlocos() {
+    }
+
+    // Devolve a cópia única do bloco (a já armazenada, se houver uma igual)
+    // O bloco passa a ser do armazém: ninguém pode alterá-lo depois de guardado
+    public static byte[] guardar(byte[] bloco) {
+        limparRecolhidos();
+        long endereco = endereco(bloco);
+        while (true) {
+            Referencia existente = blocos.get(endereco);
+            byte[] armazenado = existente == null ? null : existente.get();
+            if (armazenado != null) {
+                if (!Arrays.equals(armazenado, bloco)) return bloco; // Colisão de hash: fica fora do armazém
+                reaproveitados.incrementAndGet();
+                return armazenado;
+            }
+            Referencia nova = new Referencia(bloco, endereco);
+            boolean inserido = existente == null ? blocos.putIfAbsent(endereco, nova) == null : blocos.replace(endereco, existente, nova);
+            if (inserido) {
+                guardados.incrementAndGet();
+                return bloco;
+            }
+            // Outra thread guardou esse endereço ao mesmo tempo: tenta de novo
+        }
+    }
+
+    // Hash de 64 bits (FNV-1a por byte, com mistura final)
+    private static long endereco(byte[] bloco) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bloco) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        h ^= bloco.length;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static void limparRecolhidos() {
+        Referencia referencia;
+        while ((referencia = (Referencia) recolhidos.poll()) != null) {
+            blocos.remove(referencia.endereco, referencia);
+        }
+    }
+
+    // Blocos distintos ainda em uso (aproximado: os recolhidos pelo GC saem do mapa aos poucos)
+    public static int getBlocosArmazenados() {
+        limparRecolhidos();
+        return blocos.size();
+    }
+
+    // Quantas vezes um bloco novo foi trocado por um já armazenado
+    public static long getReaproveitados() {
+        return reaproveitados.get();
+    }
+
+    public static long getGuardados() {
+        return guardados.get();
+    }
+}
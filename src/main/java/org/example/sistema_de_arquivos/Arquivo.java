@@ -1,32 +1,175 @@
 package org.example.sistema_de_arquivos;
 
-import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjIntConsumer;
 
 public class Arquivo extends NoSistema {
-    private StringBuilder conteudo;
+    private ConteudoArquivo conteudo; // Conteúdo em blocos de bytes (UTF-8 para texto), com índice de linhas
+
+    // Arquivo vindo de um snapshot: o conteúdo só é decodificado na primeira leitura (null depois de carregado)
+    private volatile Snapshot origem;
+    private long posicaoConteudo;
+    private int tamanhoOrigem;
 
     public Arquivo(String nome, Diretorio pai) {
         super(nome, pai);
-        this.conteudo = new StringBuilder();
-        this.permissoes = "-rw-r--r--";// Permissão padrão de arquivo
+        this.conteudo = new ConteudoArquivo();
+        this.permissoes = 0644; // Permissão padrão de arquivo (-rw-r--r--)
+    }
+
+    void ligarSnapshot(Snapshot snapshot, long posicaoConteudo, int tamanho) {
+        this.conteudo = null;
+        this.posicaoConteudo = posicaoConteudo;
+        this.tamanhoOrigem = tamanho;
+        this.origem = snapshot;
+    }
+
+    // Mesmo estado de outro arquivo em O(1) (cópia congelada de um snapshot, ou rollback): o conteúdo é compartilhado até a primeira escrita
+    // Sem propagar tamanho: quem chama já montou os totais do diretório
+    void ligarVersao(Arquivo original) {
+        copiarMetadadosDe(original);
+        Snapshot snapshot = original.origem;
+        if (snapshot != null) {
+            // O original ainda não foi lido do snapshot em disco: a cópia também lê de lá quando precisar
+            ligarSnapshot(snapshot, original.posicaoConteudo, original.tamanhoOrigem);
+        } else {
+            this.conteudo = original.conteudo.compartilhar();
+            this.origem = null;
+        }
+    }
+
+    @Override
+    Arquivo congelar() {
+        Arquivo copia = new Arquivo(nome, null);
+        copia.ligarVersao(this);
+        return copia;
+    }
+
+    // ROLLBACK: volta ao estado de uma cópia congelada (com a trava de escrita do diretório do arquivo)
+    void restaurar(Arquivo estado) {
+        preservarCaminho();
+        if (origem == null) conteudo.liberar();
+        ligarVersao(estado);
+    }
+
+    private ConteudoArquivo conteudo() {
+        if (origem != null) carregarConteudo();
+        return conteudo;
+    }
+
+    private synchronized void carregarConteudo() {
+        if (origem == null) return; // Outra thread já carregou
+        ConteudoArquivo carregado = new ConteudoArquivo();
+        carregado.substituir(origem.carregarConteudo(posicaoConteudo));
+        conteudo = carregado;
+        origem = null;
+    }
+
+    private synchronized void descartarOrigem() {
+        if (origem == null) return;
+        conteudo = new ConteudoArquivo();
+        origem = null;
+    }
+
+    // Conteúdo pronto para ser alterado: se ainda é compartilhado com cópias do cp, este arquivo passa a ter o seu
+    private ConteudoArquivo conteudoParaEscrita() {
+        ConteudoArquivo atual = conteudo();
+        if (atual.isCompartilhado()) {
+            atual = atual.copiarParaEscrita();
+            conteudo = atual;
+        }
+        return atual;
     }
 
     public void setConteudo(String texto) {
-        this.conteudo = new StringBuilder(texto);
+        setBytes(texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Conteúdo qualquer (não precisa ser UTF-8 válido): usado pelo import e pelo unzip
+    public void setBytes(byte[] bytes) {
+        preservarCaminho();
+        int tamanhoAnterior = getTamanho();
+        descartarOrigem(); // O conteúdo antigo vai ser substituído inteiro, não precisa ser lido do snapshot
+        if (conteudo.isCompartilhado()) {
+            // Substituição inteira: nem precisa copiar o compartilhado, só deixar de usá-lo
+            conteudo.liberar();
+            conteudo = new ConteudoArquivo();
+        }
+        this.conteudo.substituir(bytes);
+        propagarTamanho(getTamanho() - tamanhoAnterior);
     }
 
     public void appendConteudo(String texto) {
+        preservarCaminho();
+        int tamanhoAnterior = getTamanho();
+        ConteudoArquivo atual = conteudoParaEscrita();
         // Verifica se o conteúdo atual existe e se não termina com \n
-        if (!conteudo.isEmpty() && conteudo.charAt(conteudo.length() - 1) != '\n') {
-            this.conteudo.append("\n");
+        if (!atual.isVazio() && atual.byteAt(atual.tamanho() - 1) != '\n') {
+            atual.anexar("\n");
         }
 
-        this.conteudo.append(texto).append("\n");
-        this.dataModificacao = LocalDateTime.now();
+        atual.anexar(texto);
+        atual.anexar("\n");
+        this.dataModificacao = System.currentTimeMillis();
+        propagarTamanho(getTamanho() - tamanhoAnterior);
+    }
+
+    // Anexa exatamente os bytes dados (sem a quebra de linha do appendConteudo): usado por quem grava o arquivo aos pedaços
+    public void anexarBytes(byte[] bytes, int inicio, int quantidade) {
+        preservarCaminho();
+        int tamanhoAnterior = getTamanho();
+        conteudoParaEscrita().anexar(bytes, inicio, quantidade);
+        this.dataModificacao = System.currentTimeMillis();
+        propagarTamanho(getTamanho() - tamanhoAnterior);
+    }
+
+    // Usado pelo cp: O(1), as duas cópias usam o mesmo conteúdo até uma delas ser alterada
+    public void copiarConteudoDe(Arquivo original) {
+        preservarCaminho();
+        int tamanhoAnterior = getTamanho();
+        ConteudoArquivo compartilhado = original.conteudo().compartilhar();
+        descartarOrigem();
+        this.conteudo.liberar();
+        this.conteudo = compartilhado;
+        propagarTamanho(getTamanho() - tamanhoAnterior);
     }
 
+    // Conteúdo decodificado como UTF-8
     public String getConteudo() {
-        return conteudo.toString();
+        return conteudo().toString();
+    }
+
+    public byte[] getBytes() {
+        ConteudoArquivo atual = conteudo();
+        return atual.lerBytes(0, atual.tamanho());
+    }
+
+    // Leitura parcial, sem materializar o arquivo inteiro (posições em bytes)
+    public String lerTrecho(int inicio, int fim) {
+        return conteudo().ler(inicio, fim);
+    }
+
+    public byte[] lerBytes(int inicio, int fim) {
+        return conteudo().lerBytes(inicio, fim);
+    }
+
+    // Blocos de bytes em ordem, com a quantidade de bytes válidos de cada um (somente leitura)
+    public void paraCadaBloco(ObjIntConsumer<byte[]> consumidor) {
+        conteudo().paraCadaBloco(consumidor);
+    }
+
+    // Acesso por linha usando o índice (sem split do conteúdo inteiro)
+    public int getNumeroLinhas() {
+        return conteudo().getIndiceLinhas().getNumeroLinhas();
+    }
+
+    public String getLinha(int linha) {
+        IndiceLinhas indice = conteudo().getIndiceLinhas();
+        return conteudo().ler(indice.getInicioLinha(linha), indice.getFimLinha(linha));
+    }
+
+    public int getNumeroPalavras() {
+        return conteudo().getIndiceLinhas().getNumeroPalavras();
     }
 
     @Override
@@ -36,7 +179,9 @@ public class Arquivo extends NoSistema {
 
     @Override
     public int getTamanho() {
-        return conteudo.length(); // Tamanho em caracteres (bytes aproximados)
+        // Arquivo ainda não lido do snapshot: usa o tamanho gravado, sem decodificar o conteúdo
+        if (origem != null) return tamanhoOrigem;
+        return conteudo().tamanho(); // Tamanho real em bytes
     }
 
 }
@@ -0,0 +1,138 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache de resolução de caminhos (inspirado no dentry cache do Linux)
+// A chave é sempre o caminho absoluto normalizado, o valor é o nó encontrado
+// Dividido em segmentos com trava própria (pelo hash da chave): threads que resolvem caminhos diferentes
+// raramente disputam a mesma trava. Cada segmento é um LRU independente
+public class CacheCaminhos {
+    private static final int SEGMENTOS = 16;
+
+    private final int capacidade;
+    private final Segmento[] segmentos;
+
+    // Avança a cada invalidação: uma resolução que começou antes não pode registrar um resultado talvez já velho
+    private final AtomicLong geracao = new AtomicLong();
+
+    // Contadores para medir o ganho do cache
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    @SuppressWarnings("serial") // O cache nunca é serializado
+    private static final class Segmento extends LinkedHashMap<String, NoSistema> {
+        private final int capacidade;
+
+        Segmento(int capacidade) {
+            // accessOrder = true: a entrada usada há mais tempo é a primeira a sair (LRU)
+            super(16, 0.75f, true);
+            this.capacidade = capacidade;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NoSistema> maisAntiga) {
+            return size() > capacidade;
+        }
+    }
+
+    public CacheCaminhos(int capacidade) {
+        this.capacidade = capacidade;
+        this.segmentos = new Segmento[SEGMENTOS];
+        int porSegmento = Math.max(1, (capacidade + SEGMENTOS - 1) / SEGMENTOS);
+        for (int i = 0; i < SEGMENTOS; i++) segmentos[i] = new Segmento(porSegmento);
+    }
+
+    private Segmento segmento(String caminho) {
+        int h = caminho.hashCode();
+        return segmentos[(h ^ (h >>> 16)) & (SEGMENTOS - 1)];
+    }
+
+    public NoSistema buscar(String caminho) {
+        Segmento segmento = segmento(caminho);
+        NoSistema no;
+        synchronized (segmento) {
+            no = segmento.get(caminho);
+        }
+        if (no != null) acertos.increment();
+        else falhas.increment();
+        return no;
+    }
+
+    // Geração atual: lida antes de resolver um caminho e devolvida no registrar
+    public long getGeracao() {
+        return geracao.get();
+    }
+
+    public void registrar(String caminho, NoSistema no) {
+        registrar(caminho, no, geracao.get());
+    }
+
+    // Só guarda se nenhuma invalidação aconteceu desde 'geracaoLida'
+    // (a conferência é refeita depois de inserir, porque a invalidação pode ter passado pelo segmento antes da inserção)
+    public void registrar(String caminho, NoSistema no, long geracaoLida) {
+        if (geracao.get() != geracaoLida) return;
+        Segmento segmento = segmento(caminho);
+        synchronized (segmento) {
+            segmento.put(caminho, no);
+        }
+        if (geracao.get() != geracaoLida) {
+            synchronized (segmento) {
+                segmento.remove(caminho, no);
+            }
+        }
+    }
+
+    // Remove o caminho e tudo que está abaixo dele (ex: "/a" remove "/a", "/a/b", "/a/b/c"...)
+    public void invalidar(String caminho) {
+        if (caminho.equals("/")) {
+            limpar();
+            return;
+        }
+        geracao.incrementAndGet();
+        String prefixo = caminho + "/";
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                Iterator<String> it = segmento.keySet().iterator();
+                while (it.hasNext()) {
+                    String chave = it.next();
+                    if (chave.equals(caminho) || chave.startsWith(prefixo)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    // Só avança a geração, sem remover nada: usado depois que um nó mudou de lugar,
+    // para quem guardou um caminho montado antes (ex: o diretório atual de uma sessão)
+    public void avancarGeracao() {
+        geracao.incrementAndGet();
+    }
+
+    public void limpar() {
+        geracao.incrementAndGet();
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                segmento.clear();
+            }
+        }
+    }
+
+    public int getTamanho() {
+        int total = 0;
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                total += segmento.size();
+            }
+        }
+        return total;
+    }
+
+    public int getCapacidade() { return capacidade; }
+    public long getAcertos() { return acertos.sum(); }
+    public long getFalhas() { return falhas.sum(); }
+}
@@ -1,14 +1,510 @@
 package org.example.sistema_de_arquivos;
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Compactador {
 
+    // Tamanho dos blocos lidos/gravados de uma vez (uma chamada ao sistema por bloco, não por byte)
+    private static final int TAMANHO_BLOCO = 1 << 20;
+
     /**
-     * Compacta o arquivo usando o algoritmo RLE.
-     * Formato: [Quantidade][Byte]
+     * Compacta o arquivo usando RLE no formato 2 (estilo PackBits).
+     * Formato: [Cabeçalho] e depois blocos de:
+     *   [0..127][n+1 bytes literais]       -> trechos sem repetição são copiados quase sem custo extra
+     *   [128..255][Byte]                   -> o byte repetido (n - 128 + 3) vezes (3 a 130)
+     * Sequências de 2 bytes iguais ficam no literal: como repetição não economizariam nada.
+     * No pior caso (nenhuma repetição) a saída cresce 1 byte a cada 128, em vez de dobrar como no formato 1.
      */
 
     public static void compactar(File arquivoOrigem, File arquivoDestino) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoOrigem.toPath(), StandardOpenOption.READ);
+             FileChannel out = abrirDestino(arquivoDestino)) {
+
+            ByteBuffer entrada = ByteBuffer.allocate(TAMANHO_BLOCO);
+            ByteBuffer saida = ByteBuffer.allocate(tamanhoMaximoCodificado(TAMANHO_BLOCO));
+            byte[] dados = entrada.array();
+            byte[] codificados = saida.array();
+
+            saida.put(CABECALHO_V2).flip();
+            gravarTudo(out, saida);
+
+            // Cada bloco é codificado de forma independente (uma sequência que cruza o limite vira duas)
+            boolean fim = false;
+            while (!fim) {
+                fim = preencher(in, entrada);
+                saida.limit(codificarBloco(dados, 0, entrada.position(), codificados, 0));
+                gravarTudo(out, saida);
+                entrada.clear();
+            }
+        }
+    }
+
+    /**
+     * Descompacta detectando o formato pelo cabeçalho (arquivos do formato 1 continuam funcionando)
+     */
+
+    public static void descompactar(File arquivoZipado, File arquivoDestino) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoZipado.toPath(), StandardOpenOption.READ);
+             FileChannel out = abrirDestino(arquivoDestino)) {
+
+            ByteBuffer entrada = ByteBuffer.allocate(TAMANHO_BLOCO);
+            while (entrada.position() < CABECALHO_V2.length && in.read(entrada) != -1) {
+                // Lê pelo menos o tamanho do cabeçalho (ou o arquivo inteiro, se for menor)
+            }
+
+            int versao = versaoDoCabecalho(entrada.array(), entrada.position());
+            if (versao == 3) {
+                descompactarEmBlocos(in, out, Runtime.getRuntime().availableProcessors());
+            } else if (versao == 2) {
+                // Descarta o cabeçalho e continua com o resto do que já foi lido
+                entrada.flip().position(CABECALHO_V2.length);
+                entrada.compact();
+                descompactarV2(in, out, entrada);
+            } else {
+                descompactarV1(in, out, entrada);
+            }
+        }
+    }
+
+    // --- Formato 2: literais e repetições ---
+
+    // O formato 1 sempre começa com uma quantidade >= 1, então um 0 no primeiro byte identifica o formato 2
+    private static final byte[] CABECALHO_V2 = {0, 'R', 'L', 'E', 2};
+
+    private static final int MAXIMO_LITERAL = 128;
+    private static final int MINIMO_REPETICAO = 3;
+    private static final int MAXIMO_REPETICAO = 130;
+
+    // Leitura de 8 bytes de uma vez do array (comparação por palavra em vez de byte a byte)
+    private static final VarHandle PALAVRA = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long UNS = 0x0101010101010101L;
+    private static final long ALTOS = 0x8080808080808080L;
+
+    // 2 ou 3 quando o arquivo começa com o cabeçalho desses formatos; 1 caso contrário
+    private static int versaoDoCabecalho(byte[] dados, int tamanho) {
+        if (tamanho < CABECALHO_V2.length) return 1;
+        for (int i = 0; i < CABECALHO_V2.length - 1; i++) {
+            if (dados[i] != CABECALHO_V2[i]) return 1;
+        }
+        int versao = dados[CABECALHO_V2.length - 1];
+        return versao == 2 || versao == 3 ? versao : 1;
+    }
+
+    // Pior caso: tudo literal (1 byte de controle a cada 128)
+    static int tamanhoMaximoCodificado(int tamanhoEntrada) {
+        return tamanhoEntrada + (tamanhoEntrada + MAXIMO_LITERAL - 1) / MAXIMO_LITERAL + CABECALHO_V2.length;
+    }
+
+    // Codifica entrada[inicio, fim) em saida a partir de 'pos' e devolve a posição final
+    static int codificarBloco(byte[] entrada, int inicio, int fim, byte[] saida, int pos) {
+        int i = inicio;
+        int inicioLiteral = inicio;
+        while (i < fim) {
+            int repeticoes = tamanhoSequencia(entrada, i, fim);
+            if (repeticoes >= MINIMO_REPETICAO) {
+                pos = gravarLiteral(entrada, inicioLiteral, i, saida, pos);
+                saida[pos++] = (byte) (128 + repeticoes - MINIMO_REPETICAO);
+                saida[pos++] = entrada[i];
+                i += repeticoes;
+                inicioLiteral = i;
+            } else {
+                i = proximaSequencia(entrada, i + 1, fim);
+            }
+        }
+        return gravarLiteral(entrada, inicioLiteral, fim, saida, pos);
+    }
+
+    private static int gravarLiteral(byte[] entrada, int inicio, int fim, byte[] saida, int pos) {
+        while (inicio < fim) {
+            int tamanho = Math.min(MAXIMO_LITERAL, fim - inicio);
+            saida[pos++] = (byte) (tamanho - 1);
+            System.arraycopy(entrada, inicio, saida, pos, tamanho);
+            pos += tamanho;
+            inicio += tamanho;
+        }
+        return pos;
+    }
+
+    // Quantas vezes entrada[i] se repete a partir de i (até MAXIMO_REPETICAO), comparando 8 bytes por vez
+    private static int tamanhoSequencia(byte[] entrada, int i, int fim) {
+        int limite = Math.min(fim, i + MAXIMO_REPETICAO);
+        long padrao = (entrada[i] & 0xFFL) * UNS;
+        int j = i + 1;
+        while (j + 8 <= limite) {
+            long diferenca = (long) PALAVRA.get(entrada, j) ^ padrao;
+            if (diferenca != 0) return j + (Long.numberOfTrailingZeros(diferenca) >>> 3) - i;
+            j += 8;
+        }
+        while (j < limite && entrada[j] == entrada[i]) j++;
+        return j - i;
+    }
+
+    // Primeira posição >= i onde começam 3 bytes iguais (ou 'fim' se não houver)
+    // Numa palavra, d = w ^ (w deslocada 1 byte) tem um byte zero onde entrada[k] == entrada[k + 1];
+    // d | (d >>> 8) tem um byte zero onde isso vale para k e k + 1 ao mesmo tempo
+    private static int proximaSequencia(byte[] entrada, int i, int fim) {
+        int k = i;
+        while (k + 9 <= fim) {
+            long d = (long) PALAVRA.get(entrada, k) ^ (long) PALAVRA.get(entrada, k + 1);
+            long v = d | (d >>> 8);
+            long zeros = (v - UNS) & ~v & ALTOS;
+            // O byte mais alto de v não tem o vizinho carregado: só as posições 0 a 6 valem
+            zeros &= 0x0080808080808080L;
+            if (zeros != 0) return k + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            k += 7;
+        }
+        for (; k + 2 < fim; k++) {
+            if (entrada[k] == entrada[k + 1] && entrada[k + 1] == entrada[k + 2]) return k;
+        }
+        return fim;
+    }
+
+    private static void descompactarV2(FileChannel in, FileChannel out, ByteBuffer entrada) throws IOException {
+        ByteBuffer saida = ByteBuffer.allocate(TAMANHO_BLOCO + MAXIMO_REPETICAO);
+        byte[] dados = entrada.array();
+        byte[] bytes = saida.array();
+
+        // Estado que atravessa os blocos lidos: bytes literais que ainda faltam copiar ou uma repetição sem o byte
+        int literalRestante = 0;
+        int repeticaoPendente = 0;
+        boolean fim = false;
+
+        while (!fim) {
+            fim = preencher(in, entrada);
+            int lidos = entrada.position();
+            int escritos = 0;
+            int i = 0;
+
+            while (i < lidos) {
+                if (literalRestante > 0) {
+                    int copiar = Math.min(literalRestante, Math.min(lidos - i, TAMANHO_BLOCO - escritos));
+                    System.arraycopy(dados, i, bytes, escritos, copiar);
+                    i += copiar;
+                    escritos += copiar;
+                    literalRestante -= copiar;
+                } else if (repeticaoPendente > 0) {
+                    byte valor = dados[i++];
+                    for (int r = 0; r < repeticaoPendente; r++) bytes[escritos++] = valor;
+                    repeticaoPendente = 0;
+                } else {
+                    int controle = dados[i++] & 0xFF;
+                    if (controle < 128) literalRestante = controle + 1;
+                    else repeticaoPendente = controle - 128 + MINIMO_REPETICAO;
+                }
+
+                if (escritos >= TAMANHO_BLOCO) {
+                    saida.limit(escritos);
+                    gravarTudo(out, saida);
+                    escritos = 0;
+                }
+            }
+
+            saida.limit(escritos);
+            gravarTudo(out, saida);
+            entrada.clear();
+        }
+        // Um bloco cortado no fim (arquivo corrompido) é ignorado, como no formato 1
+    }
+
+    // Completa o buffer a partir da posição atual; devolve true quando o arquivo acabou
+    private static boolean preencher(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) == -1) return true;
+        }
+        return false;
+    }
+
+    // --- Formato 3: blocos independentes com índice (compressão e descompressão em paralelo) ---
+    //
+    // [Cabeçalho][tamanho do bloco (int)][blocos no formato 2, sem cabeçalho]...[índice][rodapé]
+    //   índice: por bloco, posição no arquivo (long) | tamanho compactado (int) | tamanho original (int)
+    //   rodapé: posição do índice (long) | quantidade de blocos (int) | MAGICO_INDICE (int)
+    // Como cada bloco não depende dos outros, qualquer um pode ser lido direto pelo índice
+
+    private static final byte[] CABECALHO_V3 = {0, 'R', 'L', 'E', 3};
+    private static final int MAGICO_INDICE = 0x524C4549; // "RLEI"
+    private static final int TAMANHO_RODAPE = 16;
+
+    // Buffer de leitura de cada thread do pool (o bloco original só é usado dentro da tarefa)
+    private static final ThreadLocal<byte[]> BUFFER_BLOCO = ThreadLocal.withInitial(() -> new byte[TAMANHO_BLOCO]);
+
+    // Posição do bloco no arquivo compactado e onde ele começa no arquivo original
+    public record Bloco(long posicao, int tamanhoCompactado, int tamanhoOriginal, long inicioOriginal) {}
+
+    public static void compactarEmBlocos(File arquivoOrigem, File arquivoDestino, int threads) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoOrigem.toPath(), StandardOpenOption.READ);
+             FileChannel out = abrirDestino(arquivoDestino)) {
+
+            long tamanho = in.size();
+            int totalBlocos = (int) ((tamanho + TAMANHO_BLOCO - 1) / TAMANHO_BLOCO);
+            ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_V3.length + 4).put(CABECALHO_V3).putInt(TAMANHO_BLOCO);
+            cabecalho.flip();
+            gravarTudo(out, cabecalho);
+
+            // Os blocos são comprimidos no pool e gravados aqui, na ordem, conforme ficam prontos
+            ByteBuffer indice = ByteBuffer.allocate(totalBlocos * 16 + TAMANHO_RODAPE);
+            long[] posicao = {CABECALHO_V3.length + 4};
+            JanelaOrdenada.emParalelo(totalBlocos, threads, i -> {
+                long inicio = (long) i * TAMANHO_BLOCO;
+                int tamanhoOriginal = (int) Math.min(TAMANHO_BLOCO, tamanho - inicio);
+                byte[] dados = BUFFER_BLOCO.get();
+                lerExato(in, ByteBuffer.wrap(dados, 0, tamanhoOriginal), inicio);
+                byte[] codificados = new byte[tamanhoMaximoCodificado(tamanhoOriginal)];
+                int tamanhoCodificado = codificarBloco(dados, 0, tamanhoOriginal, codificados, 0);
+                return Arrays.copyOf(codificados, tamanhoCodificado);
+            }, (i, codificados) -> {
+                gravarTudo(out, ByteBuffer.wrap(codificados));
+                int tamanhoOriginal = (int) Math.min(TAMANHO_BLOCO, tamanho - (long) i * TAMANHO_BLOCO);
+                indice.putLong(posicao[0]).putInt(codificados.length).putInt(tamanhoOriginal);
+                posicao[0] += codificados.length;
+            });
+
+            indice.putLong(posicao[0]).putInt(totalBlocos).putInt(MAGICO_INDICE);
+            indice.flip();
+            gravarTudo(out, indice);
+        }
+    }
+
+    public static void descompactarEmBlocos(File arquivoZipado, File arquivoDestino, int threads) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoZipado.toPath(), StandardOpenOption.READ);
+             FileChannel out = abrirDestino(arquivoDestino)) {
+            descompactarEmBlocos(in, out, threads);
+        }
+    }
+
+    // Cada bloco é lido e gravado na sua posição (leitura/gravação posicional no canal, sem disputa entre as threads)
+    private static void descompactarEmBlocos(FileChannel in, FileChannel out, int threads) throws IOException {
+        List<Bloco> blocos = lerIndice(in);
+        JanelaOrdenada.emParalelo(blocos.size(), threads, i -> {
+            Bloco bloco = blocos.get(i);
+            byte[] dados = BUFFER_BLOCO.get();
+            int tamanho = decodificarBloco(in, bloco, dados);
+            gravarExato(out, ByteBuffer.wrap(dados, 0, tamanho), bloco.inicioOriginal());
+            return null;
+        }, (i, nada) -> {});
+    }
+
+    // Acesso direto a um bloco (sem ler os anteriores)
+    public static byte[] lerBloco(File arquivoZipado, int indiceBloco) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoZipado.toPath(), StandardOpenOption.READ)) {
+            List<Bloco> blocos = lerIndice(in);
+            if (indiceBloco < 0 || indiceBloco >= blocos.size()) {
+                throw new IOException("Bloco " + indiceBloco + " não existe (o arquivo tem " + blocos.size() + ").");
+            }
+            byte[] dados = new byte[blocos.get(indiceBloco).tamanhoOriginal()];
+            decodificarBloco(in, blocos.get(indiceBloco), dados);
+            return dados;
+        }
+    }
+
+    public static List<Bloco> lerIndice(File arquivoZipado) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoZipado.toPath(), StandardOpenOption.READ)) {
+            return lerIndice(in);
+        }
+    }
+
+    private static List<Bloco> lerIndice(FileChannel in) throws IOException {
+        long tamanhoArquivo = in.size();
+        if (tamanhoArquivo < CABECALHO_V3.length + 4 + TAMANHO_RODAPE) throw new IOException("Arquivo em blocos incompleto.");
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_V3.length + 4);
+        lerExato(in, cabecalho, 0);
+        if (versaoDoCabecalho(cabecalho.array(), CABECALHO_V3.length) != 3) throw new IOException("Não é um arquivo RLE em blocos.");
+        int tamanhoBloco = cabecalho.getInt(CABECALHO_V3.length);
+
+        ByteBuffer rodape = ByteBuffer.allocate(TAMANHO_RODAPE);
+        lerExato(in, rodape, tamanhoArquivo - TAMANHO_RODAPE);
+        long posicaoIndice = rodape.getLong(0);
+        int totalBlocos = rodape.getInt(8);
+        if (rodape.getInt(12) != MAGICO_INDICE || totalBlocos < 0
+                || posicaoIndice + (long) totalBlocos * 16 != tamanhoArquivo - TAMANHO_RODAPE) {
+            throw new IOException("Índice de blocos corrompido.");
+        }
+
+        ByteBuffer indice = ByteBuffer.allocate(totalBlocos * 16);
+        lerExato(in, indice, posicaoIndice);
+        indice.flip();
+        List<Bloco> blocos = new ArrayList<>(totalBlocos);
+        for (int i = 0; i < totalBlocos; i++) {
+            Bloco bloco = new Bloco(indice.getLong(), indice.getInt(), indice.getInt(), (long) i * tamanhoBloco);
+            if (bloco.tamanhoOriginal() > TAMANHO_BLOCO || bloco.posicao() + bloco.tamanhoCompactado() > posicaoIndice) {
+                throw new IOException("Índice de blocos corrompido.");
+            }
+            blocos.add(bloco);
+        }
+        return blocos;
+    }
+
+    // Lê o bloco compactado e decodifica em 'destino'; devolve o tamanho original
+    private static int decodificarBloco(FileChannel in, Bloco bloco, byte[] destino) throws IOException {
+        byte[] codificados = new byte[bloco.tamanhoCompactado()];
+        lerExato(in, ByteBuffer.wrap(codificados), bloco.posicao());
+
+        int pos = 0;
+        int i = 0;
+        while (i < codificados.length) {
+            int controle = codificados[i++] & 0xFF;
+            if (controle < 128) {
+                int tamanho = controle + 1;
+                if (i + tamanho > codificados.length || pos + tamanho > bloco.tamanhoOriginal()) throw blocoCorrompido(bloco);
+                System.arraycopy(codificados, i, destino, pos, tamanho);
+                i += tamanho;
+                pos += tamanho;
+            } else {
+                int repeticoes = controle - 128 + MINIMO_REPETICAO;
+                if (i >= codificados.length || pos + repeticoes > bloco.tamanhoOriginal()) throw blocoCorrompido(bloco);
+                Arrays.fill(destino, pos, pos + repeticoes, codificados[i++]);
+                pos += repeticoes;
+            }
+        }
+        if (pos != bloco.tamanhoOriginal()) throw blocoCorrompido(bloco);
+        return pos;
+    }
+
+    private static IOException blocoCorrompido(Bloco bloco) {
+        return new IOException("Bloco corrompido na posição " + bloco.posicao() + ".");
+    }
+
+    // Leitura/gravação posicional completa (o canal não muda de posição: seguro entre threads)
+    private static void lerExato(FileChannel in, ByteBuffer buffer, long posicao) throws IOException {
+        while (buffer.hasRemaining()) {
+            int lidos = in.read(buffer, posicao);
+            if (lidos == -1) throw new EOFException("Fim de arquivo inesperado.");
+            posicao += lidos;
+        }
+    }
+
+    private static void gravarExato(FileChannel out, ByteBuffer buffer, long posicao) throws IOException {
+        while (buffer.hasRemaining()) posicao += out.write(buffer, posicao);
+    }
+
+    // --- Formato 1: [Quantidade][Byte] ---
+
+    /**
+     * Compacta no formato original do RLE (sem cabeçalho).
+     * Formato: [Quantidade][Byte]
+     */
+
+    public static void compactarV1(File arquivoOrigem, File arquivoDestino) throws IOException {
+        try (FileChannel in = FileChannel.open(arquivoOrigem.toPath(), StandardOpenOption.READ);
+             FileChannel out = abrirDestino(arquivoDestino)) {
+
+            ByteBuffer entrada = ByteBuffer.allocate(TAMANHO_BLOCO);
+            // Cada byte de entrada gera no máximo 2 de saída (sequência de tamanho 1)
+            ByteBuffer saida = ByteBuffer.allocate(2 * TAMANHO_BLOCO);
+            byte[] dados = entrada.array();
+            byte[] pares = saida.array();
+
+            // A sequência atual continua de um bloco para o outro (a saída é idêntica à versão byte a byte)
+            int byteAtual = -1;
+            int contador = 0;
+
+            while (in.read(entrada) != -1) {
+                int lidos = entrada.position();
+                int escritos = 0;
+
+                for (int i = 0; i < lidos; i++) {
+                    int valor = dados[i] & 0xFF;
+                    // O limite de 255 é porque a quantidade é gravada em 1 único byte (0-255)
+                    if (valor == byteAtual && contador < 255) {
+                        contador++;
+                    } else {
+                        if (byteAtual != -1) {
+                            pares[escritos++] = (byte) contador;
+                            pares[escritos++] = (byte) byteAtual;
+                        }
+                        byteAtual = valor;
+                        contador = 1;
+                    }
+                }
+
+                saida.limit(escritos);
+                gravarTudo(out, saida);
+                entrada.clear();
+            }
+
+            // Última sequência pendente
+            if (byteAtual != -1) {
+                saida.clear();
+                saida.put((byte) contador).put((byte) byteAtual).flip();
+                gravarTudo(out, saida);
+            }
+        }
+    }
+
+    /**
+     * Descompacta o formato 1 lendo o par [Quantidade][Byte]
+     * 'entrada' pode já conter bytes lidos do arquivo (o início usado para detectar o formato)
+     */
+
+    private static void descompactarV1(FileChannel in, FileChannel out, ByteBuffer entrada) throws IOException {
+        ByteBuffer saida = ByteBuffer.allocate(TAMANHO_BLOCO + 255);
+        byte[] dados = entrada.array();
+        byte[] bytes = saida.array();
+        boolean fim = false;
+
+        // Quantidade lida no fim de um bloco cujo byte de dados só vem no próximo
+        int quantidadePendente = -1;
+
+        while (!fim) {
+            fim = preencher(in, entrada);
+            int lidos = entrada.position();
+            int escritos = 0;
+            int i = 0;
+
+            while (i < lidos) {
+                int quantidade;
+                if (quantidadePendente != -1) {
+                    quantidade = quantidadePendente;
+                    quantidadePendente = -1;
+                } else if (i + 1 < lidos) {
+                    quantidade = dados[i++] & 0xFF;
+                } else {
+                    quantidadePendente = dados[i++] & 0xFF;
+                    break;
+                }
+
+                byte valorByte = dados[i++];
+                for (int r = 0; r < quantidade; r++) bytes[escritos++] = valorByte;
+
+                // Esvazia antes que o próximo par (até 255 bytes) possa não caber
+                if (escritos > TAMANHO_BLOCO) {
+                    saida.limit(escritos);
+                    gravarTudo(out, saida);
+                    escritos = 0;
+                }
+            }
+
+            saida.limit(escritos);
+            gravarTudo(out, saida);
+            entrada.clear();
+        }
+        // Segurança: uma quantidade sem o byte de dados (arquivo corrompido) é ignorada, como antes
+    }
+
+    private static FileChannel abrirDestino(File arquivo) throws IOException {
+        return FileChannel.open(arquivo.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Grava o buffer inteiro (do início até o limite) e o deixa pronto para ser reutilizado
+    private static void gravarTudo(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) out.write(buffer);
+        buffer.clear();
+    }
+
+    // --- Versão original, byte a byte (mantida como referência para o benchmark) ---
+
+    public static void compactarPorByte(File arquivoOrigem, File arquivoDestino) throws IOException {
         // FileInputStream para ler bytes
         // PushbackInputStream permite devolver um byte lido (essencial para o RLE)
         try (PushbackInputStream in = new PushbackInputStream(new FileInputStream(arquivoOrigem));
@@ -22,52 +518,39 @@ public class Compactador {
                 int proximoByte;
 
                 // Loop interno: Verifica quantos bytes idênticos existem na sequência
-                // O limite de 255 é porque vamos gravar a quantidade em 1 único byte (0-255)
                 while ((proximoByte = in.read()) != -1) {
                     if (proximoByte == byteAtual && contador < 255) {
                         contador++;
                     } else {
-                        // Se o byte for diferente, ou se chegamos a 255 repetições:
                         // Devolvemos o byte para o fluxo, para ele ser processado na próxima volta
                         in.unread(proximoByte);
                         break;
                     }
                 }
 
-                // --- GRAVAÇÃO NO ARQUIVO ZIPADO ---
-                // 1. Escreve a QUANTIDADE de repetições
                 out.write(contador);
-
-                // 2. Escreve o BYTE (o dado em si)
                 out.write(byteAtual);
             }
         }
     }
 
-    /**
-     * Descompacta o arquivo lendo o par [Quantidade][Byte]
-     */
-
-    public static void descompactar(File arquivoZipado, File arquivoDestino) throws IOException {
+    public static void descompactarPorByte(File arquivoZipado, File arquivoDestino) throws IOException {
         try (FileInputStream in = new FileInputStream(arquivoZipado);
              FileOutputStream out = new FileOutputStream(arquivoDestino)) {
 
             int quantidade;
 
-            // O loop lê sempre de par em par:
-            // 1º lê a QUANTIDADE
+            // O loop lê sempre de par em par: 1º a QUANTIDADE, 2º o BYTE DE DADOS
             while ((quantidade = in.read()) != -1) {
-                // 2º lê o BYTE DE DADOS
                 int valorByte = in.read();
 
                 // Segurança: Se o arquivo acabou no meio do par (corrompido)
                 if (valorByte == -1) break;
 
-                // Escreve o byte no destino X vezes (baseado na quantidade)
                 for (int i = 0; i < quantidade; i++) {
                     out.write(valorByte);
                 }
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package org.example.sistema_de_arquivos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Formato binário do zip do simulador (substitui o texto "ARQUIVO ZIPADO" + linhas com Base64)
+//
+//   cabeçalho: MAGICO (int) | versão (byte)
+//   dados:     conteúdo comprimido (Deflate) de cada arquivo, um atrás do outro
+//   diretório central, uma entrada por item:
+//     tipo (byte) | permissões (short) | data (long) | posição dos dados (long) | tamanho comprimido (int)
+//     | tamanho original (int) | CRC32 do original (int) | dono | caminho     (textos: short + UTF-8)
+//   fim:       posição do diretório central (long) | quantidade de entradas (int) | MAGICO_FIM (int)
+//
+// O zip é gravado em sequência (dados de cada arquivo na ordem em que ficam prontos, diretório central no fim),
+// então pode ser montado aos pedaços enquanto os arquivos são comprimidos
+//
+// O arquivo do simulador guarda bytes, então o fim/diretório/dados de uma entrada podem ser lidos direto com lerBytes
+public class ContainerZip {
+    private static final int MAGICO = 0x535A4950;     // "SZIP"
+    private static final int MAGICO_FIM = 0x535A4945; // "SZIE"
+    private static final byte VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 5;
+    private static final int TAMANHO_FIM = 16;
+    // Entrada do diretório central com dono e caminho vazios
+    private static final int TAMANHO_MINIMO_ENTRADA = 35;
+    // O Deflate não passa de ~1032:1: um tamanho original maior que isso é mentira do cabeçalho
+    private static final long RAZAO_MAXIMA_DEFLATE = 1032;
+
+    private static final byte TIPO_ARQUIVO = 0;
+    private static final byte TIPO_DIRETORIO = 1;
+
+    public record Entrada(boolean diretorio, String caminho, int modo, String dono, long dataModificacao,
+                          long posicao, int tamanhoComprimido, int tamanhoOriginal, int crc) {}
+
+    // --- Escrita ---
+
+    // Grava o zip aos pedaços direto no Arquivo de destino: só o diretório central (metadados) fica em memória
+    public static class Escritor {
+        private static final int TAMANHO_BUFFER = 64 * 1024;
+
+        private final Arquivo destino;
+        private final byte[] buffer = new byte[TAMANHO_BUFFER];
+        private int tamanhoBuffer;
+        private final List<Entrada> entradas = new ArrayList<>();
+        private long posicao;
+
+        public Escritor(Arquivo destino) {
+            this.destino = destino;
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO).putInt(MAGICO).put(VERSAO);
+            gravar(cabecalho.array(), 0, TAMANHO_CABECALHO);
+        }
+
+        public void adicionarDiretorio(String caminho, NoSistema no) {
+            entradas.add(new Entrada(true, caminho, no.getModo(), no.getDono(), no.getDataModificacao(), 0, 0, 0, 0));
+        }
+
+        public void adicionarArquivo(String caminho, NoSistema no, byte[] comprimido, int tamanhoOriginal, int crc) {
+            entradas.add(new Entrada(false, caminho, no.getModo(), no.getDono(), no.getDataModificacao(),
+                    posicao, comprimido.length, tamanhoOriginal, crc));
+            gravar(comprimido, 0, comprimido.length);
+        }
+
+        // Grava o diretório central e o fim
+        public void finalizar() {
+            try {
+                long posicaoDiretorio = posicao;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream saida = new DataOutputStream(bytes);
+                for (Entrada entrada : entradas) {
+                    saida.writeByte(entrada.diretorio() ? TIPO_DIRETORIO : TIPO_ARQUIVO);
+                    saida.writeShort(entrada.modo());
+                    saida.writeLong(entrada.dataModificacao());
+                    saida.writeLong(entrada.posicao());
+                    saida.writeInt(entrada.tamanhoComprimido());
+                    saida.writeInt(entrada.tamanhoOriginal());
+                    saida.writeInt(entrada.crc());
+                    escreverTexto(saida, entrada.dono());
+                    escreverTexto(saida, entrada.caminho());
+                }
+                saida.writeLong(posicaoDiretorio);
+                saida.writeInt(entradas.size());
+                saida.writeInt(MAGICO_FIM);
+                saida.flush();
+                gravar(bytes.toByteArray(), 0, bytes.size());
+                descarregar();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Não acontece com ByteArrayOutputStream
+            }
+        }
+
+        public int getTotalEntradas() {
+            return entradas.size();
+        }
+
+        // Pedaços pequenos são juntados antes de ir para o arquivo
+        private void gravar(byte[] bytes, int inicio, int tamanho) {
+            posicao += tamanho;
+            if (tamanhoBuffer + tamanho > TAMANHO_BUFFER) descarregar();
+            if (tamanho >= TAMANHO_BUFFER) {
+                destino.anexarBytes(bytes, inicio, tamanho);
+            } else {
+                System.arraycopy(bytes, inicio, buffer, tamanhoBuffer, tamanho);
+                tamanhoBuffer += tamanho;
+            }
+        }
+
+        private void descarregar() {
+            if (tamanhoBuffer == 0) return;
+            destino.anexarBytes(buffer, 0, tamanhoBuffer);
+            tamanhoBuffer = 0;
+        }
+    }
+
+    private static void escreverTexto(DataOutputStream saida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeShort(bytes.length);
+        saida.write(bytes);
+    }
+
+    // --- Leitura ---
+
+    // Só olha os primeiros bytes (o formato de texto antigo começa com "ARQUIVO ZIPADO")
+    public static boolean ehContainer(Arquivo arquivo) {
+        if (arquivo.getTamanho() < TAMANHO_CABECALHO + TAMANHO_FIM) return false;
+        ByteBuffer cabecalho = ByteBuffer.wrap(ler(arquivo, 0, TAMANHO_CABECALHO));
+        return cabecalho.getInt() == MAGICO && cabecalho.get() == VERSAO;
+    }
+
+    // Lê só o fim e o diretório central: O(entradas), sem tocar nos dados
+    public static List<Entrada> lerEntradas(Arquivo arquivo) throws IOException {
+        int tamanho = arquivo.getTamanho();
+        ByteBuffer fim = ByteBuffer.wrap(ler(arquivo, tamanho - TAMANHO_FIM, tamanho));
+        long posicaoDiretorio = fim.getLong();
+        int total = fim.getInt();
+        // Os números vêm do arquivo: 'total' tem que caber no diretório central antes de qualquer alocação
+        if (fim.getInt() != MAGICO_FIM || posicaoDiretorio < TAMANHO_CABECALHO || posicaoDiretorio > tamanho - TAMANHO_FIM
+                || total < 0 || total > (tamanho - TAMANHO_FIM - posicaoDiretorio) / TAMANHO_MINIMO_ENTRADA) {
+            throw new IOException("Arquivo corrompido ou formato inválido.");
+        }
+
+        ByteBuffer diretorio = ByteBuffer.wrap(ler(arquivo, (int) posicaoDiretorio, tamanho - TAMANHO_FIM));
+        List<Entrada> entradas = new ArrayList<>();
+        try {
+            for (int i = 0; i < total; i++) {
+                boolean ehDiretorio = diretorio.get() == TIPO_DIRETORIO;
+                int modo = diretorio.getShort() & 0777;
+                long data = diretorio.getLong();
+                long posicao = diretorio.getLong();
+                int comprimido = diretorio.getInt();
+                int original = diretorio.getInt();
+                int crc = diretorio.getInt();
+                String dono = lerTexto(diretorio);
+                String caminho = lerTexto(diretorio);
+                if (posicao < 0 || comprimido < 0 || posicao + comprimido > posicaoDiretorio
+                        || original < 0 || original > RAZAO_MAXIMA_DEFLATE * comprimido) {
+                    throw new IOException("Entrada corrompida: " + caminho);
+                }
+                entradas.add(new Entrada(ehDiretorio, caminho, modo, dono, data, posicao, comprimido, original, crc));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Diretório central corrompido.");
+        }
+        return entradas;
+    }
+
+    // Dados comprimidos de uma entrada (só o trecho dela)
+    public static byte[] lerDados(Arquivo arquivo, Entrada entrada) {
+        return ler(arquivo, (int) entrada.posicao(), (int) entrada.posicao() + entrada.tamanhoComprimido());
+    }
+
+    private static byte[] ler(Arquivo arquivo, int inicio, int fim) {
+        return arquivo.lerBytes(inicio, fim);
+    }
+
+    private static String lerTexto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.sistema_de_arquivos;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+
+// Armazenamento do conteúdo de um arquivo em blocos de bytes de tamanho fixo
+// O texto é guardado em UTF-8 (o tamanho é o número real de bytes) e qualquer sequência de bytes é aceita (arquivos binários)
+// Blocos cheios são guardados no ArmazemBlocos e nunca mais alterados: blocos iguais de arquivos diferentes são o mesmo array
+// Só o último bloco (cauda) aceita escrita; depois de uma substituição inteira ele também fica fechado no armazém
+// e é copiado de volta para um array próprio na próxima escrita
+// O conteúdo inteiro também pode ser compartilhado (cp): quem for alterar um conteúdo compartilhado copia antes
+public class ConteudoArquivo {
+    public static final int TAMANHO_BLOCO = 8192;
+    private static final byte[] VAZIO = new byte[0];
+
+    private List<byte[]> blocos;   // Todos com exatamente TAMANHO_BLOCO bytes
+    private byte[] cauda;          // Bloco final: só os primeiros tamanhoCauda bytes valem (menos de TAMANHO_BLOCO)
+    private int tamanhoCauda;
+    private boolean caudaFechada;  // Cauda vinda do armazém (pode ser compartilhada): nunca é alterada
+    private IndiceLinhas indiceLinhas;
+    private final AtomicInteger referencias = new AtomicInteger(1); // Quantos Arquivos usam este conteúdo
+
+    public ConteudoArquivo() {
+        this.blocos = new ArrayList<>();
+        this.cauda = VAZIO;
+        this.indiceLinhas = new IndiceLinhas();
+    }
+
+    // Cria um conteúdo que reaproveita os blocos imutáveis de outro (usado na cópia feita na primeira escrita)
+    public ConteudoArquivo(ConteudoArquivo original) {
+        this.blocos = new ArrayList<>(original.blocos); // Copia apenas as referências
+        this.cauda = original.caudaFechada ? original.cauda : fecharCauda(original.cauda, original.tamanhoCauda);
+        this.tamanhoCauda = original.tamanhoCauda;
+        this.caudaFechada = true; // A cauda também é compartilhada até a próxima escrita
+        this.indiceLinhas = new IndiceLinhas(original.indiceLinhas);
+    }
+
+    // --- Compartilhamento (cópia na escrita) ---
+
+    // Mais um Arquivo passa a usar este conteúdo, sem copiar nada
+    public ConteudoArquivo compartilhar() {
+        referencias.incrementAndGet();
+        return this;
+    }
+
+    public boolean isCompartilhado() {
+        return referencias.get() > 1;
+    }
+
+    // Um dos Arquivos deixa de usar este conteúdo
+    public void liberar() {
+        referencias.decrementAndGet();
+    }
+
+    // Cópia própria para quem vai alterar um conteúdo compartilhado (os blocos cheios continuam compartilhados)
+    public ConteudoArquivo copiarParaEscrita() {
+        ConteudoArquivo copia = new ConteudoArquivo(this);
+        liberar();
+        return copia;
+    }
+
+    // --- Escrita ---
+
+    public void substituir(CharSequence texto) {
+        substituir(codificar(texto));
+    }
+
+    public void substituir(byte[] bytes) {
+        this.blocos = new ArrayList<>();
+        this.cauda = VAZIO;
+        this.tamanhoCauda = 0;
+        this.caudaFechada = false;
+        this.indiceLinhas.limpar();
+        anexar(bytes, 0, bytes.length);
+        this.cauda = fecharCauda(cauda, tamanhoCauda);
+        this.caudaFechada = true;
+    }
+
+    public void anexar(CharSequence texto) {
+        byte[] bytes = codificar(texto);
+        anexar(bytes, 0, bytes.length);
+    }
+
+    // Append amortizado O(1) por byte: preenche a cauda e a fecha quando chega no tamanho do bloco
+    public void anexar(byte[] bytes, int inicio, int quantidade) {
+        if (caudaFechada) {
+            cauda = Arrays.copyOf(cauda, tamanhoCauda);
+            caudaFechada = false;
+        }
+        int posicao = inicio;
+        int fim = inicio + quantidade;
+        while (posicao < fim) {
+            int copiar = Math.min(fim - posicao, TAMANHO_BLOCO - tamanhoCauda);
+            if (tamanhoCauda + copiar > cauda.length) {
+                // Cresce dobrando, sem passar do tamanho do bloco (arquivos pequenos não reservam 8 KB)
+                cauda = Arrays.copyOf(cauda, Math.min(TAMANHO_BLOCO, Math.max(tamanhoCauda + copiar, cauda.length * 2)));
+            }
+            System.arraycopy(bytes, posicao, cauda, tamanhoCauda, copiar);
+            tamanhoCauda += copiar;
+            posicao += copiar;
+
+            if (tamanhoCauda == TAMANHO_BLOCO) {
+                blocos.add(ArmazemBlocos.guardar(cauda));
+                cauda = VAZIO;
+                tamanhoCauda = 0;
+            }
+        }
+        indiceLinhas.anexar(bytes, inicio, quantidade);
+    }
+
+    private static byte[] fecharCauda(byte[] cauda, int tamanho) {
+        return tamanho == 0 ? VAZIO : ArmazemBlocos.guardar(Arrays.copyOf(cauda, tamanho));
+    }
+
+    private static byte[] codificar(CharSequence texto) {
+        return texto.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // --- Leitura ---
+
+    public int tamanho() {
+        return blocos.size() * TAMANHO_BLOCO + tamanhoCauda;
+    }
+
+    public boolean isVazio() {
+        return tamanho() == 0;
+    }
+
+    public byte byteAt(int posicao) {
+        int indiceBloco = posicao / TAMANHO_BLOCO;
+        return bloco(indiceBloco)[posicao % TAMANHO_BLOCO];
+    }
+
+    // Leitura de um intervalo [inicio, fim) de bytes copiando só os bytes pedidos
+    public byte[] lerBytes(int inicio, int fim) {
+        byte[] resultado = new byte[fim - inicio];
+        int posicao = inicio;
+        while (posicao < fim) {
+            byte[] bloco = bloco(posicao / TAMANHO_BLOCO);
+            int deslocamento = posicao % TAMANHO_BLOCO;
+            int quantidade = Math.min(fim - posicao, TAMANHO_BLOCO - deslocamento);
+            System.arraycopy(bloco, deslocamento, resultado, posicao - inicio, quantidade);
+            posicao += quantidade;
+        }
+        return resultado;
+    }
+
+    // O mesmo intervalo decodificado como UTF-8 (bytes inválidos viram '�', como num terminal)
+    public String ler(int inicio, int fim) {
+        return new String(lerBytes(inicio, fim), StandardCharsets.UTF_8);
+    }
+
+    // Entrega os blocos em ordem com a quantidade de bytes válidos, sem montar o conteúdo inteiro
+    // (ex: para alimentar um compressor). Os arrays são os do próprio conteúdo: quem recebe não pode alterá-los
+    public void paraCadaBloco(ObjIntConsumer<byte[]> consumidor) {
+        for (byte[] bloco : blocos) {
+            consumidor.accept(bloco, TAMANHO_BLOCO);
+        }
+        if (tamanhoCauda > 0) consumidor.accept(cauda, tamanhoCauda);
+    }
+
+    private byte[] bloco(int indice) {
+        return indice < blocos.size() ? blocos.get(indice) : cauda;
+    }
+
+    public IndiceLinhas getIndiceLinhas() {
+        return indiceLinhas;
+    }
+
+    @Override
+    public String toString() {
+        return ler(0, tamanho());
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Épocas dos snapshots de uma árvore (fica na raiz; ver NoSistema.preservarCaminho)
+// Um snapshot só encerra a época atual: o que foi gravado até ali pertence a ele, e a árvore em uso segue na próxima
+// Criar e descartar snapshots acontece com a travaArvore exclusiva; as consultas vêm das alterações (compartilhada)
+final class ControleVersoes {
+    private volatile int epoca;
+    // Épocas dos snapshots que ainda existem
+    private final ConcurrentSkipListSet<Integer> versoes = new ConcurrentSkipListSet<>();
+
+    int getEpoca() {
+        return epoca;
+    }
+
+    // Congela a época atual como um snapshot (O(1)) e devolve o número dele
+    int criarVersao() {
+        int versao = epoca;
+        versoes.add(versao);
+        epoca = versao + 1;
+        return versao;
+    }
+
+    void descartarVersao(int versao) {
+        versoes.remove(versao);
+    }
+
+    boolean temVersoes() {
+        return !versoes.isEmpty();
+    }
+
+    // Algum snapshot foi tirado entre as épocas 'de' e 'ate' (inclusive)?
+    boolean temVersaoEntre(int de, int ate) {
+        Integer versao = versoes.ceiling(de);
+        return versao != null && versao <= ate;
+    }
+
+    // Algum snapshot é mais antigo que 'epoca'?
+    boolean temVersaoAntes(int epoca) {
+        return versoes.lower(epoca) != null;
+    }
+}
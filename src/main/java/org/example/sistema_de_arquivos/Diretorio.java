@@ -1,37 +1,367 @@
 package org.example.sistema_de_arquivos;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Diretorio extends NoSistema {
-    // HashMap: Representa os filhos diretos de cada diretório
+    private static final AtomicLong PROXIMO_ID = new AtomicLong();
+
+    // TreeMap: Representa os filhos diretos de cada diretório, sempre em ordem de nome
     // A chave de cada nó é apenas o seu nome, o valor é o objeto em sí
-    private Map<String, NoSistema> filhos;
+    // Busca em O(log n) e iteração já ordenada (ls e tree não precisam copiar nem ordenar)
+    private NavigableMap<String, NoSistema> filhos;
+
+    // Trava do diretório: protege o mapa de filhos e o conteúdo/metadados dos arquivos filhos
+    // Os métodos públicos pegam a trava sozinhos; quem precisa de várias operações seguidas sem interferência
+    // (ex: conferir e depois remover) pega a de escrita antes (é reentrante)
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+    private final long id = PROXIMO_ID.incrementAndGet(); // Desempate na ordem de travamento de dois diretórios
+    private int totalOcultos; // Filhos cujo nome começa com '.'
+
+    // Diretório vindo de um snapshot: os filhos só são lidos no primeiro acesso (null depois de carregados)
+    private volatile Snapshot origem;
+    private long posicaoFilhos;
+
+    // O mapa de filhos também é de uma cópia congelada (snapshot): a primeira alteração copia o mapa antes
+    private volatile boolean filhosCompartilhados;
+
+    // Totais agregados da subárvore (inclui o próprio diretório), mantidos de forma incremental
+    // Não dependem da trava do diretório: propagarDelta sobe pelos ancestrais sem travá-los, usando o monitor de cada um
+    // (o mesmo que liga/desliga o nó do pai), então uma variação nunca é contada duas vezes nem perdida num rm/mv
+    private volatile int tamanhoSubarvore;
+    private volatile int totalNos;
 
     public Diretorio(String nome, Diretorio pai) {
         super(nome, pai);
-        this.filhos = new HashMap<>();
-        this.permissoes = "drwxr-xr-x"; // Permissão padrão de diretório (d no início)
+        this.filhos = new TreeMap<>();
+        this.permissoes = 0755; // Permissão padrão de diretório (drwxr-xr-x)
+        this.tamanhoSubarvore = 4096;
+        this.totalNos = 1;
+    }
+
+    // Liga o diretório a um registro do snapshot: tamanho e total de nós já vêm prontos, os filhos ficam para depois
+    void ligarSnapshot(Snapshot snapshot, long posicaoFilhos, int tamanhoSubarvore, int totalNos) {
+        this.filhos = null;
+        this.totalOcultos = 0;
+        this.posicaoFilhos = posicaoFilhos;
+        this.tamanhoSubarvore = tamanhoSubarvore;
+        this.totalNos = totalNos;
+        this.origem = snapshot;
+    }
+
+    private NavigableMap<String, NoSistema> filhos() {
+        if (origem != null) carregarFilhos();
+        return filhos;
+    }
+
+    private synchronized void carregarFilhos() {
+        if (origem == null) return; // Outra thread já carregou
+        NavigableMap<String, NoSistema> carregados = origem.carregarFilhos(this, posicaoFilhos);
+        for (NoSistema filho : carregados.values()) filho.ligado = true;
+        totalOcultos = carregados.subMap(".", true, "/", false).size();
+        filhos = carregados;
+        origem = null;
+    }
+
+    // Mapa pronto para ser alterado (com a trava de escrita): se ainda é o de uma cópia congelada, este diretório passa a ter o seu
+    private NavigableMap<String, NoSistema> filhosParaEscrita() {
+        NavigableMap<String, NoSistema> atuais = filhos();
+        if (filhosCompartilhados) {
+            atuais = new TreeMap<>(atuais);
+            filhos = atuais;
+            filhosCompartilhados = false;
+        }
+        return atuais;
+    }
+
+    // Passa o controle para a subárvore já carregada (os filhos ainda no snapshot em disco o herdam ao serem lidos)
+    @Override
+    void definirControleVersoes(ControleVersoes controle) {
+        Deque<Diretorio> pendentes = new ArrayDeque<>();
+        pendentes.push(this);
+        while (!pendentes.isEmpty()) {
+            Diretorio dir = pendentes.pop();
+            dir.controleVersoes = controle;
+            if (dir.origem != null) continue;
+            for (NoSistema filho : dir.filhos.values()) {
+                if (filho instanceof Diretorio sub) pendentes.push(sub);
+                else filho.controleVersoes = controle;
+            }
+        }
+    }
+
+    // O mapa de filhos passa a ser dividido com a cópia (os filhos em si são os mesmos nós da árvore em uso)
+    // Um diretório ainda não lido do snapshot em disco é lido antes: a cópia tem que apontar para os mesmos filhos
+    @Override
+    Diretorio congelar() {
+        Diretorio copia = new Diretorio(nome, null);
+        copia.copiarEstadoDe(this);
+        filhosCompartilhados = true;
+        return copia;
+    }
+
+    // ROLLBACK: volta ao estado de uma cópia congelada (os filhos dela vêm juntos, divididos com a cópia)
+    // Devolve o mapa de filhos de antes, para quem chamou acertar os nós que saíram ou entraram
+    NavigableMap<String, NoSistema> restaurar(Diretorio estado) {
+        Lock escrita = trava.writeLock();
+        escrita.lock();
+        try {
+            preservarCaminho();
+            NavigableMap<String, NoSistema> anteriores = filhos();
+            synchronized (this) {
+                copiarEstadoDe(estado);
+            }
+            filhosCompartilhados = true;
+            return anteriores;
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    private void copiarEstadoDe(Diretorio original) {
+        copiarMetadadosDe(original);
+        this.filhos = original.filhos();
+        this.totalOcultos = original.totalOcultos;
+        this.tamanhoSubarvore = original.tamanhoSubarvore;
+        this.totalNos = original.totalNos;
+    }
+
+    // --- Travas ---
+
+    Lock travaLeitura() {
+        return trava.readLock();
+    }
+
+    Lock travaEscrita() {
+        return trava.writeLock();
+    }
+
+    long getId() {
+        return id;
     }
 
     public void adicionarFilho(NoSistema no) {
-        filhos.put(no.getNome(), no);
+        Lock escrita = trava.writeLock();
+        escrita.lock();
+        try {
+            // Subárvore montada fora da árvore (cp, import, unzip): passa a usar o controle de versões desta
+            if (no.controleVersoes != controleVersoes) no.definirControleVersoes(controleVersoes);
+            preservarCaminho();
+            NoSistema anterior = filhosParaEscrita().put(no.getNome(), no);
+            if (anterior == null && isOculto(no.getNome())) totalOcultos++;
+
+            int deltaTamanho;
+            int deltaNos;
+            synchronized (no) {
+                no.ligado = true;
+                deltaTamanho = no.getTamanho();
+                deltaNos = no.getTotalNos();
+            }
+            // Se já existia um nó com esse nome, ele foi substituído e sai da conta
+            if (anterior != null && anterior != no) {
+                synchronized (anterior) {
+                    anterior.ligado = false;
+                    deltaTamanho -= anterior.getTamanho();
+                    deltaNos -= anterior.getTotalNos();
+                }
+            }
+            propagarDelta(deltaTamanho, deltaNos);
+        } finally {
+            escrita.unlock();
+        }
     }
 
     public void removerFilho(String nome) {
-        filhos.remove(nome);
+        Lock escrita = trava.writeLock();
+        escrita.lock();
+        try {
+            if (!filhos().containsKey(nome)) return;
+            preservarCaminho();
+            NoSistema removido = filhosParaEscrita().remove(nome);
+            if (removido != null) {
+                if (isOculto(nome)) totalOcultos--;
+                int tamanho;
+                int nos;
+                synchronized (removido) {
+                    removido.ligado = false;
+                    tamanho = removido.getTamanho();
+                    nos = removido.getTotalNos();
+                }
+                propagarDelta(-tamanho, -nos);
+            }
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    // Aplica a variação neste diretório e sobe pela cadeia de pais
+    // Para no primeiro diretório que ainda não foi ligado ao pai (ex: cópia em construção)
+    // Não pega a trava de leitura/escrita dos ancestrais (quem trava de cima para baixo nunca espera por aqui):
+    // cada nível é atualizado no monitor do diretório, um de cada vez
+    void propagarDelta(int deltaTamanho, int deltaNos) {
+        Diretorio atual = this;
+        while (atual != null) {
+            Diretorio proximo;
+            synchronized (atual) {
+                atual.tamanhoSubarvore += deltaTamanho;
+                atual.totalNos += deltaNos;
+                proximo = atual.estaLigado() ? atual.getPai() : null;
+            }
+            atual = proximo;
+        }
+    }
+
+    // Troca a chave do filho no mapa (o tamanho da subárvore não muda, então nada é propagado)
+    public void renomearFilho(String nomeAntigo, String novoNome) {
+        Lock escrita = trava.writeLock();
+        escrita.lock();
+        try {
+            if (!filhos().containsKey(nomeAntigo)) return;
+            preservarCaminho();
+            NoSistema no = filhosParaEscrita().remove(nomeAntigo);
+            if (isOculto(nomeAntigo)) totalOcultos--;
+
+            no.setNome(novoNome);
+            filhosParaEscrita().put(novoNome, no);
+            if (isOculto(novoNome)) totalOcultos++;
+        } finally {
+            escrita.unlock();
+        }
     }
 
     public NoSistema getFilho(String nome) {
-        return filhos.get(nome);
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            return filhos().get(nome);
+        } finally {
+            leitura.unlock();
+        }
     }
 
-    public Map<String, NoSistema> getFilhos() {
-        return filhos;
+    // Cópia dos filhos (O(n)): pode ser percorrida sem trava enquanto outras threads alteram o diretório
+    public NavigableMap<String, NoSistema> getFilhos() {
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            return new TreeMap<>(filhos());
+        } finally {
+            leitura.unlock();
+        }
+    }
+
+    // Filhos em ordem de nome (cópia feita sob a trava de leitura)
+    public Collection<NoSistema> getFilhosOrdenados(boolean incluirOcultos) {
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            return new ArrayList<>(visaoOrdenada(incluirOcultos));
+        } finally {
+            leitura.unlock();
+        }
+    }
+
+    // Visão direta do mapa, sem cópia: só vale enquanto a trava estiver com quem chamou
+    // Nomes não podem ter '/', então os ocultos ficam todos no intervalo [".", "/") e são pulados sem filtrar um a um
+    private Collection<NoSistema> visaoOrdenada(boolean incluirOcultos) {
+        if (incluirOcultos || totalOcultos == 0) return filhos().values();
+
+        Collection<NoSistema> antes = filhos().headMap(".", false).values();
+        Collection<NoSistema> depois = filhos().tailMap("/", true).values();
+        int total = filhos().size() - totalOcultos;
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<NoSistema> iterator() {
+                Iterator<NoSistema> primeiro = antes.iterator();
+                Iterator<NoSistema> segundo = depois.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return primeiro.hasNext() || segundo.hasNext();
+                    }
+
+                    @Override
+                    public NoSistema next() {
+                        return primeiro.hasNext() ? primeiro.next() : segundo.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return total;
+            }
+        };
+    }
+
+    // Uma página da listagem: pula 'deslocamento' filhos e devolve no máximo 'limite' (limite < 0 = todos)
+    public List<NoSistema> listarFilhos(int deslocamento, int limite, boolean incluirOcultos) {
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            Collection<NoSistema> ordenados = visaoOrdenada(incluirOcultos);
+            int restantes = Math.max(0, ordenados.size() - Math.max(0, deslocamento));
+            List<NoSistema> pagina = new ArrayList<>(limite < 0 ? restantes : Math.min(limite, restantes));
+
+            Iterator<NoSistema> it = ordenados.iterator();
+            for (int i = 0; i < deslocamento && it.hasNext(); i++) it.next();
+            while (it.hasNext() && (limite < 0 || pagina.size() < limite)) pagina.add(it.next());
+            return pagina;
+        } finally {
+            leitura.unlock();
+        }
+    }
+
+    // Filhos com nome no intervalo [de, ate), em ordem (ex: todos os que começam com "log_")
+    public Collection<NoSistema> getFilhosEntre(String de, String ate) {
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            return new ArrayList<>(filhos().subMap(de, true, ate, false).values());
+        } finally {
+            leitura.unlock();
+        }
+    }
+
+    // Filhos cujo nome começa com 'prefixo' (intervalo [prefixo, prefixo com o último caractere + 1))
+    public Collection<NoSistema> getFilhosComPrefixo(String prefixo) {
+        if (prefixo.isEmpty()) return getFilhosOrdenados(true);
+        char ultimo = prefixo.charAt(prefixo.length() - 1);
+        return getFilhosEntre(prefixo, prefixo.substring(0, prefixo.length() - 1) + (char) (ultimo + 1));
+    }
+
+    public int getTotalFilhos() {
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            return filhos().size();
+        } finally {
+            leitura.unlock();
+        }
     }
 
     public boolean temFilhos() {
-        return !filhos.isEmpty();
+        Lock leitura = trava.readLock();
+        leitura.lock();
+        try {
+            return !filhos().isEmpty();
+        } finally {
+            leitura.unlock();
+        }
+    }
+
+    private static boolean isOculto(String nome) {
+        return nome.startsWith(".");
     }
 
     @Override
@@ -41,11 +371,12 @@ public class Diretorio extends NoSistema {
 
     @Override
     public int getTamanho() {
-        // Calcula recursivamente a soma dos tamanhos dos arquivos e subdiretórios
-        int total = 4096;
-        for (NoSistema filho : getFilhos().values()) {
-            total += filho.getTamanho();
-        }
-        return total; // Retorna a soma total (simulando ocupação real)
+        // Soma dos tamanhos dos arquivos e subdiretórios, já agregada (O(1))
+        return tamanhoSubarvore; // Retorna a soma total (simulando ocupação real)
+    }
+
+    @Override
+    public int getTotalNos() {
+        return totalNos;
     }
 }
@@ -0,0 +1,88 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.Arrays;
+
+// Índice incremental de linhas de um arquivo
+// Guarda o deslocamento (offset) de início de cada linha e as contagens usadas pelo wc,
+// para que head/tail/wc não precisem fazer split do conteúdo inteiro
+public class IndiceLinhas {
+    private int[] inicios;          // inicios[i] = posição (em bytes) do primeiro byte da linha i
+    private int quantidadeInicios;  // Sempre >= 1 (a linha 0 começa na posição 0)
+    private int ultimaLinhaNaoVazia;
+    private int palavras;
+    private boolean ultimoEraEspaco;
+    private int tamanho;            // Quantidade de bytes já indexados
+
+    public IndiceLinhas() {
+        limpar();
+    }
+
+    public IndiceLinhas(IndiceLinhas original) {
+        this.inicios = Arrays.copyOf(original.inicios, original.quantidadeInicios);
+        this.quantidadeInicios = original.quantidadeInicios;
+        this.ultimaLinhaNaoVazia = original.ultimaLinhaNaoVazia;
+        this.palavras = original.palavras;
+        this.ultimoEraEspaco = original.ultimoEraEspaco;
+        this.tamanho = original.tamanho;
+    }
+
+    public final void limpar() {
+        this.inicios = new int[8];
+        this.quantidadeInicios = 1;
+        this.ultimaLinhaNaoVazia = -1;
+        this.palavras = 0;
+        this.ultimoEraEspaco = true;
+        this.tamanho = 0;
+    }
+
+    // Indexa um trecho que acabou de ser adicionado ao final do conteúdo (custo proporcional ao trecho)
+    // Em UTF-8 os bytes de um caractere de vários bytes são todos >= 0x80, então '\n' e os espaços nunca aparecem no meio de um
+    public void anexar(byte[] bytes, int inicio, int quantidade) {
+        int base = tamanho - inicio;
+        for (int i = inicio; i < inicio + quantidade; i++) {
+            byte c = bytes[i];
+            if (c == '\n') {
+                adicionarInicio(base + i + 1);
+            } else {
+                ultimaLinhaNaoVazia = quantidadeInicios - 1;
+            }
+
+            // Conta palavra a cada transição de espaço para não-espaço
+            boolean espaco = isEspaco(c);
+            if (!espaco && ultimoEraEspaco) palavras++;
+            ultimoEraEspaco = espaco;
+        }
+        tamanho += quantidade;
+    }
+
+    private void adicionarInicio(int posicao) {
+        if (quantidadeInicios == inicios.length) {
+            inicios = Arrays.copyOf(inicios, inicios.length * 2);
+        }
+        inicios[quantidadeInicios++] = posicao;
+    }
+
+    // Mesmo conjunto de caracteres do \s das expressões regulares
+    private static boolean isEspaco(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    // Linhas vazias no final não contam (mesmo comportamento do split("\n"))
+    public int getNumeroLinhas() {
+        return ultimaLinhaNaoVazia + 1;
+    }
+
+    public int getNumeroPalavras() {
+        return palavras;
+    }
+
+    public int getInicioLinha(int linha) {
+        return inicios[linha];
+    }
+
+    // Posição logo após o último byte da linha (sem o \n)
+    public int getFimLinha(int linha) {
+        if (linha + 1 < quantidadeInicios) return inicios[linha + 1] - 1;
+        return tamanho;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Índice global de nomes: nome -> todos os nós da árvore com esse nome
+// Permite que o find -name responda sem varrer a árvore inteira
+// Thread-safe: o monitor do índice é sempre a última trava pega (quem o segura nunca espera por um diretório),
+// então as subárvores são percorridas antes, fora do monitor
+public class IndiceNomes {
+    private Map<String, Set<NoSistema>> porNome;
+    private int totalNos;
+    // Depois de carregar um snapshot o índice fica desatualizado até o primeiro find (montá-lo exigiria ler a árvore toda)
+    private volatile boolean desatualizado;
+
+    public IndiceNomes() {
+        this.porNome = new HashMap<>();
+    }
+
+    public synchronized void adicionar(NoSistema no) {
+        if (desatualizado) return;
+        if (porNome.computeIfAbsent(no.getNome(), k -> new HashSet<>()).add(no)) {
+            totalNos++;
+        }
+    }
+
+    public synchronized void remover(NoSistema no) {
+        if (desatualizado) return;
+        Set<NoSistema> nos = porNome.get(no.getNome());
+        if (nos != null && nos.remove(no)) {
+            totalNos--;
+            if (nos.isEmpty()) porNome.remove(no.getNome());
+        }
+    }
+
+    // Indexa o nó e todos os seus descendentes (usado após cp)
+    public void adicionarSubarvore(NoSistema raizSubarvore) {
+        if (desatualizado) return;
+        List<NoSistema> nos = coletar(raizSubarvore);
+        synchronized (this) {
+            for (NoSistema no : nos) adicionar(no);
+        }
+    }
+
+    // Remove o nó e todos os seus descendentes (usado pelo rm -r)
+    public void removerSubarvore(NoSistema raizSubarvore) {
+        if (desatualizado) return;
+        List<NoSistema> nos = coletar(raizSubarvore);
+        synchronized (this) {
+            for (NoSistema no : nos) remover(no);
+        }
+    }
+
+    // Todos os nós da subárvore (cada diretório é copiado sob a sua própria trava)
+    private static List<NoSistema> coletar(NoSistema raizSubarvore) {
+        List<NoSistema> nos = new ArrayList<>();
+        Deque<NoSistema> pilha = new ArrayDeque<>();
+        pilha.push(raizSubarvore);
+        while (!pilha.isEmpty()) {
+            NoSistema no = pilha.pop();
+            nos.add(no);
+            if (no.isDiretorio()) {
+                for (NoSistema filho : ((Diretorio) no).getFilhosOrdenados(true)) pilha.push(filho);
+            }
+        }
+        return nos;
+    }
+
+    // Esvazia o índice e para de acompanhar as mudanças até a próxima reconstrução
+    public synchronized void marcarDesatualizado() {
+        porNome.clear();
+        totalNos = 0;
+        desatualizado = true;
+    }
+
+    public boolean isDesatualizado() {
+        return desatualizado;
+    }
+
+    public void reconstruir(Diretorio raiz) {
+        List<NoSistema> nos = coletar(raiz);
+        Map<String, Set<NoSistema>> novo = new HashMap<>();
+        for (NoSistema no : nos) novo.computeIfAbsent(no.getNome(), k -> new HashSet<>()).add(no);
+        synchronized (this) {
+            porNome = novo;
+            totalNos = nos.size();
+            desatualizado = false;
+        }
+    }
+
+    // Cópia dos nós com esse nome (pode ser percorrida enquanto outras threads alteram o índice)
+    public synchronized Set<NoSistema> buscar(String nome) {
+        Set<NoSistema> nos = porNome.get(nome);
+        return nos == null ? Set.of() : new HashSet<>(nos);
+    }
+
+    public synchronized int getTotalNos() { return totalNos; }
+    public synchronized int getTotalNomes() { return porNome.size(); }
+}
@@ -0,0 +1,177 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Índice opcional de trigramas (sequências de 3 caracteres) do conteúdo dos arquivos
+// Usado pelo grep -r para reduzir os arquivos candidatos antes de verificar linha por linha
+// Thread-safe: o conteúdo é lido e os trigramas extraídos fora do monitor (quem altera um arquivo já segura a trava
+// do diretório dele); o monitor só protege os mapas e nunca é segurado enquanto se espera por um diretório
+public class IndiceTrigramas {
+    private final Map<Long, Set<Arquivo>> arquivosPorTrigrama;
+    private final Map<Arquivo, Set<Long>> trigramasPorArquivo; // Necessário para remover um arquivo do índice
+    private long totalPostagens;
+    private long tempoConstrucaoNs;
+
+    public IndiceTrigramas() {
+        this.arquivosPorTrigrama = new HashMap<>();
+        this.trigramasPorArquivo = new HashMap<>();
+    }
+
+    // Indexa todos os arquivos de uma subárvore (medindo o tempo de construção)
+    public void construir(Diretorio raiz) {
+        long inicio = System.nanoTime();
+        Deque<NoSistema> pilha = new ArrayDeque<>();
+        pilha.push(raiz);
+        while (!pilha.isEmpty()) {
+            NoSistema no = pilha.pop();
+            if (no.isArquivo()) {
+                indexar((Arquivo) no);
+            } else {
+                for (NoSistema filho : ((Diretorio) no).getFilhosOrdenados(true)) pilha.push(filho);
+            }
+        }
+        synchronized (this) {
+            this.tempoConstrucaoNs = System.nanoTime() - inicio;
+        }
+    }
+
+    // Reindexa o arquivo inteiro (após setConteudo ou cp)
+    public void indexar(Arquivo arquivo) {
+        Set<Long> trigramas = extrair(arquivo, 0);
+        synchronized (this) {
+            remover(arquivo);
+            registrar(arquivo, trigramas);
+        }
+    }
+
+    // Indexa só o que foi anexado a partir de 'inicioAnexo' (após appendConteudo)
+    public void indexarAnexo(Arquivo arquivo, int inicioAnexo) {
+        // Volta 2 caracteres para pegar os trigramas que atravessam a emenda
+        Set<Long> trigramas = extrair(arquivo, voltarCaracteres(arquivo, inicioAnexo, 2));
+        synchronized (this) {
+            registrar(arquivo, trigramas);
+        }
+    }
+
+    public synchronized void remover(Arquivo arquivo) {
+        Set<Long> trigramas = trigramasPorArquivo.remove(arquivo);
+        if (trigramas == null) return;
+        for (Long trigrama : trigramas) {
+            Set<Arquivo> arquivos = arquivosPorTrigrama.get(trigrama);
+            if (arquivos != null && arquivos.remove(arquivo)) {
+                totalPostagens--;
+                if (arquivos.isEmpty()) arquivosPorTrigrama.remove(trigrama);
+            }
+        }
+    }
+
+    // Remove todos os arquivos de uma subárvore (usado pelo rm -r)
+    public void removerSubarvore(NoSistema raizSubarvore) {
+        Deque<NoSistema> pilha = new ArrayDeque<>();
+        pilha.push(raizSubarvore);
+        while (!pilha.isEmpty()) {
+            NoSistema no = pilha.pop();
+            if (no.isArquivo()) {
+                remover((Arquivo) no);
+            } else {
+                for (NoSistema filho : ((Diretorio) no).getFilhosOrdenados(true)) pilha.push(filho);
+            }
+        }
+    }
+
+    // Indexa todos os arquivos de uma subárvore (usado após cp)
+    public void indexarSubarvore(NoSistema raizSubarvore) {
+        Deque<NoSistema> pilha = new ArrayDeque<>();
+        pilha.push(raizSubarvore);
+        while (!pilha.isEmpty()) {
+            NoSistema no = pilha.pop();
+            if (no.isArquivo()) {
+                indexar((Arquivo) no);
+            } else {
+                for (NoSistema filho : ((Diretorio) no).getFilhosOrdenados(true)) pilha.push(filho);
+            }
+        }
+    }
+
+    // Arquivos que contêm todos os trigramas do termo (superconjunto dos que contêm o termo)
+    // Retorna null quando o termo é curto demais para usar o índice
+    public synchronized Set<Arquivo> candidatos(String termo) {
+        if (termo.length() < 3) return null;
+
+        Set<Arquivo> resultado = null;
+        for (int i = 0; i + 3 <= termo.length(); i++) {
+            Set<Arquivo> arquivos = arquivosPorTrigrama.get(codificar(termo.charAt(i), termo.charAt(i + 1), termo.charAt(i + 2)));
+            if (arquivos == null) return Collections.emptySet();
+
+            if (resultado == null) {
+                resultado = new HashSet<>(arquivos);
+            } else {
+                resultado.retainAll(arquivos);
+            }
+            if (resultado.isEmpty()) return resultado;
+        }
+        return resultado;
+    }
+
+    // Posição (em bytes) do início do caractere que está 'caracteres' antes de 'posicao'
+    // Em UTF-8 um caractere tem até 4 bytes e só o primeiro não é da forma 10xxxxxx: voltar bytes soltos
+    // poderia cair no meio de um caractere, que o lerTrecho decodificaria como U+FFFD
+    private static int voltarCaracteres(Arquivo arquivo, int posicao, int caracteres) {
+        int inicioJanela = Math.max(0, posicao - 4 * caracteres);
+        byte[] janela = arquivo.lerBytes(inicioJanela, posicao);
+        int i = janela.length;
+        while (caracteres > 0 && i > 0) {
+            i--;
+            if ((janela[i] & 0xC0) != 0x80) caracteres--;
+        }
+        return inicioJanela + i;
+    }
+
+    // Trigramas do trecho a partir de 'inicio' (lê o conteúdo: fora do monitor)
+    private static Set<Long> extrair(Arquivo arquivo, int inicio) {
+        int fim = arquivo.getTamanho();
+        if (fim - inicio < 3) return Set.of();
+
+        Set<Long> trigramas = new HashSet<>();
+        String trecho = arquivo.lerTrecho(inicio, fim);
+        for (int i = 0; i + 3 <= trecho.length(); i++) {
+            trigramas.add(codificar(trecho.charAt(i), trecho.charAt(i + 1), trecho.charAt(i + 2)));
+        }
+        return trigramas;
+    }
+
+    private void registrar(Arquivo arquivo, Set<Long> trigramas) {
+        if (trigramas.isEmpty()) return;
+        Set<Long> doArquivo = trigramasPorArquivo.computeIfAbsent(arquivo, k -> new HashSet<>());
+        for (Long trigrama : trigramas) {
+            if (doArquivo.add(trigrama)) {
+                arquivosPorTrigrama.computeIfAbsent(trigrama, k -> new HashSet<>()).add(arquivo);
+                totalPostagens++;
+            }
+        }
+    }
+
+    // Três caracteres de 16 bits cabem em um long
+    private static long codificar(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    // Estimativa aproximada de memória: cada postagem aparece nos dois mapas
+    // (~48 bytes por entrada de HashSet/HashMap + Long), mais o custo de cada conjunto criado
+    public synchronized long getMemoriaEstimadaBytes() {
+        long porPostagem = 2 * 48L;
+        long porConjunto = 64L;
+        return totalPostagens * porPostagem + (arquivosPorTrigrama.size() + trigramasPorArquivo.size()) * porConjunto;
+    }
+
+    public synchronized int getTotalTrigramas() { return arquivosPorTrigrama.size(); }
+    public synchronized int getTotalArquivos() { return trigramasPorArquivo.size(); }
+    public synchronized long getTotalPostagens() { return totalPostagens; }
+    public synchronized long getTempoConstrucaoNs() { return tempoConstrucaoNs; }
+}
@@ -0,0 +1,87 @@
+package org.example.sistema_de_arquivos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// Pipeline com janela limitada (import/export, RLE em blocos, grep, zip e unzip)
+// As tarefas rodam num pool e os resultados são entregues na ordem de envio, na thread que chamou
+// No máximo 'tamanho' itens ficam em andamento: a memória não depende da quantidade de itens
+final class JanelaOrdenada<E, T> {
+
+    interface Tarefa<T> {
+        T executar(int indice) throws IOException;
+    }
+
+    interface Consumidor<E, T> {
+        void aceitar(E item, T resultado) throws IOException;
+    }
+
+    // 'resultado' é null para itens sem tarefa
+    private record Pendente<E, T>(E item, Future<T> resultado) {}
+
+    private final int tamanho;
+    private final Function<Callable<T>, Future<T>> pool;
+    private final Consumidor<E, T> consumidor;
+    private final Deque<Pendente<E, T>> pendentes = new ArrayDeque<>();
+
+    JanelaOrdenada(int tamanho, Function<Callable<T>, Future<T>> pool, Consumidor<E, T> consumidor) {
+        this.tamanho = Math.max(1, tamanho);
+        this.pool = pool;
+        this.consumidor = consumidor;
+    }
+
+    // tarefa == null: o item não tem trabalho no pool (ex: um diretório), mas sai na sua vez, com resultado null
+    void enviar(E item, Callable<T> tarefa) throws IOException {
+        if (pendentes.size() >= tamanho) entregarProximo();
+        pendentes.add(new Pendente<>(item, tarefa == null ? null : pool.apply(tarefa)));
+    }
+
+    // Entrega tudo o que ainda está em andamento
+    void concluir() throws IOException {
+        while (!pendentes.isEmpty()) entregarProximo();
+    }
+
+    private void entregarProximo() throws IOException {
+        Pendente<E, T> proximo = pendentes.poll();
+        consumidor.aceitar(proximo.item(), proximo.resultado() == null ? null : aguardar(proximo.resultado()));
+    }
+
+    // Executa 'total' tarefas num pool próprio de 'threads' threads, com no máximo 2 * threads em andamento
+    static <T> void emParalelo(int total, int threads, Tarefa<T> tarefa, Consumidor<Integer, T> consumidor) throws IOException {
+        if (total == 0) return;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, total)));
+        try {
+            JanelaOrdenada<Integer, T> janela = new JanelaOrdenada<>(2 * Math.max(1, threads), pool::submit, consumidor);
+            for (int i = 0; i < total; i++) {
+                int indice = i;
+                janela.enviar(indice, () -> tarefa.executar(indice));
+            }
+            janela.concluir();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Espera uma tarefa e devolve a IOException original (em vez da ExecutionException)
+    static <T> T aguardar(Future<T> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido.");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException io) throw io;
+            if (causa instanceof UncheckedIOException io) throw io.getCause();
+            throw new IOException(causa.getMessage(), causa);
+        }
+    }
+}
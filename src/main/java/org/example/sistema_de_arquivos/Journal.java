@@ -0,0 +1,362 @@
+package org.example.sistema_de_arquivos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Journal (write-ahead log) das operações que alteram a árvore, gravado no disco do host
+//
+// Cada registro é uma operação lógica (ex: mkdir /a/b), não os bytes alterados:
+//   tamanho do corpo (int) | CRC32 do corpo (int) | corpo
+//   corpo: sequência (long) | operação (byte) | usuário | diretório atual | quantidade de argumentos (int) | argumentos
+//   (textos: int + UTF-8)
+//
+// Commit em grupo: quem registra só coloca o registro no buffer pendente e espera a sequência ficar durável.
+// Uma única thread grava o buffer inteiro e faz um fsync só para todos os registros que chegaram enquanto
+// o fsync anterior estava em andamento.
+// A espera usa ReentrantLock/Condition (e não synchronized/wait): milhares de sessões em virtual threads podem estar
+// esperando o mesmo fsync, e um wait dentro de synchronized prenderia a thread do sistema que carrega cada uma.
+public class Journal implements AutoCloseable {
+    public static final byte MKDIR = 1;
+    public static final byte TOUCH = 2;
+    public static final byte ESCREVER = 3;
+    public static final byte RM = 4;
+    public static final byte RENAME = 5;
+    public static final byte MV = 6;
+    public static final byte CP = 7;
+    public static final byte CHMOD = 8;
+    public static final byte CHOWN = 9;
+    public static final byte UNZIP = 10;
+    public static final byte ZIP = 11;
+
+    public record Registro(long seq, byte operacao, String usuario, String diretorio, List<String> argumentos) {}
+
+    private final Path arquivo;
+    private final FileChannel canal;
+    private final boolean commitEmGrupo;
+
+    private final ReentrantLock trava = new ReentrantLock();
+    // Sinalizada quando chega registro novo (ou o journal fecha): acorda o gravador
+    private final Condition temPendente = trava.newCondition();
+    // Sinalizada depois de cada fsync (ou erro): acorda quem espera a sua sequência
+    private final Condition gravado = trava.newCondition();
+    private ByteArrayOutputStream pendente = new ByteArrayOutputStream();
+    private long proximoSeq;
+    private long ultimoSeqPendente;
+    private long seqDuravel;
+    private long tamanho;
+    private IOException erro;
+    private boolean fechado;
+    private final Thread gravador;
+
+    // Estatísticas
+    private long totalRegistros;
+    private long totalFsyncs;
+
+    // 'ultimoSeq': maior sequência já usada (no snapshot ou nos registros existentes)
+    // commitEmGrupo = false grava e faz fsync de cada registro na hora (usado para comparação no benchmark)
+    public Journal(Path arquivo, long ultimoSeq, boolean commitEmGrupo) throws IOException {
+        this.arquivo = arquivo;
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.tamanho = canal.size();
+        this.canal.position(tamanho);
+        this.proximoSeq = ultimoSeq + 1;
+        this.ultimoSeqPendente = ultimoSeq;
+        this.seqDuravel = ultimoSeq;
+        this.commitEmGrupo = commitEmGrupo;
+
+        if (commitEmGrupo) {
+            this.gravador = new Thread(this::lacoGravacao, "journal-commit");
+            this.gravador.setDaemon(true);
+            this.gravador.start();
+        } else {
+            this.gravador = null;
+        }
+    }
+
+    // Coloca a operação no buffer e devolve a sequência dela (use aguardar para esperar o fsync)
+    public long registrar(byte operacao, String usuario, String diretorio, List<String> argumentos) {
+        byte[] corpo;
+        trava.lock();
+        try {
+            if (fechado) throw new IllegalStateException("Journal fechado.");
+            long seq = proximoSeq++;
+            corpo = codificar(new Registro(seq, operacao, usuario, diretorio, argumentos));
+
+            CRC32 crc = new CRC32();
+            crc.update(corpo);
+            ByteBuffer cabecalho = ByteBuffer.allocate(8).putInt(corpo.length).putInt((int) crc.getValue());
+            pendente.write(cabecalho.array(), 0, 8);
+            pendente.write(corpo, 0, corpo.length);
+            ultimoSeqPendente = seq;
+            totalRegistros++;
+
+            if (!commitEmGrupo) {
+                gravarPendente();
+                return seq;
+            }
+            temPendente.signal();
+            return seq;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Bloqueia até a operação 'seq' estar no disco (fsync concluído)
+    // Uma interrupção não encerra a espera: quem volta daqui diz ao usuário que a operação está no disco.
+    // A espera sempre termina: o gravador grava tudo o que está pendente antes de parar no close, ou registra o erro
+    public void aguardar(long seq) {
+        trava.lock();
+        try {
+            while (seqDuravel < seq && erro == null) {
+                gravado.awaitUninterruptibly();
+            }
+            if (erro != null && seqDuravel < seq) throw new UncheckedIOException(erro);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private void lacoGravacao() {
+        while (true) {
+            byte[] lote;
+            long ateSeq;
+            trava.lock();
+            try {
+                while (pendente.size() == 0 && !fechado) {
+                    try {
+                        temPendente.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pendente.size() == 0) return; // Fechado e sem nada pendente
+                lote = pendente.toByteArray();
+                ateSeq = ultimoSeqPendente;
+                pendente = new ByteArrayOutputStream();
+            } finally {
+                trava.unlock();
+            }
+
+            // Grava e sincroniza fora da trava: novos registros continuam chegando e formam o próximo lote
+            IOException falha = null;
+            try {
+                escrever(lote);
+            } catch (IOException e) {
+                falha = e;
+            }
+
+            trava.lock();
+            try {
+                if (falha != null) {
+                    erro = falha;
+                } else {
+                    seqDuravel = ateSeq;
+                    tamanho += lote.length;
+                    totalFsyncs++;
+                }
+                gravado.signalAll();
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    // Modo sem commit em grupo: chamado com a trava já tomada
+    private void gravarPendente() {
+        byte[] lote = pendente.toByteArray();
+        pendente = new ByteArrayOutputStream();
+        try {
+            escrever(lote);
+        } catch (IOException e) {
+            erro = e;
+            throw new UncheckedIOException(e);
+        }
+        seqDuravel = ultimoSeqPendente;
+        tamanho += lote.length;
+        totalFsyncs++;
+    }
+
+    private void escrever(byte[] lote) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lote);
+        while (buffer.hasRemaining()) canal.write(buffer);
+        canal.force(false);
+    }
+
+    // Compactação: depois de um checkpoint (snapshot com tudo até 'ateSeq'), os registros até ali não são mais necessários
+    // Registros mais novos que o checkpoint (se chegaram no meio dele) são mantidos no início do arquivo
+    public void truncar(long ateSeq) throws IOException {
+        trava.lock();
+        try {
+            // Espera o que já estava pendente chegar ao disco: com a trava tomada, nenhum lote novo começa a ser gravado
+            while (seqDuravel < ultimoSeqPendente && erro == null) {
+                try {
+                    gravado.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            byte[] restante = new byte[0];
+            if (ultimoSeqPendente > ateSeq) {
+                byte[] dados = Files.readAllBytes(arquivo);
+                ByteBuffer buffer = ByteBuffer.wrap(dados);
+                int inicio = 0;
+                while (inicio + 16 <= dados.length && buffer.getLong(inicio + 8) <= ateSeq) {
+                    inicio += 8 + buffer.getInt(inicio);
+                }
+                restante = Arrays.copyOfRange(dados, Math.min(inicio, dados.length), dados.length);
+            }
+
+            canal.truncate(0);
+            canal.position(0);
+            ByteBuffer buffer = ByteBuffer.wrap(restante);
+            while (buffer.hasRemaining()) canal.write(buffer);
+            canal.force(true);
+            tamanho = restante.length;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public long getUltimoSeq() {
+        trava.lock();
+        try {
+            return ultimoSeqPendente;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public long getTamanho() {
+        trava.lock();
+        try {
+            return tamanho;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public String estatisticas() {
+        trava.lock();
+        try {
+            return String.format("Journal: %s\n  Registros: %d | fsyncs: %d | registros por fsync: %.2f\n  Tamanho atual: %d bytes | última sequência: %d\n",
+                    arquivo, totalRegistros, totalFsyncs, totalFsyncs == 0 ? 0.0 : totalRegistros / (double) totalFsyncs,
+                    tamanho, ultimoSeqPendente);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        trava.lock();
+        try {
+            fechado = true;
+            temPendente.signal();
+        } finally {
+            trava.unlock();
+        }
+        if (gravador != null) {
+            try {
+                gravador.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        canal.close();
+    }
+
+    // --- Recuperação ---
+
+    // Lê os registros válidos em ordem e devolve onde termina o último deles
+    // Um registro incompleto ou com CRC errado (queda no meio da gravação) encerra a leitura: ele e o resto são descartados
+    public static long ler(Path arquivo, Consumer<Registro> consumidor) throws IOException {
+        if (!Files.exists(arquivo)) return 0;
+        byte[] dados = Files.readAllBytes(arquivo);
+        ByteBuffer buffer = ByteBuffer.wrap(dados);
+
+        long fimValido = 0;
+        while (buffer.remaining() >= 8) {
+            int tamanhoCorpo = buffer.getInt();
+            int crcEsperado = buffer.getInt();
+            if (tamanhoCorpo < 0 || tamanhoCorpo > buffer.remaining()) break;
+
+            byte[] corpo = new byte[tamanhoCorpo];
+            buffer.get(corpo);
+            CRC32 crc = new CRC32();
+            crc.update(corpo);
+            if ((int) crc.getValue() != crcEsperado) break;
+
+            consumidor.accept(decodificar(corpo));
+            fimValido = buffer.position();
+        }
+        return fimValido;
+    }
+
+    // Corta a cauda inválida deixada por uma queda, para os próximos registros começarem num ponto limpo
+    public static void truncarEm(Path arquivo, long tamanhoValido) throws IOException {
+        if (!Files.exists(arquivo)) return;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+            if (canal.size() > tamanhoValido) {
+                canal.truncate(tamanhoValido);
+                canal.force(true);
+            }
+        }
+    }
+
+    private static byte[] codificar(Registro registro) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream saida = new DataOutputStream(bytes);
+            saida.writeLong(registro.seq());
+            saida.writeByte(registro.operacao());
+            escreverTexto(saida, registro.usuario());
+            escreverTexto(saida, registro.diretorio());
+            saida.writeInt(registro.argumentos().size());
+            for (String argumento : registro.argumentos()) escreverTexto(saida, argumento);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Não acontece com ByteArrayOutputStream
+        }
+    }
+
+    private static void escreverTexto(DataOutputStream saida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeInt(bytes.length);
+        saida.write(bytes);
+    }
+
+    private static Registro decodificar(byte[] corpo) {
+        ByteBuffer buffer = ByteBuffer.wrap(corpo);
+        long seq = buffer.getLong();
+        byte operacao = buffer.get();
+        String usuario = lerTexto(buffer);
+        String diretorio = lerTexto(buffer);
+        int quantidade = buffer.getInt();
+        List<String> argumentos = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) argumentos.add(lerTexto(buffer));
+        return new Registro(seq, operacao, usuario, diretorio, argumentos);
+    }
+
+    private static String lerTexto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
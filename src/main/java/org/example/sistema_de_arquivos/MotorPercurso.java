@@ -0,0 +1,217 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+
+// Motor de percurso da árvore usado por tree, du, find, cp e zip
+// - Os resultados dos filhos são sempre combinados na ordem devolvida por Visitante.filhos (saída determinística)
+// - Com paralelismo > 1, cada subdiretório vira uma tarefa do ForkJoinPool até PROFUNDIDADE_MAXIMA_FORK níveis
+// - Abaixo disso (ou com paralelismo 1) o percurso é iterativo, com pilha explícita, para não estourar a pilha em árvores profundas
+public class MotorPercurso {
+    private static final int PROFUNDIDADE_MAXIMA_FORK = 8;
+
+    private final int paralelismo;
+    private final ForkJoinPool pool; // null quando o percurso é sequencial
+
+    public MotorPercurso(int paralelismo) {
+        this.paralelismo = Math.max(1, paralelismo);
+        this.pool = this.paralelismo > 1 ? new ForkJoinPool(this.paralelismo) : null;
+    }
+
+    public int getParalelismo() {
+        return paralelismo;
+    }
+
+    public void encerrar() {
+        if (pool != null) pool.shutdown();
+    }
+
+    // Executa uma tarefa avulsa no mesmo pool (ex: grep em vários arquivos); sem pool, roda na hora
+    public <T> Future<T> submeter(Callable<T> tarefa) {
+        if (pool != null) return pool.submit(tarefa);
+        FutureTask<T> execucao = new FutureTask<>(tarefa);
+        execucao.run();
+        return execucao;
+    }
+
+    // C: contexto passado de pai para filho (ex: prefixo do tree) | R: resultado de cada nó
+    public interface Visitante<C, R> {
+        // Filhos a visitar, na ordem em que os resultados devem ser combinados (vazio = não desce)
+        // Pode ser uma visão direta dos filhos do diretório: o motor só itera, não guarda nem altera
+        Collection<NoSistema> filhos(Diretorio dir, C contexto);
+
+        C contextoFilho(NoSistema filho, int indice, int total, C contextoPai);
+
+        R visitarArquivo(Arquivo arquivo, C contexto);
+
+        // Chamado depois dos filhos (pós-ordem), com os resultados deles já em ordem
+        R visitarDiretorio(Diretorio dir, C contexto, List<R> resultadosFilhos);
+    }
+
+    public <C, R> R percorrer(NoSistema inicio, C contexto, Visitante<C, R> visitante) {
+        if (inicio.isArquivo()) return visitante.visitarArquivo((Arquivo) inicio, contexto);
+
+        Diretorio dir = (Diretorio) inicio;
+        if (pool == null) return percorrerIterativo(dir, contexto, visitante);
+        return pool.invoke(new TarefaDiretorio<>(dir, contexto, visitante, 0));
+    }
+
+    // Percurso em pós-ordem com pilha explícita (cada quadro guarda os filhos pendentes e os resultados já prontos)
+    static <C, R> R percorrerIterativo(Diretorio inicio, C contexto, Visitante<C, R> visitante) {
+        Deque<Quadro<C, R>> pilha = new ArrayDeque<>();
+        pilha.push(new Quadro<>(inicio, contexto, visitante.filhos(inicio, contexto)));
+
+        while (true) {
+            Quadro<C, R> quadro = pilha.peek();
+            if (quadro.filhos.hasNext()) {
+                int indice = quadro.proximo++;
+                NoSistema filho = quadro.filhos.next();
+                C contextoFilho = visitante.contextoFilho(filho, indice, quadro.total, quadro.contexto);
+
+                if (filho.isDiretorio()) {
+                    Diretorio subDir = (Diretorio) filho;
+                    pilha.push(new Quadro<>(subDir, contextoFilho, visitante.filhos(subDir, contextoFilho)));
+                } else {
+                    quadro.resultados.add(visitante.visitarArquivo((Arquivo) filho, contextoFilho));
+                }
+            } else {
+                pilha.pop();
+                R resultado = visitante.visitarDiretorio(quadro.dir, quadro.contexto, quadro.resultados);
+                if (pilha.isEmpty()) return resultado;
+                pilha.peek().resultados.add(resultado);
+            }
+        }
+    }
+
+    private static class Quadro<C, R> {
+        final Diretorio dir;
+        final C contexto;
+        final Iterator<NoSistema> filhos;
+        final int total;
+        final List<R> resultados;
+        int proximo;
+
+        Quadro(Diretorio dir, C contexto, Collection<NoSistema> filhos) {
+            this.dir = dir;
+            this.contexto = contexto;
+            this.filhos = filhos.iterator();
+            this.total = filhos.size();
+            this.resultados = new ArrayList<>(total);
+        }
+    }
+
+    @SuppressWarnings("serial") // Tarefas do ForkJoinPool nunca são serializadas
+    private static class TarefaDiretorio<C, R> extends RecursiveTask<R> {
+        private final Diretorio dir;
+        private final C contexto;
+        private final Visitante<C, R> visitante;
+        private final int profundidade;
+
+        TarefaDiretorio(Diretorio dir, C contexto, Visitante<C, R> visitante, int profundidade) {
+            this.dir = dir;
+            this.contexto = contexto;
+            this.visitante = visitante;
+            this.profundidade = profundidade;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected R compute() {
+            if (profundidade >= PROFUNDIDADE_MAXIMA_FORK) {
+                return percorrerIterativo(dir, contexto, visitante);
+            }
+
+            Collection<NoSistema> filhos = visitante.filhos(dir, contexto);
+            Object[] resultados = new Object[filhos.size()];
+            List<TarefaDiretorio<C, R>> tarefas = new ArrayList<>();
+            List<Integer> posicoes = new ArrayList<>();
+
+            // Subdiretórios vão para o pool, arquivos são visitados aqui mesmo
+            int i = 0;
+            for (NoSistema filho : filhos) {
+                C contextoFilho = visitante.contextoFilho(filho, i, filhos.size(), contexto);
+                if (filho.isDiretorio()) {
+                    TarefaDiretorio<C, R> tarefa = new TarefaDiretorio<>((Diretorio) filho, contextoFilho, visitante, profundidade + 1);
+                    tarefa.fork();
+                    tarefas.add(tarefa);
+                    posicoes.add(i);
+                } else {
+                    resultados[i] = visitante.visitarArquivo((Arquivo) filho, contextoFilho);
+                }
+                i++;
+            }
+
+            // Junta na ordem original, para a saída não depender de qual tarefa terminou primeiro
+            for (int t = 0; t < tarefas.size(); t++) {
+                resultados[posicoes.get(t)] = tarefas.get(t).join();
+            }
+            return visitante.visitarDiretorio(dir, contexto, (List<R>) Arrays.asList(resultados));
+        }
+    }
+
+    // Texto montado em pedaços durante o percurso e juntado uma única vez no final
+    // (evita copiar o texto dos filhos a cada nível da árvore)
+    public static final class Saida {
+        private static final Saida VAZIA = new Saida("", Collections.emptyList(), "");
+
+        private final String antes;        // Texto antes dos filhos
+        private final List<Saida> filhos;
+        private final String depois;       // Texto depois dos filhos
+
+        private Saida(String antes, List<Saida> filhos, String depois) {
+            this.antes = antes;
+            this.filhos = filhos;
+            this.depois = depois;
+        }
+
+        public static Saida vazia() {
+            return VAZIA;
+        }
+
+        public static Saida de(String texto) {
+            return new Saida(texto, Collections.emptyList(), "");
+        }
+
+        public static Saida de(String antes, List<Saida> filhos, String depois) {
+            return new Saida(antes, filhos, depois);
+        }
+
+        // Escrita iterativa (a árvore de saídas tem a mesma profundidade da árvore de arquivos)
+        public void escreverEm(StringBuilder sb) {
+            Deque<Object> pilha = new ArrayDeque<>();
+            pilha.push(this);
+            while (!pilha.isEmpty()) {
+                Object topo = pilha.pop();
+                if (topo instanceof String texto) {
+                    sb.append(texto);
+                    continue;
+                }
+                Saida saida = (Saida) topo;
+                sb.append(saida.antes);
+                if (!saida.depois.isEmpty()) pilha.push(saida.depois);
+                for (int i = saida.filhos.size() - 1; i >= 0; i--) {
+                    Saida filho = saida.filhos.get(i);
+                    if (filho != null) pilha.push(filho);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            escreverEm(sb);
+            return sb.toString();
+        }
+    }
+}
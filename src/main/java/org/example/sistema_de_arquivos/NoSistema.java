@@ -1,20 +1,46 @@
 package org.example.sistema_de_arquivos;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public abstract class NoSistema {
-    protected String nome;
-    protected Diretorio pai; // Referência direta ao objeto pai (para subir na árvore)
+    protected volatile String nome;
+    protected volatile Diretorio pai; // Referência direta ao objeto pai (para subir na árvore)
+    // Verdadeiro enquanto o nó está no mapa de filhos do pai (mantido pelo Diretorio, no monitor do próprio nó)
+    volatile boolean ligado;
 
-    // Metadados para a exibição detalhada (ls -l)
-    protected String permissoes;
-    protected String dono;
-    protected LocalDateTime dataModificacao;
+    // Metadados para a exibição detalhada (ls -l), guardados em forma compacta
+    // O texto ("-rw-r--r--", "user", "Jan 01 12:00") só é montado na hora de exibir
+    protected short permissoes;       // Bits rwx de dono, grupo e outros (ex: 0644)
+    protected int idDono;             // ID na TabelaUsuarios
+    protected long dataModificacao;   // Milissegundos desde a época (System.currentTimeMillis)
+
+    // Versões (snapshot): 'epoca' é a época da árvore em que o estado atual do nó começou
+    // 'anterior' é a cópia congelada do estado de antes (com a época e o anterior dela), para os snapshots mais antigos
+    // Só mudam no monitor do nó (preservar)
+    volatile int epoca;
+    NoSistema anterior;
+    // Controle de versões da árvore (o mesmo em todos os nós dela; null fora de uma árvore, ex: cópia do cp em construção)
+    // Herdado do pai na criação e passado para a subárvore inteira quando ela é ligada num diretório
+    ControleVersoes controleVersoes;
 
     public static final String TIPO_ARQUIVO = "ARQUIVO";
     public static final String TIPO_DIRETORIO = "DIRETORIO";
 
+    // Bits de permissão (mesmos valores do octal do chmod)
+    public static final int LEITURA_DONO = 0400;
+    public static final int ESCRITA_DONO = 0200;
+    public static final int EXECUCAO_DONO = 0100;
+    public static final int LEITURA_OUTROS = 04;
+    public static final int ESCRITA_OUTROS = 02;
+    public static final int EXECUCAO_OUTROS = 01;
+
+    private static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("MMM dd HH:mm");
+
     public NoSistema(String nome, Diretorio pai) {
         // Validação de Integridade: Nome não pode conter '/'
         if (nome.contains("/")) {
@@ -22,33 +48,86 @@ public abstract class NoSistema {
         }
         this.nome = nome;
         this.pai = pai;
-        this.dono = "user";
-        this.dataModificacao = LocalDateTime.now();
+        // Nó novo não está em nenhum snapshot: começa na época atual da árvore
+        this.controleVersoes = pai == null ? null : pai.controleVersoes;
+        this.epoca = controleVersoes == null ? 0 : controleVersoes.getEpoca();
+        this.idDono = TabelaUsuarios.USER;
+        this.dataModificacao = System.currentTimeMillis();
         // Define um padrão inicial (rw-r--r--)
-        this.permissoes = "rw-r--r--";
+        this.permissoes = 0644;
     }
 
-    public void setPermissoes(String permissoes) {
-        this.permissoes = permissoes;
-        this.dataModificacao = LocalDateTime.now();
+    // Bits de permissão como no chmod (ex: 0755)
+    public int getModo() {
+        return permissoes;
+    }
+
+    public void setModo(int modo) {
+        preservarCaminho();
+        this.permissoes = (short) (modo & 0777);
+        this.dataModificacao = System.currentTimeMillis();
+    }
+
+    // Aceita o texto no formato do ls -l ("-rwxr-xr-x" ou "rwxr-xr-x"), usado pelo unzip
+    public void setPermissoes(String texto) {
+        String bits = texto.length() == 10 ? texto.substring(1) : texto;
+        int modo = 0;
+        for (int i = 0; i < 9 && i < bits.length(); i++) {
+            if (bits.charAt(i) != '-') modo |= 1 << (8 - i);
+        }
+        setModo(modo);
+    }
+
+    // Verdadeiro se o bit pedido (ex: LEITURA_DONO) está ligado
+    public boolean temBit(int bit) {
+        return (permissoes & bit) != 0;
     }
 
     public void setDono(String dono) {
-        this.dono = dono;
-        this.dataModificacao = LocalDateTime.now();
+        setIdDono(TabelaUsuarios.idDe(dono));
     }
 
+    public void setIdDono(int idDono) {
+        preservarCaminho();
+        this.idDono = idDono;
+        this.dataModificacao = System.currentTimeMillis();
+    }
+
+    public int getIdDono() { return idDono; }
+
+    public long getDataModificacao() { return dataModificacao; }
+
     public String getNome() { return nome; }
     public void setNome(String nome) {
         this.nome = nome;
     }
     public Diretorio getPai() { return pai; }
     public String getDataFormatada() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd HH:mm");
-        return dataModificacao.format(formatter);
+        return formatarData(dataModificacao);
+    }
+
+    // Mesmo formato do ls -l para qualquer instante (em milissegundos)
+    public static String formatarData(long milissegundos) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(milissegundos), ZoneId.systemDefault()).format(FORMATO_DATA);
     }
-    public String getPermissoes() { return permissoes; }
-    public String getDono() { return dono; }
+
+    // Texto no formato do ls -l (ex: -rw-r--r--)
+    public String getPermissoes() {
+        return formatarPermissoes(isDiretorio(), permissoes);
+    }
+
+    // Texto no formato do ls -l (ex: drwxr-xr-x) a partir do tipo e dos bits
+    public static String formatarPermissoes(boolean diretorio, int modo) {
+        char[] texto = new char[10];
+        texto[0] = diretorio ? 'd' : '-';
+        String letras = "rwx";
+        for (int i = 0; i < 9; i++) {
+            texto[i + 1] = (modo & (1 << (8 - i))) != 0 ? letras.charAt(i % 3) : '-';
+        }
+        return new String(texto);
+    }
+
+    public String getDono() { return TabelaUsuarios.nomeDe(idDono); }
 
     public abstract String getTipo(); // Diretorio ou arquivo
 
@@ -61,4 +140,101 @@ public abstract class NoSistema {
     }
 
     public abstract int getTamanho(); // Em bytes (varia entre arquivos e diretórios)
+
+    // Quantidade de nós na subárvore (o próprio nó incluso)
+    public int getTotalNos() {
+        return 1;
+    }
+
+    // Permissões, dono e data iguais aos de outro nó (usado nas cópias congeladas e no rollback)
+    void copiarMetadadosDe(NoSistema original) {
+        this.permissoes = original.permissoes;
+        this.idDono = original.idDono;
+        this.dataModificacao = original.dataModificacao;
+    }
+
+    // --- Versões (snapshot/rollback) ---
+
+    ControleVersoes getControleVersoes() {
+        return controleVersoes;
+    }
+
+    // Chamado ao ligar o nó num diretório de outra árvore (ou vindo de fora de uma): ver Diretorio.adicionarFilho
+    void definirControleVersoes(ControleVersoes controle) {
+        this.controleVersoes = controle;
+    }
+
+    // Chamado antes de alterar o estado do nó (conteúdo, metadados ou filhos): cópia de caminho
+    // Se algum snapshot ainda enxerga o estado atual, ele vira uma cópia congelada, e o mesmo vale para cada ancestral
+    // até a raiz (que também mudam: tamanho e total de nós). As cópias dividem o mapa de filhos e o conteúdo com o nó,
+    // então custam O(1) cada; quem copia de verdade é a primeira escrita depois delas
+    // Um nó com época anterior a um snapshot garante que nada abaixo dele mudou desde então (o rollback usa isso)
+    // Só a primeira alteração do nó depois de um snapshot sobe pelo caminho: as seguintes param no próprio nó
+    protected void preservarCaminho() {
+        ControleVersoes controle = controleVersoes;
+        if (controle == null || !controle.temVersoes()) return;
+        int epocaAtual = controle.getEpoca();
+        if (epoca == epocaAtual) return;
+        // Sobe até o primeiro ancestral que já está na época atual e preserva de cima para baixo: um nó só passa para
+        // a época atual depois dos seus ancestrais, então quem o encontra assim (outra thread) já pode parar nele
+        // Sobe pelo pai mesmo fora da árvore: o diretório de onde o nó saiu pode voltar num rollback
+        Deque<NoSistema> caminho = new ArrayDeque<>();
+        for (NoSistema atual = this; atual != null && atual.epoca != epocaAtual; atual = atual.pai) {
+            caminho.push(atual);
+        }
+        while (!caminho.isEmpty()) caminho.pop().preservar(controle, epocaAtual);
+    }
+
+    synchronized void preservar(ControleVersoes controle, int epocaAtual) {
+        if (epoca == epocaAtual) return;
+        if (controle.temVersaoEntre(epoca, epocaAtual - 1)) {
+            NoSistema copia = congelar();
+            copia.epoca = epoca;
+            copia.anterior = controle.temVersaoAntes(epoca) ? anterior : null;
+            anterior = copia;
+        } else if (!controle.temVersaoAntes(epoca)) {
+            anterior = null; // Os snapshots que usavam as cópias antigas foram descartados
+        }
+        epoca = epocaAtual;
+    }
+
+    // Cópia do estado atual que nunca mais é alterada (fora da árvore: sem pai e sem trava própria em uso)
+    abstract NoSistema congelar();
+
+    // Estado do nó no snapshot 'versao': ele mesmo, se não mudou desde então, ou uma das cópias congeladas
+    // Só é chamado com a travaArvore exclusiva (nenhuma alteração no meio)
+    NoSistema estadoNaVersao(int versao) {
+        NoSistema estado = this;
+        while (estado.epoca > versao) estado = estado.anterior;
+        return estado;
+    }
+
+    int getEpoca() {
+        return epoca;
+    }
+
+    // Verdadeiro se o pai realmente aponta para este nó (nós em construção ainda não estão ligados)
+    // Não consulta o mapa do pai: quem sobe pela árvore (propagação de tamanho) não pode pegar a trava de um ancestral
+    protected boolean estaLigado() {
+        return pai != null && ligado;
+    }
+
+    // ROLLBACK: o nó saiu do mapa do pai restaurado (o pai continua apontado, como no removerFilho)
+    synchronized void desligar() {
+        ligado = false;
+    }
+
+    // ROLLBACK: o nó voltou ao mapa de 'novoPai' com o nome que tinha no snapshot
+    synchronized void religar(Diretorio novoPai, String novoNome) {
+        pai = novoPai;
+        nome = novoNome;
+        ligado = true;
+    }
+
+    // Avisa os ancestrais que o tamanho deste nó mudou
+    protected void propagarTamanho(int delta) {
+        if (delta != 0 && estaLigado()) {
+            pai.propagarDelta(delta, 0);
+        }
+    }
 }
@@ -0,0 +1,8 @@
+package org.example.sistema_de_arquivos;
+
+// Flags do grep
+// regex: -E | contar: -c | soNomes: -l | numerarLinhas: -n | recursivo: -r
+public record OpcoesGrep(boolean regex, boolean contar, boolean soNomes, boolean numerarLinhas, boolean recursivo) {
+
+    public static final OpcoesGrep PADRAO = new OpcoesGrep(false, false, false, false, false);
+}
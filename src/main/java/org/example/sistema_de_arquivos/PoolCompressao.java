@@ -0,0 +1,66 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflaters/Inflaters reaproveitados entre arquivos (e entre zips)
+// Cada um guarda memória nativa que só é liberada com end(): criar um por arquivo e esquecer vaza essa memória
+// O pool cresce até a quantidade de threads que comprimem ao mesmo tempo e não passa disso
+public class PoolCompressao implements AutoCloseable {
+    private final int nivel;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger criados = new AtomicInteger();
+    private volatile boolean fechado;
+
+    public PoolCompressao(int nivel) {
+        this.nivel = nivel;
+    }
+
+    public Deflater emprestarDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater != null) return deflater;
+        criados.incrementAndGet();
+        return new Deflater(nivel);
+    }
+
+    public void devolver(Deflater deflater) {
+        deflater.reset();
+        deflaters.offer(deflater);
+        if (fechado) liberar(); // Devolvido depois do close: libera na hora
+    }
+
+    public Inflater emprestarInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater != null) return inflater;
+        criados.incrementAndGet();
+        return new Inflater();
+    }
+
+    public void devolver(Inflater inflater) {
+        inflater.reset();
+        inflaters.offer(inflater);
+        if (fechado) liberar();
+    }
+
+    // Quantos compressores/descompressores foram criados desde o início (o resto das operações reaproveitou)
+    public int getCriados() {
+        return criados.get();
+    }
+
+    @Override
+    public void close() {
+        fechado = true;
+        liberar();
+    }
+
+    private void liberar() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) deflater.end();
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) inflater.end();
+    }
+}
@@ -1,47 +1,436 @@
 package org.example.sistema_de_arquivos;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.Base64;
 import java.util.zip.Deflater;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.zip.DeflaterOutputStream;
 
 //Classe responsável por gerenciar o sistema de arquivos.
+//
+// Concorrência: a árvore pode ser lida e alterada por várias threads ao mesmo tempo
+//  - cada Diretorio tem uma trava de leitura/escrita que protege os seus filhos e o conteúdo/metadados dos seus arquivos
+//  - caminhos são resolvidos de cima para baixo travando o filho antes de soltar o pai (hand-over-hand);
+//    nenhuma thread trava um ancestral enquanto segura a trava de um descendente
+//  - quem altera resolve os caminhos sem trava, trava o diretório afetado e confere se nada mudou nesse meio tempo
+//  - só o mv trava dois diretórios: um mv por vez (travaMovimentacao), o ancestral antes do descendente
+//    e, se não forem parentes, pela ordem do id
+//  - índices e cache de caminhos são sempre as últimas travas pegas
+//  - com o journal ligado, o registro de uma operação entra no journal quando ela trava o primeiro diretório
+//    para escrita, ainda com essa trava: operações que mexem no mesmo diretório ficam no journal na ordem em que o alteraram
+//  - snapshot/rollback/load/save/checkpoint mudam a época das versões, restauram, trocam ou leem a árvore inteira:
+//    travaArvore exclusiva; as operações que alteram partes dela a pegam compartilhada (leituras não a pegam,
+//    então uma leitura no meio de um rollback pode ver parte dos diretórios já restaurada)
+// O estado da sessão (diretório atual, usuário logado, histórico) é de uma thread só: cada sessão usa a sua instância,
+// e todas as sessões abertas com abrirSessao dividem o mesmo Compartilhado (árvore, índices, cache, versões, journal e travas)
 public class SistemaArquivos {
 
-    private Diretorio raiz;
+    // Tudo o que é do sistema de arquivos em si, e não de quem está usando
+    private static final class Compartilhado {
+        volatile Diretorio raiz;
+
+        // Cache de resolução de caminhos
+        final CacheCaminhos cacheCaminhos = new CacheCaminhos(4096);
+
+        // Motor de percurso compartilhado por tree, du, find, cp e zip
+        volatile MotorPercurso motorPercurso = new MotorPercurso(Runtime.getRuntime().availableProcessors());
+        // Snapshots da árvore (snapshot <nome>), na ordem em que foram criados
+        final Map<String, Versao> versoes = new LinkedHashMap<>();
+        // Compressores reaproveitados por zip/unzip (liberados no encerrar)
+        final PoolCompressao poolCompressao = new PoolCompressao(Deflater.BEST_COMPRESSION);
+
+        // Índice de nomes usado pelo find -name
+        final IndiceNomes indiceNomes = new IndiceNomes();
+        // Índice opcional de trigramas do conteúdo, usado pelo grep -r (null quando desativado)
+        volatile IndiceTrigramas indiceConteudo;
+
+        // Journal das operações que alteram a árvore (null quando o sistema roda só em memória)
+        Journal journal;
+        Path diretorioDados;
+
+        // Travas globais (ver o comentário da classe)
+        final ReentrantReadWriteLock travaArvore = new ReentrantReadWriteLock();
+        final ReentrantLock travaMovimentacao = new ReentrantLock();
+
+        Compartilhado(Diretorio raiz) {
+            this.raiz = raiz;
+            indiceNomes.adicionar(raiz);
+        }
+    }
+
+    private final Compartilhado comum;
+
+    // Estado da sessão
     private Diretorio diretorioAtual;
     private List<String> historicoComandos;
     private String usuarioLogado = "user";
+    private int idUsuarioLogado = TabelaUsuarios.idDe(usuarioLogado);
+    // Caminho absoluto do diretório atual (usado como base dos relativos e como chave do cache)
+    // e a geração do cache em que foi montado: outra sessão pode mover um ancestral dele
+    private String caminhoDiretorioAtual;
+    private long geracaoCaminhoAtual;
+
+    private String resumoRecuperacao = "";
+    // Se algum comando falhou desde a última consulta (ver consumirFalha): usado pelo 'set -e' dos scripts
+    private boolean falhou;
+    // Operações chamadas de dentro de outra (ex: unzip -> mkdir) não são registradas de novo
+    private final ThreadLocal<int[]> profundidadeOperacao = ThreadLocal.withInitial(() -> new int[1]);
+    // Registro da operação em andamento nesta thread, esperando a primeira trava de escrita (ver aoTravarEscrita)
+    private static final ThreadLocal<RegistroPendente> registroPendente = new ThreadLocal<>();
+    // Acima disso o journal é compactado (checkpoint: snapshot novo + journal truncado)
+    private static final long LIMITE_JOURNAL = 8L * 1024 * 1024;
 
     // Padrão Linux seguro: Letras, números, ponto, traço e underscore.
     private static final Pattern PADRAO_NOME = Pattern.compile("^[a-zA-Z0-9._-]+$");
 
     public SistemaArquivos() {
-        // Raiz é um caso especial: nome "/" e pai null
-        // Instancia direta para burlar a validação do construtor na raiz
-        this.raiz = new Diretorio("root", null) {
+        this(criarRaiz());
+
+        inicializarEstruturaPadrao();
+
+        try {
+            cd("/home/user");
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private SistemaArquivos(Diretorio raiz) {
+        this(new Compartilhado(raiz));
+    }
+
+    private SistemaArquivos(Compartilhado comum) {
+        this.comum = comum;
+        this.historicoComandos = new ArrayList<>();
+        definirDiretorioAtual(comum.raiz);
+    }
+
+    // Nova sessão sobre a mesma árvore, com diretório atual, usuário e histórico próprios
+    // Começa no /home do usuário (se existir e ele puder entrar; senão, na raiz)
+    public SistemaArquivos abrirSessao(String usuario) {
+        SistemaArquivos sessao = new SistemaArquivos(comum);
+        sessao.usuarioLogado = usuario;
+        sessao.idUsuarioLogado = TabelaUsuarios.idDe(usuario);
+        sessao.cd(sessao.getDiretorioHome());
+        return sessao;
+    }
+
+    public String getDiretorioHome() {
+        return "/home/" + usuarioLogado;
+    }
+
+    public String getUsuarioLogado() {
+        return usuarioLogado;
+    }
+
+    // Raiz é um caso especial: nome "/" e pai null
+    // Instancia direta para burlar a validação do construtor na raiz
+    // Cada árvore tem o seu controle de versões (snapshot/rollback), que os nós herdam da raiz
+    private static Diretorio criarRaiz() {
+        Diretorio raiz = new Diretorio("root", null) {
             @Override
             public String getNome() {
                 return "/";
             }
         };
-        this.diretorioAtual = raiz;
-        this.historicoComandos = new ArrayList<>();
+        raiz.definirControleVersoes(new ControleVersoes());
+        return raiz;
+    }
 
-        inicializarEstruturaPadrao();
+    // Inicia com persistência em 'diretorio' (snapshot.bin + journal.log)
+    // Recuperação: abre o último snapshot (ou a estrutura padrão) e reaplica as operações do journal que vieram depois dele
+    public static SistemaArquivos abrirComDados(String diretorio) throws IOException {
+        long inicio = System.nanoTime();
+        Path dados = Path.of(diretorio);
+        Files.createDirectories(dados);
+        Path arquivoSnapshot = dados.resolve("snapshot.bin");
+        Path arquivoJournal = dados.resolve("journal.log");
+
+        SistemaArquivos fs;
+        long seqSnapshot = 0;
+        if (Files.exists(arquivoSnapshot)) {
+            Snapshot snapshot = Snapshot.abrir(arquivoSnapshot);
+            Diretorio raiz = criarRaiz();
+            snapshot.carregarRaiz(raiz);
+            fs = new SistemaArquivos(raiz);
+            fs.comum.indiceNomes.marcarDesatualizado();
+            seqSnapshot = snapshot.getSeqJournal();
+        } else {
+            fs = new SistemaArquivos();
+        }
+
+        // Registros até seqSnapshot já estão no snapshot (queda entre o checkpoint e o truncamento do journal)
+        long base = seqSnapshot;
+        long[] ultimoSeq = {seqSnapshot};
+        int[] reaplicadas = {0};
+        long fimValido = Journal.ler(arquivoJournal, registro -> {
+            ultimoSeq[0] = Math.max(ultimoSeq[0], registro.seq());
+            if (registro.seq() <= base) return;
+            fs.reaplicar(registro);
+            reaplicadas[0]++;
+        });
+        long descartados = Files.exists(arquivoJournal) ? Files.size(arquivoJournal) - fimValido : 0;
+        Journal.truncarEm(arquivoJournal, fimValido);
+
+        fs.usuarioLogado = "user";
+        fs.idUsuarioLogado = TabelaUsuarios.idDe(fs.usuarioLogado);
+        fs.definirDiretorioAtual(fs.comum.raiz);
+        fs.cd("/home/user");
+
+        fs.comum.diretorioDados = dados;
+        fs.comum.journal = new Journal(arquivoJournal, ultimoSeq[0], true);
+        fs.resumoRecuperacao = String.format("Recuperação: %d operações reaplicadas do journal em %.1f ms%s.",
+                reaplicadas[0], (System.nanoTime() - inicio) / 1_000_000.0,
+                descartados > 0 ? " (" + descartados + " bytes de um registro incompleto descartados)" : "");
+        return fs;
+    }
+
+    public String getResumoRecuperacao() {
+        return resumoRecuperacao;
+    }
 
+    // Executa uma operação que altera a árvore e a registra no journal antes de devolver o resultado
+    // O registro é a operação lógica com o diretório atual e o usuário, então a reaplicação chega no mesmo estado
+    // A resposta só volta depois do fsync do registro (que pode ser compartilhado com outras operações: commit em grupo)
+    // Também é quem pega a travaArvore compartilhada para todas as operações que alteram a árvore
+    private String registrarOperacao(byte operacao, Supplier<String> acao, String... argumentos) {
+        int[] profundidade = profundidadeOperacao.get();
+        if (profundidade[0] > 0) {
+            // Já está dentro de outra operação (e das travas dela), que decide se a falha desta conta
+            // (ex: o mkdir de um pai que já existe, no unzip de um item isolado)
+            boolean falhouAntes = falhou;
+            try {
+                return acao.get();
+            } finally {
+                falhou = falhouAntes;
+            }
+        }
+
+        String resultado;
+        RegistroPendente registro = null;
+        Lock compartilhada = comum.travaArvore.readLock();
+        compartilhada.lock();
+        profundidade[0]++;
         try {
-            cd("/home/user");
+            // Com a trava compartilhada a raiz não troca mais até o fim da operação
+            sincronizarSessao();
+            if (comum.journal != null) {
+                registro = new RegistroPendente(comum.journal, operacao, usuarioLogado,
+                        caminhoAtual(comum.cacheCaminhos.getGeracao()), List.of(argumentos));
+                registroPendente.set(registro);
+            }
+            resultado = acao.get();
+        } finally {
+            registroPendente.remove();
+            profundidade[0]--;
+            compartilhada.unlock();
+        }
+        // Sem journal, ou a operação não travou nenhum diretório para escrita (não alterou nada): nada a registrar
+        if (registro == null || (registro.seq == 0 && registro.erro == null)) return resultado;
+
+        // O fsync é esperado fora das travas: operações de várias threads dividem o mesmo (commit em grupo)
+        String erroJournal = registro.erro;
+        if (erroJournal == null) {
+            try {
+                registro.journal.aguardar(registro.seq);
+            } catch (UncheckedIOException e) {
+                erroJournal = e.getCause().getMessage();
+            }
+        }
+        if (erroJournal != null) return falha(resultado + "\nAviso: operação não registrada no journal: " + erroJournal);
+        // Depois de soltar a trava compartilhada (o checkpoint pega a exclusiva)
+        if (registro.journal.getTamanho() > LIMITE_JOURNAL) checkpoint();
+        return resultado;
+    }
+
+    // Operação lógica ainda não registrada; 'seq' fica 0 até ela travar um diretório para escrita
+    private static final class RegistroPendente {
+        final Journal journal;
+        final byte operacao;
+        final String usuario;
+        final String diretorio;
+        final List<String> argumentos;
+        long seq;
+        String erro;
+
+        RegistroPendente(Journal journal, byte operacao, String usuario, String diretorio, List<String> argumentos) {
+            this.journal = journal;
+            this.operacao = operacao;
+            this.usuario = usuario;
+            this.diretorio = diretorio;
+            this.argumentos = argumentos;
+        }
+    }
+
+    // Chamado logo depois de travar um diretório para escrita: na primeira vez da operação, o registro dela entra
+    // no journal (só o buffer, sob a trava curta do próprio journal), ainda com a trava do diretório segurada
+    // Assim duas operações que alteram o mesmo diretório ficam no journal na ordem em que o alteraram, sem uma trava
+    // global em volta da operação inteira. Uma operação composta (cp -r, unzip) entra na ordem da sua primeira alteração
+    private static void aoTravarEscrita() {
+        RegistroPendente registro = registroPendente.get();
+        if (registro == null || registro.seq != 0 || registro.erro != null) return;
+        try {
+            registro.seq = registro.journal.registrar(registro.operacao, registro.usuario, registro.diretorio, registro.argumentos);
+        } catch (UncheckedIOException e) {
+            registro.erro = e.getCause().getMessage();
+        } catch (IllegalStateException e) {
+            registro.erro = e.getMessage(); // Journal já fechado (encerramento): a árvore já foi alterada
+        }
+    }
+
+    // Operação que troca ou lê a árvore inteira: espera as alterações em andamento e bloqueia as novas
+    private <T> T exclusivo(Supplier<T> acao) {
+        Lock exclusiva = comum.travaArvore.writeLock();
+        exclusiva.lock();
+        try {
+            return acao.get();
+        } finally {
+            exclusiva.unlock();
+        }
+    }
+
+    // Ação executada com uma trava segurada (pode lançar a exceção da própria ação)
+    interface AcaoTravada<T, E extends Exception> {
+        T executar() throws E;
+    }
+
+    // Executa 'acao' com a trava do diretório que contém 'no' (a raiz usa a própria trava)
+    // Leitores de conteúdo usam a de leitura; quem altera o conteúdo ou os metadados do nó usa a de escrita
+    // Se o nó for movido para outro diretório enquanto esperava a trava, tenta de novo no diretório novo
+    static <T, E extends Exception> T comDiretorioTravado(NoSistema no, boolean escrita, AcaoTravada<T, E> acao) throws E {
+        while (true) {
+            Diretorio pai = no.getPai();
+            Diretorio dir = pai != null ? pai : (Diretorio) no;
+            Lock trava = escrita ? dir.travaEscrita() : dir.travaLeitura();
+            trava.lock();
+            try {
+                if (no.getPai() == pai) {
+                    if (escrita) aoTravarEscrita();
+                    return acao.executar();
+                }
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    // Verdadeiro se o nó ainda está pendurado na árvore atual (outra thread pode tê-lo removido depois da resolução)
+    private boolean estaNaArvore(NoSistema no) {
+        NoSistema atual = no;
+        while (atual != comum.raiz) {
+            if (atual == null || !atual.estaLigado()) return false;
+            atual = atual.getPai();
+        }
+        return true;
+    }
+
+    // Reaplica um registro do journal no mesmo contexto (diretório atual e usuário) em que foi executado
+    private void reaplicar(Journal.Registro registro) {
+        try {
+            NoSistema dir = resolverCaminho(registro.diretorio());
+            definirDiretorioAtual(dir.isDiretorio() ? (Diretorio) dir : comum.raiz);
         } catch (Exception e) {
-            System.err.println(e.getMessage());
+            definirDiretorioAtual(comum.raiz);
+        }
+        usuarioLogado = registro.usuario();
+        idUsuarioLogado = TabelaUsuarios.idDe(usuarioLogado);
+
+        List<String> args = registro.argumentos();
+        switch (registro.operacao()) {
+            case Journal.MKDIR -> mkdirInterno(args.get(0));
+            case Journal.TOUCH -> touchInterno(args.get(0));
+            case Journal.ESCREVER -> escreverNoArquivoInterno(args.get(0), args.get(1), Boolean.parseBoolean(args.get(2)));
+            case Journal.RM -> rmInterno(args.get(0), Boolean.parseBoolean(args.get(1)));
+            case Journal.RENAME -> renameInterno(args.get(0), args.get(1));
+            case Journal.MV -> mvInterno(args.get(0), args.get(1));
+            case Journal.CP -> cpInterno(args.get(0), args.get(1));
+            case Journal.CHMOD -> chmodInterno(args.get(0), args.get(1));
+            case Journal.CHOWN -> chownInterno(args.get(0), args.get(1));
+            case Journal.ZIP -> zipInterno(args.get(0), args.get(1));
+            case Journal.UNZIP -> unzipInterno(args.get(0), args.size() > 1 ? args.get(1) : null);
+            default -> System.err.println("Journal: operação desconhecida " + registro.operacao() + " (seq " + registro.seq() + ")");
+        }
+    }
+
+    // CHECKPOINT (Grava um snapshot com tudo até a última operação e descarta o journal até ali)
+    public String checkpoint() {
+        if (comum.journal == null) return falha("Erro: Persistência desativada (inicie com --dados <diretorio>).");
+        return exclusivo(this::checkpointInterno);
+    }
+
+    private String checkpointInterno() {
+        try {
+            long inicio = System.nanoTime();
+            long seq = comum.journal.getUltimoSeq();
+            comum.journal.aguardar(seq);
+            long totalNos = Snapshot.salvar(comum.raiz, comum.diretorioDados.resolve("snapshot.bin"), seq);
+            comum.journal.truncar(seq);
+            return String.format("Checkpoint até a operação %d: %d nós em %.1f ms.", seq, totalNos, (System.nanoTime() - inicio) / 1_000_000.0);
+        } catch (IOException | UncheckedIOException e) {
+            return falha("Erro no checkpoint: " + e.getMessage());
+        }
+    }
+
+    public String estatisticasJournal() {
+        if (comum.journal == null) return "Persistência desativada (inicie com --dados <diretorio>).\n";
+        return comum.journal.estatisticas();
+    }
+
+    // Fecha o journal (tudo que foi confirmado já está no disco) e o pool de threads
+    // Chamado uma vez, por quem abriu o sistema de arquivos: as sessões abertas com abrirSessao dividem tudo isso
+    public void encerrar() {
+        comum.motorPercurso.encerrar();
+        comum.poolCompressao.close();
+        if (comum.journal == null) return;
+        try {
+            comum.journal.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o journal: " + e.getMessage());
         }
     }
 
+    // Inicia direto de um snapshot (sem a estrutura padrão): só a raiz é montada, o resto é lido sob demanda
+    public static SistemaArquivos abrirSnapshot(String caminhoHost) throws IOException {
+        Diretorio raiz = criarRaiz();
+        Snapshot.abrir(Path.of(caminhoHost)).carregarRaiz(raiz);
+
+        SistemaArquivos fs = new SistemaArquivos(raiz);
+        fs.comum.indiceNomes.marcarDesatualizado();
+        fs.cd("/home/user"); // Se não existir no snapshot, fica na raiz
+        return fs;
+    }
+
     public void registrarComando(String comando) {
         historicoComandos.add(comando);
     }
@@ -94,8 +483,12 @@ public class SistemaArquivos {
     private void escreverNoArquivo(String caminho, String texto) {
         try {
             NoSistema no = resolverCaminho(caminho);
-            if (no.isArquivo()) {
-                ((Arquivo) no).setConteudo(texto);
+            if (no instanceof Arquivo arq) {
+                comDiretorioTravado(arq, true, () -> {
+                    arq.setConteudo(texto);
+                    aoAlterarConteudo(arq, -1);
+                    return null;
+                });
             }
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -118,13 +511,192 @@ public class SistemaArquivos {
         if (caminho == null || caminho.isEmpty()) return diretorioAtual;
 
         // Atalho simples
-        if (caminho.equals("/")) return raiz;
+        if (caminho.equals("/")) return comum.raiz;
         if (caminho.equals(".")) return diretorioAtual;
 
+        // Lida antes de montar a chave e da caminhada: se alguma invalidação acontecer no meio, o resultado não entra no cache
+        long geracao = comum.cacheCaminhos.getGeracao();
+
+        // Consulta o cache antes de caminhar pela árvore
+        String chave = chaveCache(caminho, geracao);
+        if (chave != null) {
+            NoSistema emCache = comum.cacheCaminhos.buscar(chave);
+            // Conferência O(1) de que o nó não foi removido (a invalidação acontece junto da remoção, mas custa pouco)
+            if (emCache != null && (emCache == comum.raiz || emCache.estaLigado())) return emCache;
+        }
+
+        NoSistema encontrado = percorrerCaminho(caminho);
+        // Só caminhos resolvidos com sucesso entram no cache (erros lançam exceção antes daqui)
+        if (chave != null) comum.cacheCaminhos.registrar(chave, encontrado, geracao);
+        return encontrado;
+    }
+
+    // Monta a chave do cache: caminho absoluto sem barras duplas e sem "."
+    // Caminhos com ".." não são cacheados, pois a normalização textual mudaria o comportamento de erro (ex: "arquivo/..")
+    // Diretório atual fora da árvore (removido por outra sessão): relativos não usam o cache
+    private String chaveCache(String caminho, long geracao) {
+        StringBuilder sb = new StringBuilder();
+        if (!caminho.startsWith("/")) {
+            String base = caminhoAtual(geracao);
+            if (base == null) return null;
+            if (!base.equals("/")) sb.append(base);
+        }
+        for (String parte : caminho.split("/")) {
+            if (parte.isEmpty() || parte.equals(".")) continue;
+            if (parte.equals("..")) return null;
+            sb.append("/").append(parte);
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    // Remove do cache o nó (e tudo abaixo dele) antes de uma remoção, renomeação ou movimentação
+    // (depois da alteração a geração avança de novo: caminhos montados no meio dela não valem mais)
+    private void invalidarCache(NoSistema no) {
+        comum.cacheCaminhos.invalidar(montarCaminho(no));
+    }
+
+    // Após mv/rename o diretório atual pode ter mudado de caminho (se um ancestral dele foi afetado)
+    private void atualizarCaminhoAtual() {
+        definirDiretorioAtual(diretorioAtual);
+    }
+
+    // Troca o diretório atual e guarda o caminho dele com a geração do cache lida antes de montá-lo
+    private void definirDiretorioAtual(Diretorio dir) {
+        long geracao = comum.cacheCaminhos.getGeracao();
+        this.diretorioAtual = dir;
+        this.caminhoDiretorioAtual = montarCaminho(dir);
+        this.geracaoCaminhoAtual = geracao;
+    }
+
+    // Caminho do diretório atual válido na geração 'geracao' do cache (null se ele saiu da árvore)
+    // Toda remoção, renomeação ou movimentação avança a geração depois de mexer na árvore, então um caminho
+    // montado numa geração mais antiga pode estar velho (outra sessão pode ter movido um ancestral)
+    private String caminhoAtual(long geracao) {
+        if (geracao != geracaoCaminhoAtual) {
+            if (!estaNaArvore(diretorioAtual)) return null;
+            atualizarCaminhoAtual();
+        }
+        return caminhoDiretorioAtual;
+    }
+
+    // Outra sessão pode ter trocado a raiz (rollback, load) ou removido o diretório atual desta:
+    // volta para o mesmo caminho na árvore em uso, se ele existir, ou fica na raiz
+    public void sincronizarSessao() {
+        if (estaNaArvore(diretorioAtual)) return;
+        String anterior = caminhoDiretorioAtual;
+        definirDiretorioAtual(comum.raiz);
+        boolean falhouAntes = falhou;
+        cd(anterior); // Se o caminho sumiu, fica na raiz: não é uma falha do comando
+        falhou = falhouAntes;
+    }
+
+    // Marca o comando atual como falho e devolve a mensagem de erro
+    private String falha(String mensagem) {
+        falhou = true;
+        return mensagem;
+    }
+
+    // Diz se algum comando falhou desde a última chamada (e zera a marcação)
+    public boolean consumirFalha() {
+        boolean resultado = falhou;
+        falhou = false;
+        return resultado;
+    }
+
+    // Registra uma subárvore recém-ligada (ex: cópia) nos índices
+    private void indexarSubarvore(NoSistema no) {
+        comum.indiceNomes.adicionarSubarvore(no);
+        if (comum.indiceConteudo != null) comum.indiceConteudo.indexarSubarvore(no);
+    }
+
+    // Tira dos índices uma subárvore que está saindo da árvore
+    private void desindexarSubarvore(NoSistema no) {
+        comum.indiceNomes.removerSubarvore(no);
+        if (comum.indiceConteudo != null) comum.indiceConteudo.removerSubarvore(no);
+    }
+
+    // Mantém o índice de conteúdo em dia após uma escrita
+    // inicioAnexo: posição onde começou o append, ou -1 se o conteúdo foi substituído
+    private void aoAlterarConteudo(Arquivo arquivo, int inicioAnexo) {
+        if (comum.indiceConteudo == null) return;
+        if (inicioAnexo < 0) comum.indiceConteudo.indexar(arquivo);
+        else comum.indiceConteudo.indexarAnexo(arquivo, inicioAnexo);
+    }
+
+    // PARALELISMO (Define quantas threads o motor de percurso usa; 1 = sequencial)
+    public String setParalelismo(int paralelismo) {
+        if (paralelismo < 1) return falha("Erro: O paralelismo deve ser pelo menos 1.");
+        return exclusivo(() -> {
+            // Percursos de leitura em andamento terminam no motor antigo (encerrar não interrompe tarefas já enviadas)
+            MotorPercurso antigo = comum.motorPercurso;
+            comum.motorPercurso = new MotorPercurso(paralelismo);
+            antigo.encerrar();
+            return "Paralelismo do percurso: " + paralelismo;
+        });
+    }
+
+    public int getParalelismo() {
+        return comum.motorPercurso.getParalelismo();
+    }
+
+    // CACHE-STATS (Exibe os contadores do cache de caminhos)
+    public String estatisticasCache() {
+        long acertos = comum.cacheCaminhos.getAcertos();
+        long falhas = comum.cacheCaminhos.getFalhas();
+        long total = acertos + falhas;
+        double taxa = total == 0 ? 0.0 : (acertos * 100.0) / total;
+        return String.format("Cache de caminhos: %d/%d entradas | acertos: %d | falhas: %d | taxa de acerto: %.1f%%\n",
+                comum.cacheCaminhos.getTamanho(), comum.cacheCaminhos.getCapacidade(), acertos, falhas, taxa);
+    }
+
+    // DEDUP-STATS (Tamanho lógico dos arquivos da árvore atual x caracteres realmente guardados)
+    // Cada bloco distinto (objeto) conta uma vez: blocos iguais no ArmazemBlocos e conteúdos compartilhados pelo cp
+    public String estatisticasDedup() {
+        long inicio = System.nanoTime();
+        long logico = 0;
+        long fisico = 0;
+        int arquivos = 0;
+        Set<byte[]> vistos = Collections.newSetFromMap(new IdentityHashMap<>());
+        long[] acumulado = new long[1];
+        Deque<Diretorio> pendentes = new ArrayDeque<>();
+        pendentes.push(comum.raiz);
+        while (!pendentes.isEmpty()) {
+            // Um diretório por vez, travado para leitura enquanto os blocos dos seus arquivos são contados
+            Diretorio atual = pendentes.pop();
+            Lock leitura = atual.travaLeitura();
+            leitura.lock();
+            try {
+                for (NoSistema filho : atual.getFilhosOrdenados(true)) {
+                    if (filho instanceof Diretorio dir) {
+                        pendentes.push(dir);
+                    } else if (filho instanceof Arquivo arq) {
+                        arquivos++;
+                        logico += arq.getTamanho();
+                        acumulado[0] = 0;
+                        arq.paraCadaBloco((bloco, tamanho) -> {
+                            if (vistos.add(bloco)) acumulado[0] += tamanho;
+                        });
+                        fisico += acumulado[0];
+                    }
+                }
+            } finally {
+                leitura.unlock();
+            }
+        }
+        double razao = fisico == 0 ? 1.0 : (double) logico / fisico;
+        return String.format("Arquivos: %d | tamanho lógico: %d bytes | físico: %d bytes | blocos distintos: %d | dedup: %.2fx | economia: %.1f%% (%.1f ms)\n"
+                        + "Armazém de blocos: %d blocos vivos | %d guardados | %d reaproveitados\n",
+                arquivos, logico, fisico, vistos.size(), razao, logico == 0 ? 0.0 : 100.0 * (logico - fisico) / logico,
+                (System.nanoTime() - inicio) / 1_000_000.0,
+                ArmazemBlocos.getBlocosArmazenados(), ArmazemBlocos.getGuardados(), ArmazemBlocos.getReaproveitados());
+    }
+
+    // Caminhada real pela árvore, usada quando o caminho não está no cache
+    private NoSistema percorrerCaminho(String caminho) throws Exception {
         // 1. Decide por onde começar a busca a partir do primeiro caractere
         Diretorio atualNavegacao;
         if (caminho.startsWith("/")) {
-            atualNavegacao = raiz; // Caminho Absoluto
+            atualNavegacao = comum.raiz; // Caminho Absoluto
             // Remove a primeira barra para evitar a criação de uma string vazia no split
             caminho = caminho.substring(1);
         } else {
@@ -134,42 +706,59 @@ public class SistemaArquivos {
         // 2. Pega cada parte do caminho entre as barras
         String[] partes = caminho.split("/");
 
-        // 3. Caminha pela árvore
-        for (String parte : partes) {
-            // Ignora partes vazias (caso de barras duplas //) ou ponto (.)
-            if (parte.isEmpty() || parte.equals(".")) {
-                continue;
-            } else if (parte.equals("..")) {
-                if (atualNavegacao.getPai() != null) {
-                    atualNavegacao = atualNavegacao.getPai();
+        // 3. Caminha pela árvore (hand-over-hand: a trava de leitura do filho é pega antes de soltar a do pai,
+        // então cada passo enxerga o diretório como ele estava ao entrar nele)
+        Lock travaAtual = atualNavegacao.travaLeitura();
+        travaAtual.lock();
+        try {
+            for (String parte : partes) {
+                // Ignora partes vazias (caso de barras duplas //) ou ponto (.)
+                if (parte.isEmpty() || parte.equals(".")) {
+                    continue;
+                } else if (parte.equals("..")) {
+                    Diretorio pai = atualNavegacao.getPai();
+                    if (pai != null) {
+                        // Subindo as travas não se sobrepõem: travar o pai segurando o filho inverteria a ordem
+                        travaAtual.unlock();
+                        travaAtual = null;
+                        atualNavegacao = pai;
+                        travaAtual = pai.travaLeitura();
+                        travaAtual.lock();
+                    }
+                    // Se pai for null (raiz), continua na raiz
+                    continue;
                 }
-                // Se pai for null (raiz), continua na raiz
-                continue;
-            }
-            // Tenta descer um nível
-            NoSistema proximo = atualNavegacao.getFilho(parte);
-            if (proximo == null) {
-                throw new Exception("Caminho não encontrado: " + parte);
-            }
-
-            // Se tem um caminho no meio do caminho: erro
-            if (proximo.isArquivo()) {
-                if (parte.equals(partes[partes.length - 1])) {
-                    return proximo;
+                // Tenta descer um nível
+                NoSistema proximo = atualNavegacao.getFilho(parte);
+                if (proximo == null) {
+                    throw new Exception("Caminho não encontrado: " + parte);
                 }
-                throw new Exception("Erro: '" + parte + "' não é um diretório.");
-            }
 
-            // É um diretório, prossegue até o fim do caminho
-            atualNavegacao = (Diretorio) proximo;
+                // Se tem um caminho no meio do caminho: erro
+                if (proximo.isArquivo()) {
+                    if (parte.equals(partes[partes.length - 1])) {
+                        return proximo;
+                    }
+                    throw new Exception("Erro: '" + parte + "' não é um diretório.");
+                }
 
+                // É um diretório, prossegue até o fim do caminho
+                Diretorio proximoDir = (Diretorio) proximo;
+                Lock travaProxima = proximoDir.travaLeitura();
+                travaProxima.lock();
+                travaAtual.unlock();
+                travaAtual = travaProxima;
+                atualNavegacao = proximoDir;
+            }
+            return atualNavegacao;
+        } finally {
+            if (travaAtual != null) travaAtual.unlock();
         }
-        return atualNavegacao;
     }
 
     // Verifica se o usuário logado é dono do nó
     private boolean souDono(NoSistema no) {
-        return no.getDono().equals(this.usuarioLogado);
+        return no.getIdDono() == idUsuarioLogado;
     }
 
     // Verifica se o usuário tem a permissão no nó
@@ -177,20 +766,16 @@ public class SistemaArquivos {
     // souDono: true se o usuário é dono, false se for "outros"
     private boolean temPermissao(NoSistema no, char modo, boolean souDono) {
         // Se for root, tudo é permitido
-        if (usuarioLogado.equals("root")) return true;
+        if (idUsuarioLogado == TabelaUsuarios.ROOT) return true;
 
-        // Exemplo: -rwxr--r--
-        // Índices: 0123456789
-        // Dono: 1,2,3 | Grupo: 4,5,6 | Outros: 7,8,9
+        // Exemplo: -rwxr--r-- = 0744
+        // Bits: Dono 0400,0200,0100 | Grupo 040,020,010 | Outros 04,02,01
+        int bit;
+        if (modo == 'r') bit = souDono ? NoSistema.LEITURA_DONO : NoSistema.LEITURA_OUTROS;
+        else if (modo == 'w') bit = souDono ? NoSistema.ESCRITA_DONO : NoSistema.ESCRITA_OUTROS;
+        else bit = souDono ? NoSistema.EXECUCAO_DONO : NoSistema.EXECUCAO_OUTROS;
 
-        String perms = no.getPermissoes();
-        int indiceBase = souDono ? 1 : 7;
-
-        int indiceVerificacao = indiceBase;
-        if (modo == 'w') indiceVerificacao += 1;
-        else if (modo == 'x') indiceVerificacao += 2;
-
-        return perms.charAt(indiceVerificacao) == modo;
+        return no.temBit(bit);
     }
 
     // Metodo principal que une os dois
@@ -201,15 +786,16 @@ public class SistemaArquivos {
 
     // PWD (Exibe o caminho atual completo)
     public String getCaminhoCompleto() {
-        if (diretorioAtual == raiz) return "/";
+        if (diretorioAtual == comum.raiz) return "/";
 
         StringBuilder sb = new StringBuilder();
         Diretorio temp = diretorioAtual;
-        while (temp != raiz) {
+        // Para em qualquer raiz: o diretório atual pode ter ficado numa árvore que outra sessão trocou (rollback, load)
+        while (temp != null && temp.getPai() != null) {
             sb.insert(0, "/" + temp.getNome());
             temp = temp.getPai();
         }
-        return sb.toString();
+        return sb.length() == 0 ? "/" : sb.toString();
     }
 
     // CD (Navega pelo sistema de arquivos)
@@ -217,20 +803,25 @@ public class SistemaArquivos {
         try {
             NoSistema alvo = resolverCaminho(caminho);
             if (!(alvo.isDiretorio())) {
-                return "Erro: '" + alvo.getNome() + "' não é um diretório.";
+                return falha("Erro: '" + alvo.getNome() + "' não é um diretório.");
             }
             if (!verificarPermissao(alvo, 'x')) {
-                return "Permissão negada: Não é possível acessar '" + alvo.getNome() + "'";
+                return falha("Permissão negada: Não é possível acessar '" + alvo.getNome() + "'");
             }
-            this.diretorioAtual = (Diretorio) alvo;
+            definirDiretorioAtual((Diretorio) alvo);
             return "";
         } catch (Exception e) {
-            return e.getMessage();
+            return falha(e.getMessage());
         }
     }
 
     // LS (Lista os diretórios e arquivos dentro de um diretório)
     public String ls(String caminhoOpcional, boolean mostrarOcultos, boolean formatoLongo) {
+        return ls(caminhoOpcional, mostrarOcultos, formatoLongo, 0, -1);
+    }
+
+    // LS paginado (para diretórios muito grandes): pula 'deslocamento' entradas e mostra no máximo 'limite' (limite < 0 = todas)
+    public String ls(String caminhoOpcional, boolean mostrarOcultos, boolean formatoLongo, int deslocamento, int limite) {
         try {
             Diretorio alvo = diretorioAtual;
             // Se passou caminho, resolve primeiro
@@ -239,7 +830,7 @@ public class SistemaArquivos {
                 // Se for diretório, precisa de Leitura para listar conteúdo
                 if (no.isDiretorio()) {
                     if (!verificarPermissao(no, 'r')) {
-                        return "Permissão negada: Não é possível ler o diretório '" + no.getNome() + "'";
+                        return falha("Permissão negada: Não é possível ler o diretório '" + no.getNome() + "'");
                     }
                     alvo = (Diretorio) no;
                 } else {
@@ -248,28 +839,19 @@ public class SistemaArquivos {
                 }
             }
             if (!verificarPermissao(alvo, 'r')) {
-                return "Permissão negada: Não é possível listar o diretório atual.";
-            }
-
-            // Pega os filhos
-            List<NoSistema> conteudo = new ArrayList<>(alvo.getFilhos().values());
-
-            // Filtra ocultos (começam com .) se a flag -a não estiver ativa
-            if (!mostrarOcultos) {
-                conteudo.removeIf(no -> no.getNome().startsWith("."));
+                return falha("Permissão negada: Não é possível listar o diretório atual.");
             }
-            // Ordena alfabeticamente
-            conteudo.sort(Comparator.comparing(NoSistema::getNome));
 
-            return formatarSaidaLs(conteudo, formatoLongo);
+            // Os filhos já vêm em ordem alfabética (e sem os ocultos, se a flag -a não estiver ativa)
+            return formatarSaidaLs(alvo.listarFilhos(deslocamento, limite, mostrarOcultos), formatoLongo);
 
         } catch (Exception e) {
-            return "Erro: " + e.getMessage();
+            return falha("Erro: " + e.getMessage());
         }
     }
 
     // Auxiliar de formatação do LS
-    private String formatarSaidaLs(List<NoSistema> nos, boolean longo) {
+    private String formatarSaidaLs(Collection<NoSistema> nos, boolean longo) {
         if (nos.isEmpty()) return "";
         StringBuilder sb = new StringBuilder();
 
@@ -292,79 +874,77 @@ public class SistemaArquivos {
         return sb.toString();
     }
 
-    // Tree (Exibe a arvore de diretórios a partir de um caminho de forma recursivo)
+    // Tree (Exibe a arvore de diretórios a partir de um caminho, usando o motor de percurso)
     public String tree(String caminho, boolean mostrarOcultos) {
         StringBuilder sb = new StringBuilder();
         sb.append(".\n");
         if (caminho.isEmpty()) {
-            listarRecursivo(diretorioAtual, "", sb, mostrarOcultos);
+            listarArvore(diretorioAtual, sb, mostrarOcultos);
         } else {
             try {
                 NoSistema no = resolverCaminho(caminho);
                 if (no.isDiretorio()) {
-                    listarRecursivo((Diretorio) no, "", sb, mostrarOcultos);
+                    listarArvore((Diretorio) no, sb, mostrarOcultos);
                 }
             } catch (Exception e) {
-                listarRecursivo(diretorioAtual, "", sb, mostrarOcultos);
+                listarArvore(diretorioAtual, sb, mostrarOcultos);
             }
         }
         return sb.toString();
     }
 
-    private void listarRecursivo(Diretorio dir, String prefixo, StringBuilder sb, boolean mostrarOcultos) {
-        if (!verificarPermissao(dir, 'r')) {
-            return;
-        }
-        List<NoSistema> filhos = new ArrayList<>(dir.getFilhos().values());
-        // Ordenar para facilitar a leitura e identificação
-        filhos.sort(Comparator.comparing(NoSistema::getNome));
+    // Contexto do tree: o começo da linha do nó ("│   ├── ") e o prefixo que os filhos dele vão usar
+    // No diretório inicial a linha é null (ele não é impresso, só o ".")
+    private record ContextoTree(String linha, String prefixoFilhos) {}
 
-        // [1] Filtra ocultos
-        if (!mostrarOcultos) {
-            filhos.removeIf(no -> no.getNome().startsWith("."));
-        }
+    private void listarArvore(Diretorio inicio, StringBuilder sb, boolean mostrarOcultos) {
+        MotorPercurso.Saida saida = comum.motorPercurso.percorrer(inicio, new ContextoTree(null, ""),
+                new MotorPercurso.Visitante<ContextoTree, MotorPercurso.Saida>() {
+                    @Override
+                    public Collection<NoSistema> filhos(Diretorio dir, ContextoTree contexto) {
+                        // Sem leitura não desce (o aviso [Sem Permissão] sai na linha do próprio diretório)
+                        if (!verificarPermissao(dir, 'r')) return Collections.emptyList();
 
-        filhos.sort(Comparator.comparing(NoSistema::getNome));
+                        // [1] Filhos já ordenados por nome, sem os ocultos (a não ser com -a)
+                        return dir.getFilhosOrdenados(mostrarOcultos);
+                    }
 
-        for (int i = 0; i < filhos.size(); i++) {
-            NoSistema no = filhos.get(i);
-            boolean isLast = (i == filhos.size() - 1);
+                    @Override
+                    public ContextoTree contextoFilho(NoSistema filho, int indice, int total, ContextoTree pai) {
+                        boolean isLast = (indice == total - 1);
+                        return new ContextoTree(pai.prefixoFilhos() + (isLast ? "└── " : "├── "),
+                                pai.prefixoFilhos() + (isLast ? "    " : "│   "));
+                    }
 
-            sb.append(prefixo);
-            sb.append(isLast ? "└── " : "├── ");
-            sb.append(no.getNome());
+                    @Override
+                    public MotorPercurso.Saida visitarArquivo(Arquivo arquivo, ContextoTree contexto) {
+                        return MotorPercurso.Saida.de(contexto.linha() + arquivo.getNome() + "\n");
+                    }
 
-            // Verifica se é diretório para continuar descendo
-            if (no.isDiretorio()) {
-                Diretorio subDir = (Diretorio) no;
+                    @Override
+                    public MotorPercurso.Saida visitarDiretorio(Diretorio dir, ContextoTree contexto, List<MotorPercurso.Saida> filhos) {
+                        if (contexto.linha() == null) return MotorPercurso.Saida.de("", filhos, "");
 
-                // [2] Check antecipado: Se não tem permissão, avisa na frente do nome
-                if (!verificarPermissao(subDir, 'r')) {
-                    sb.append(" [Sem Permissão]");
-                    sb.append("\n"); // Fecha a linha
-                    // Não chama recursivo
-                } else {
-                    sb.append("\n"); // Fecha a linha normal
-                    // Chama recursivo
-                    listarRecursivo(subDir, prefixo + (isLast ? "    " : "│   "), sb, mostrarOcultos);
-                }
-            } else {
-                sb.append("\n");
-            }
-        }
+                        // [2] Se não tem permissão, avisa na frente do nome
+                        String aviso = verificarPermissao(dir, 'r') ? "" : " [Sem Permissão]";
+                        return MotorPercurso.Saida.de(contexto.linha() + dir.getNome() + aviso + "\n", filhos, "");
+                    }
+                });
+        saida.escreverEm(sb);
     }
 
     // CAT (Exibe o conteúdo de arquivos)
     public String cat(String caminho) {
         try {
             NoSistema no = resolverCaminho(caminho);
-            if (no.isDiretorio()) return "cat: " + no.getNome() + ": É um diretório";
+            if (no.isDiretorio()) return falha("cat: " + no.getNome() + ": É um diretório");
             if (!verificarPermissao(no, 'r')) {
-                return "Permissão negada: Ler '" + no.getNome() + "'";
+                return falha("Permissão negada: Ler '" + no.getNome() + "'");
             }
-            return ((Arquivo) no).getConteudo();
+            Arquivo arq = (Arquivo) no;
+            return comDiretorioTravado(arq, false, arq::getConteudo);
         } catch (Exception e) {
-            return "cat: " + e.getMessage();
+            return falha("cat: " + e.getMessage());
         }
     }
 
@@ -379,6 +959,11 @@ public class SistemaArquivos {
 
     // MKDIR (Suporta "mkdir pasta" ou "mkdir /a/b/pasta")
     public String mkdir(String caminho) {
+        return registrarOperacao(Journal.MKDIR, () -> mkdirInterno(caminho), caminho);
+    }
+
+    // MKDIR (Suporta "mkdir pasta" ou "mkdir /a/b/pasta")
+    private String mkdirInterno(String caminho) {
         try {
             // Tratamento para evitar a criação de pastas vazias
             if (caminho.endsWith("/")) {
@@ -408,8 +993,8 @@ public class SistemaArquivos {
                 // Busca o objeto do pai
                 NoSistema noPai = resolverCaminho(caminhoPai);
 
-                if (noPai == null) return "Erro: Caminho base não encontrado.";
-                if (!(noPai.isDiretorio())) return "Erro: '" + caminhoPai + "' não é um diretório.";
+                if (noPai == null) return falha("Erro: Caminho base não encontrado.");
+                if (!(noPai.isDiretorio())) return falha("Erro: '" + caminhoPai + "' não é um diretório.");
 
                 paiAlvo = (Diretorio) noPai;
             }
@@ -417,64 +1002,99 @@ public class SistemaArquivos {
             validarNome(nomeNovoDir);
 
             if (!verificarPermissao(paiAlvo, 'w')) {
-                return "Permissão negada: Não é possível criar '" + nomeNovoDir + "' em '" + paiAlvo.getNome() + "'.";
+                return falha("Permissão negada: Não é possível criar '" + nomeNovoDir + "' em '" + paiAlvo.getNome() + "'.");
             }
 
-            // Validação: Já existe?
-            if (paiAlvo.getFilho(nomeNovoDir) != null) {
-                return "Erro: Já existe algo com o nome '" + nomeNovoDir + "'.";
-            }
+            Lock escrita = paiAlvo.travaEscrita();
+            escrita.lock();
+            aoTravarEscrita();
+            try {
+                // Outra thread pode ter removido o pai depois da resolução
+                if (!estaNaArvore(paiAlvo)) return falha("Erro: Caminho base não encontrado.");
+
+                // Validação: Já existe?
+                if (paiAlvo.getFilho(nomeNovoDir) != null) {
+                    return falha("Erro: Já existe algo com o nome '" + nomeNovoDir + "'.");
+                }
 
-            // Criação e ligação
-            Diretorio novo = new Diretorio(nomeNovoDir, paiAlvo);
-            novo.setDono(this.usuarioLogado);
-            paiAlvo.adicionarFilho(novo);
+                // Criação e ligação
+                Diretorio novo = new Diretorio(nomeNovoDir, paiAlvo);
+                novo.setIdDono(idUsuarioLogado);
+                paiAlvo.adicionarFilho(novo);
+                comum.indiceNomes.adicionar(novo);
+            } finally {
+                escrita.unlock();
+            }
             return "Diretório '" + nomeNovoDir + "' criado com sucesso.";
 
         } catch (IllegalArgumentException e) {
-            return "Erro: " + e.getMessage();
+            return falha("Erro: " + e.getMessage());
         } catch (Exception e) {
-            return "Erro ao criar diretório: " + e.getMessage();
+            return falha("Erro ao criar diretório: " + e.getMessage());
         }
     }
 
     // RM (Remove arquivos ou diretórios vazios)
     public String rm(String caminho, boolean recursivo) {
+        return registrarOperacao(Journal.RM, () -> rmInterno(caminho, recursivo), caminho, String.valueOf(recursivo));
+    }
+
+    // RM (Remove arquivos ou diretórios vazios)
+    private String rmInterno(String caminho, boolean recursivo) {
         try {
             NoSistema alvo = resolverCaminho(caminho);
 
             // 1. Proteções Básicas
-            if (alvo == raiz) return "Erro: Não é possível remover a raiz.";
+            if (alvo == comum.raiz) return falha("Erro: Não é possível remover a raiz.");
 
             // Proteção Extra: Não deixar remover o diretório onde o usuário está (ou um ancestral dele)
             if (isAncestral(alvo, diretorioAtual)) {
-                return "Erro: Não é possível remover o diretório atual ou um de seus pais enquanto você está dentro dele.";
+                return falha("Erro: Não é possível remover o diretório atual ou um de seus pais enquanto você está dentro dele.");
             }
 
             Diretorio pai = alvo.getPai();
 
             // 2. Verificação de Permissão (Precisa de escrita no PAI)
             if (!verificarPermissao(pai, 'w')) {
-                return "Permissão negada: Não é possível remover '" + alvo.getNome() + "' (sem permissão de escrita no diretório pai).";
+                return falha("Permissão negada: Não é possível remover '" + alvo.getNome() + "' (sem permissão de escrita no diretório pai).");
             }
 
-            // 3. Lógica de Diretório e Recursividade
-            if (alvo.isDiretorio()) {
-                Diretorio dirAlvo = (Diretorio) alvo;
+            // O pai e (se for diretório) o próprio alvo ficam travados: nada entra no alvo enquanto ele é conferido e removido
+            Lock escritaPai = pai.travaEscrita();
+            Lock escritaAlvo = alvo.isDiretorio() ? ((Diretorio) alvo).travaEscrita() : null;
+            escritaPai.lock();
+            if (escritaAlvo != null) escritaAlvo.lock();
+            aoTravarEscrita();
+            try {
+                // Outra thread pode ter removido ou movido o alvo depois da resolução
+                if (pai.getFilho(alvo.getNome()) != alvo || !estaNaArvore(pai)) {
+                    return falha("Erro ao remover: Caminho não encontrado: " + alvo.getNome());
+                }
+
+                // 3. Lógica de Diretório e Recursividade
+                if (alvo.isDiretorio()) {
+                    Diretorio dirAlvo = (Diretorio) alvo;
 
-                // Se tem filhos e NÃO foi passado -r/-rf
-                if (dirAlvo.temFilhos() && !recursivo) {
-                    return "Erro: O diretório '" + alvo.getNome() + "' não está vazio. (Use -rf para forçar recursividade)";
+                    // Se tem filhos e NÃO foi passado -r/-rf
+                    if (dirAlvo.temFilhos() && !recursivo) {
+                        return falha("Erro: O diretório '" + alvo.getNome() + "' não está vazio. (Use -rf para forçar recursividade)");
+                    }
+                    // Caso contrário segue e remove os filhos internos
                 }
-                // Caso contrário segue e remove os filhos internos
-            }
 
-            // 4. Remoção
-            pai.removerFilho(alvo.getNome());
+                // 4. Remoção
+                invalidarCache(alvo);
+                desindexarSubarvore(alvo);
+                pai.removerFilho(alvo.getNome());
+                comum.cacheCaminhos.avancarGeracao();
+            } finally {
+                if (escritaAlvo != null) escritaAlvo.unlock();
+                escritaPai.unlock();
+            }
             return "Removido: " + alvo.getNome();
 
         } catch (Exception e) {
-            return "Erro ao remover: " + e.getMessage();
+            return falha("Erro ao remover: " + e.getMessage());
         }
     }
 
@@ -490,6 +1110,11 @@ public class SistemaArquivos {
 
     // TOUCH (Cria um arquivo vazio)
     public String touch(String caminho) {
+        return registrarOperacao(Journal.TOUCH, () -> touchInterno(caminho), caminho);
+    }
+
+    // TOUCH (Cria um arquivo vazio)
+    private String touchInterno(String caminho) {
         try {
             // Resolve o pai (diretório onde o arquivo ficará)
             String nomeArquivo;
@@ -505,40 +1130,55 @@ public class SistemaArquivos {
                 if (caminhoPai.isEmpty()) caminhoPai = "/";
 
                 NoSistema noPai = resolverCaminho(caminhoPai);
-                if (!(noPai.isDiretorio())) return "Erro: Caminho inválido.";
+                if (!(noPai.isDiretorio())) return falha("Erro: Caminho inválido.");
                 paiAlvo = (Diretorio) noPai;
             }
 
             validarNome(nomeArquivo);
 
             if (!verificarPermissao(paiAlvo, 'w')) {
-                return "Permissão negada: Criar arquivo em '" + paiAlvo.getNome() + "'.";
+                return falha("Permissão negada: Criar arquivo em '" + paiAlvo.getNome() + "'.");
             }
 
-            // Verifica se já existe
-            NoSistema existente = paiAlvo.getFilho(nomeArquivo);
-            if (existente != null) {
-                if (existente.isDiretorio()) return "Erro: Já existe um diretório com esse nome.";
-                // Simulando a atualização do timestamp
-                existente.setDono(this.usuarioLogado);
-                return "Arquivo '" + nomeArquivo + "' atualizado.";
-            }
+            Lock escrita = paiAlvo.travaEscrita();
+            escrita.lock();
+            aoTravarEscrita();
+            try {
+                if (!estaNaArvore(paiAlvo)) return falha("Erro: Caminho inválido.");
+
+                // Verifica se já existe
+                NoSistema existente = paiAlvo.getFilho(nomeArquivo);
+                if (existente != null) {
+                    if (existente.isDiretorio()) return falha("Erro: Já existe um diretório com esse nome.");
+                    // Simulando a atualização do timestamp
+                    existente.setIdDono(idUsuarioLogado);
+                    return "Arquivo '" + nomeArquivo + "' atualizado.";
+                }
 
-            // Criação do arquivo
-            Arquivo novoArq = new Arquivo(nomeArquivo, paiAlvo);
-            novoArq.setDono(this.usuarioLogado);
-            paiAlvo.adicionarFilho(novoArq);
+                // Criação do arquivo
+                Arquivo novoArq = new Arquivo(nomeArquivo, paiAlvo);
+                novoArq.setIdDono(idUsuarioLogado);
+                paiAlvo.adicionarFilho(novoArq);
+                comum.indiceNomes.adicionar(novoArq);
+            } finally {
+                escrita.unlock();
+            }
             return "Arquivo '" + nomeArquivo + "' criado.";
 
         } catch (IllegalArgumentException e) {
-            return "Nome inválido: " + e.getMessage();
+            return falha("Nome inválido: " + e.getMessage());
         } catch (Exception e) {
-            return "Erro: " + e.getMessage();
+            return falha("Erro: " + e.getMessage());
         }
     }
 
     // ECHO (Sobrescreve > ou adiciona >> conteúdo em arquivos)
     public String escreverNoArquivo(String caminho, String texto, boolean append) {
+        return registrarOperacao(Journal.ESCREVER, () -> escreverNoArquivoInterno(caminho, texto, append), caminho, texto, String.valueOf(append));
+    }
+
+    // ECHO (Sobrescreve > ou adiciona >> conteúdo em arquivos)
+    private String escreverNoArquivoInterno(String caminho, String texto, boolean append) {
         try {
             // 1. Resolver o arquivo ou o diretório pai (caso o arquivo não exista)
             NoSistema noAlvo = null;
@@ -548,73 +1188,102 @@ public class SistemaArquivos {
                 // Caso o arquivo não existe, tentamos cria-lo no diretório pai encontrado
             }
 
-            Arquivo arquivo = null;
+            Arquivo arquivo;
             if (noAlvo != null) {
                 // Arquivo existente: Precisa de permissão de escrita no arquivo
                 if (!verificarPermissao(noAlvo, 'w')) {
-                    return "Permissão negada: Escrever em '" + noAlvo.getNome() + "'";
+                    return falha("Permissão negada: Escrever em '" + noAlvo.getNome() + "'");
                 }
-                if (noAlvo.isDiretorio()) return "Erro: É um diretório.";
+                if (noAlvo.isDiretorio()) return falha("Erro: É um diretório.");
                 arquivo = (Arquivo) noAlvo;
 
-                Arquivo arq = (Arquivo) noAlvo;
-                if (append) arq.appendConteudo(texto);
-                else arq.setConteudo(texto);
-
             } else {
                 // Arquivo novo: Precisa de permissão de Escrita no diretório PAI
-                String caminhoPai = "/";
+                // Sem barra, o pai é o diretório atual (e não a raiz)
+                String caminhoPai = ".";
                 int indiceUltimaBarra = caminho.lastIndexOf('/');
                 if (indiceUltimaBarra != -1) caminhoPai = caminho.substring(0, indiceUltimaBarra);
                 if (caminhoPai.isEmpty()) caminhoPai = "/";
 
                 NoSistema pai = resolverCaminho(caminhoPai);
                 if (!verificarPermissao(pai, 'w')) {
-                    return "Permissão negada: Criar arquivo em '" + pai.getNome() + "'";
+                    return falha("Permissão negada: Criar arquivo em '" + pai.getNome() + "'");
                 }
                 // Não existe, encontra o pai e cria
                 String res = touch(caminho);
-                if (res.startsWith("Erro")) return res; // Falha ao criar com touch
-                arquivo = (Arquivo) resolverCaminho(caminho);
+                if (res.startsWith("Erro") || res.startsWith("Permissão")) return falha(res); // Falha ao criar com touch
+                NoSistema criado = resolverCaminho(caminho);
+                if (criado.isDiretorio()) return falha("Erro: É um diretório."); // Outra sessão criou um diretório no meio
+                arquivo = (Arquivo) criado;
             }
+
+            // 2. Escrita (no arquivo existente ou no recém-criado)
+            comDiretorioTravado(arquivo, true, () -> {
+                int tamanhoAnterior = arquivo.getTamanho();
+                if (append) arquivo.appendConteudo(texto);
+                else arquivo.setConteudo(texto);
+                aoAlterarConteudo(arquivo, append ? tamanhoAnterior : -1);
+                return null;
+            });
             return ""; // Sucesso (sem mensagem de erro)
 
         } catch (Exception e) {
-            return "Erro ao escrever: " + e.getMessage();
+            return falha("Erro ao escrever: " + e.getMessage());
         }
     }
 
     // RENAME (Renomeia arquivos ou diretórios)
     public String rename(String nomeAntigo, String novoNome) {
+        return registrarOperacao(Journal.RENAME, () -> renameInterno(nomeAntigo, novoNome), nomeAntigo, novoNome);
+    }
+
+    // RENAME (Renomeia arquivos ou diretórios)
+    private String renameInterno(String nomeAntigo, String novoNome) {
         try {
             // Validação simples do novo nome
-            if (novoNome.contains("/")) return "Erro: O novo nome não pode conter barras (use mv para mover).";
+            if (novoNome.contains("/")) return falha("Erro: O novo nome não pode conter barras (use mv para mover).");
 
             NoSistema alvo = resolverCaminho(nomeAntigo);
-            if (alvo == raiz) return "Erro: Não é possível renomear a raiz.";
+            if (alvo == comum.raiz) return falha("Erro: Não é possível renomear a raiz.");
 
             Diretorio pai = alvo.getPai();
 
             validarNome(novoNome);
 
-            // Verifica se o nome já existe no diretório pai
-            if (pai.getFilho(novoNome) != null) {
-                return "Erro: Já existe um arquivo/diretório com o nome '" + novoNome + "'.";
-            }
+            // Rename só mexe em um diretório: basta a trava de escrita do pai
+            Lock escrita = pai.travaEscrita();
+            escrita.lock();
+            aoTravarEscrita();
+            try {
+                // Outra thread pode ter removido ou movido o alvo depois da resolução
+                if (pai.getFilho(alvo.getNome()) != alvo) {
+                    return falha("Erro ao renomear: Caminho não encontrado: " + nomeAntigo);
+                }
+
+                // Verifica se o nome já existe no diretório pai
+                if (pai.getFilho(novoNome) != null) {
+                    return falha("Erro: Já existe um arquivo/diretório com o nome '" + novoNome + "'.");
+                }
 
-            // Remove a referência do arquivo no map a partir da chave antiga
-            pai.removerFilho(alvo.getNome());
+                // O caminho antigo (e tudo abaixo dele) deixa de existir
+                invalidarCache(alvo);
 
-            // Atualiza o nome interno do objeto
-            alvo.setNome(novoNome);
-            pai.adicionarFilho(alvo);
+                // Troca a chave no diretório pai e atualiza o nome interno do objeto
+                comum.indiceNomes.remover(alvo);
+                pai.renomearFilho(alvo.getNome(), novoNome);
+                comum.indiceNomes.adicionar(alvo);
+                comum.cacheCaminhos.avancarGeracao();
+            } finally {
+                escrita.unlock();
+            }
+            atualizarCaminhoAtual();
 
             return "Renomeado de '" + nomeAntigo + "' para '" + novoNome + "'.";
 
         } catch (IllegalArgumentException e) {
-            return "Erro: " + e.getMessage();
+            return falha("Erro: " + e.getMessage());
         } catch (Exception e) {
-            return "Erro ao renomear: " + e.getMessage();
+            return falha("Erro ao renomear: " + e.getMessage());
         }
     }
 
@@ -622,18 +1291,20 @@ public class SistemaArquivos {
     public String head(String caminho, int linhas) {
         try {
             Arquivo arq = obterArquivoTexto(caminho);
-            String[] todasLinhas = arq.getConteudo().split("\n");
 
-            StringBuilder sb = new StringBuilder();
-            int limite = Math.min(linhas, todasLinhas.length);
+            return comDiretorioTravado(arq, false, () -> {
+                StringBuilder sb = new StringBuilder();
+                int limite = Math.min(linhas, arq.getNumeroLinhas());
 
-            for (int i = 0; i < limite; i++) {
-                sb.append(todasLinhas[i]).append("\n");
-            }
-            return sb.toString();
+                // Lê só as linhas pedidas, direto pelo índice de linhas
+                for (int i = 0; i < limite; i++) {
+                    sb.append(arq.getLinha(i)).append("\n");
+                }
+                return sb.toString();
+            });
 
         } catch (Exception e) {
-            return e.getMessage();
+            return falha(e.getMessage());
         }
     }
 
@@ -641,18 +1312,21 @@ public class SistemaArquivos {
     public String tail(String caminho, int linhas) {
         try {
             Arquivo arq = obterArquivoTexto(caminho);
-            String[] todasLinhas = arq.getConteudo().split("\n");
 
-            StringBuilder sb = new StringBuilder();
-            int inicio = Math.max(0, todasLinhas.length - linhas);
+            return comDiretorioTravado(arq, false, () -> {
+                int totalLinhas = arq.getNumeroLinhas();
 
-            for (int i = inicio; i < todasLinhas.length; i++) {
-                sb.append(todasLinhas[i]).append("\n");
-            }
-            return sb.toString();
+                StringBuilder sb = new StringBuilder();
+                int inicio = Math.max(0, totalLinhas - linhas);
+
+                for (int i = inicio; i < totalLinhas; i++) {
+                    sb.append(arq.getLinha(i)).append("\n");
+                }
+                return sb.toString();
+            });
 
         } catch (Exception e) {
-            return e.getMessage();
+            return falha(e.getMessage());
         }
     }
 
@@ -660,21 +1334,18 @@ public class SistemaArquivos {
     public String wc(String caminho) {
         try {
             Arquivo arq = obterArquivoTexto(caminho);
-            String conteudo = arq.getConteudo();
-
-            int numLinhas = conteudo.isEmpty() ? 0 : conteudo.split("\n").length;
-            int numBytes = conteudo.length();
 
-            // Contar palavras (split por whitespace)
-            int numPalavras = 0;
-            if (!conteudo.trim().isEmpty()) {
-                numPalavras = conteudo.trim().split("\\s+").length;
-            }
+            // Contagens já mantidas pelo índice de linhas do arquivo (sem percorrer o conteúdo)
+            return comDiretorioTravado(arq, false, () -> {
+                int numLinhas = arq.getNumeroLinhas();
+                int numBytes = arq.getTamanho();
+                int numPalavras = arq.getNumeroPalavras();
 
-            return String.format("%d %d %d %s", numLinhas, numPalavras, numBytes, arq.getNome());
+                return String.format("%d %d %d %s", numLinhas, numPalavras, numBytes, arq.getNome());
+            });
 
         } catch (Exception e) {
-            return e.getMessage();
+            return falha(e.getMessage());
         }
     }
 
@@ -687,151 +1358,780 @@ public class SistemaArquivos {
 
     // PERMISSÕES E PROPRIEDADES
     public String chmod(String codigoOctal, String caminho) {
+        return registrarOperacao(Journal.CHMOD, () -> chmodInterno(codigoOctal, caminho), codigoOctal, caminho);
+    }
+
+    // PERMISSÕES E PROPRIEDADES
+    private String chmodInterno(String codigoOctal, String caminho) {
         try {
             // Validação do formato (tem que ser 3 números de 0 a 7)
             if (codigoOctal.length() != 3 || !codigoOctal.matches("[0-7]{3}")) {
-                return "Erro: Formato inválido. Use 3 dígitos octais (ex: 755, 777).";
+                return falha("Erro: Formato inválido. Use 3 dígitos octais (ex: 755, 777).");
             }
 
             // Busca o alvo
             NoSistema alvo = resolverCaminho(caminho);
 
-            //  Monta a nova string de permissão
-            StringBuilder sb = new StringBuilder();
-
-            // O primeiro caractere indica se é diretório (d) ou arquivo (-)
-            if (alvo.isDiretorio()) {
-                sb.append("d");
-            } else {
-                sb.append("-");
-            }
-
-            // Converte os 3 números para letras
-            sb.append(converterPermissaoOctal(codigoOctal.charAt(0))); // Dono
-            sb.append(converterPermissaoOctal(codigoOctal.charAt(1))); // Grupo
-            sb.append(converterPermissaoOctal(codigoOctal.charAt(2))); // Outros
-
-            // Aplica a mudança
-            alvo.setPermissoes(sb.toString());
-            return "Permissões de '" + alvo.getNome() + "' alteradas para " + sb.toString();
+            // Cada dígito octal vira 3 bits (dono, grupo, outros), guardados direto no nó
+            comDiretorioTravado(alvo, true, () -> {
+                alvo.setModo(Integer.parseInt(codigoOctal, 8));
+                return null;
+            });
+            return "Permissões de '" + alvo.getNome() + "' alteradas para " + alvo.getPermissoes();
 
         } catch (Exception e) {
-            return "Erro ao executar chmod: " + e.getMessage();
+            return falha("Erro ao executar chmod: " + e.getMessage());
         }
     }
 
     public String chown(String novoDono, String caminho) {
+        return registrarOperacao(Journal.CHOWN, () -> chownInterno(novoDono, caminho), novoDono, caminho);
+    }
+
+    private String chownInterno(String novoDono, String caminho) {
         try {
             // Busca o alvo
             NoSistema alvo = resolverCaminho(caminho);
 
             if (novoDono == null || novoDono.trim().isEmpty()) {
-                return "Erro: Nome de usuário inválido.";
+                return falha("Erro: Nome de usuário inválido.");
             }
 
             // Aplica a mudança
-            String antigo = alvo.getDono();
-            alvo.setDono(novoDono);
+            String antigo = comDiretorioTravado(alvo, true, () -> {
+                String anterior = alvo.getDono();
+                alvo.setDono(novoDono);
+                return anterior;
+            });
 
             return "Dono de '" + alvo.getNome() + "' alterado: " + antigo + " -> " + novoDono;
 
         } catch (Exception e) {
-            return "Erro ao executar chown: " + e.getMessage();
-        }
-    }
-
-    // Método Auxiliar: Converte número ('7') para string ("rwx")
-    private String converterPermissaoOctal(char numero) {
-        switch (numero) {
-            case '0':
-                return "---";
-            case '1':
-                return "--x";
-            case '2':
-                return "-w-";
-            case '3':
-                return "-wx";
-            case '4':
-                return "r--";
-            case '5':
-                return "r-x";
-            case '6':
-                return "rw-";
-            case '7':
-                return "rwx";
-            default:
-                return "---";
+            return falha("Erro ao executar chown: " + e.getMessage());
         }
     }
 
-    // FIND
+    // FIND (Responde pelo índice de nomes, filtrando por ancestralidade e permissão de leitura)
     public String find(String caminho, String nome) {
         try {
             NoSistema inicio = resolverCaminho(caminho);
 
             if (!inicio.isDiretorio()) {
-                return "find: '" + caminho + "': Não é um diretório\n";
+                return falha("find: '" + caminho + "': Não é um diretório\n");
+            }
+
+            // Depois de um load o índice é remontado na primeira busca
+            if (comum.indiceNomes.isDesatualizado()) comum.indiceNomes.reconstruir(comum.raiz);
+
+            List<String> encontrados = new ArrayList<>();
+            TreeSet<String> negados = new TreeSet<>();
+
+            for (NoSistema candidato : comum.indiceNomes.buscar(nome)) {
+                // Nó que saiu da árvore numa corrida com outra thread (ex: criado dentro de um diretório sendo removido)
+                if (!estaNaArvore(candidato)) {
+                    comum.indiceNomes.remover(candidato);
+                    continue;
+                }
+
+                // Sobe do candidato até o início da busca, guardando o diretório ilegível mais alto do caminho
+                boolean dentroDoInicio = candidato == inicio;
+                NoSistema bloqueio = null;
+                Diretorio atual = candidato.getPai();
+                while (!dentroDoInicio && atual != null) {
+                    if (!verificarPermissao(atual, 'r')) bloqueio = atual;
+                    if (atual == inicio) dentroDoInicio = true;
+                    atual = atual.getPai();
+                }
+                if (!dentroDoInicio) continue;
+
+                if (bloqueio == null) {
+                    encontrados.add(montarCaminho(candidato));
+                } else {
+                    // Mesma mensagem da varredura: o find não consegue descer no diretório sem leitura
+                    negados.add(montarCaminho(bloqueio));
+                }
             }
 
+            Collections.sort(encontrados);
             StringBuilder resultado = new StringBuilder();
-            buscarRecursivo(inicio, nome, resultado);
+            for (String encontrado : encontrados) {
+                resultado.append(encontrado).append("\n");
+            }
+            for (String negado : negados) {
+                resultado.append("find: '").append(negado).append("': Permissão negada\n");
+            }
             return resultado.toString();
 
         } catch (Exception e) {
-            return "find: caminho inválido\n";
+            return falha("find: caminho inválido\n");
         }
     }
 
-    // FIND - Metodo auxiliar
-    private void buscarRecursivo(NoSistema no, String nomeBuscado, StringBuilder resultado) {
-        boolean dono = souDono(no);
-        boolean podeLer = temPermissao(no, 'r', dono);
-
-        if (no.getNome().equals(nomeBuscado)) {
-            resultado.append(montarCaminho(no)).append("\n");
-        }
+    // FIND por varredura completa da subárvore (implementação original, mantida para comparação no benchmark)
+    public String findPorVarredura(String caminho, String nome) {
+        try {
+            NoSistema inicio = resolverCaminho(caminho);
 
-        if (no.isDiretorio()) {
-            if (podeLer) {
-                Diretorio dir = (Diretorio) no;
-                for (NoSistema filho : dir.getFilhos().values()) {
-                    buscarRecursivo(filho, nomeBuscado, resultado);
-                }
-            } else {
-                resultado.append("find: '")
-                        .append(montarCaminho(no))
-                        .append("': Permissão negada\n");
+            if (!inicio.isDiretorio()) {
+                return falha("find: '" + caminho + "': Não é um diretório\n");
             }
+
+            return buscarPorVarredura(inicio, nome).toString();
+
+        } catch (Exception e) {
+            return falha("find: caminho inválido\n");
         }
     }
 
+    // FIND - Metodo auxiliar: percorre a subárvore comparando nomes
+    private MotorPercurso.Saida buscarPorVarredura(NoSistema inicio, String nomeBuscado) {
+        return comum.motorPercurso.percorrer(inicio, null, new MotorPercurso.Visitante<Void, MotorPercurso.Saida>() {
+            @Override
+            public Collection<NoSistema> filhos(Diretorio dir, Void contexto) {
+                if (!verificarPermissao(dir, 'r')) return Collections.emptyList();
+                return dir.getFilhosOrdenados(true);
+            }
+
+            @Override
+            public Void contextoFilho(NoSistema filho, int indice, int total, Void contextoPai) {
+                return null;
+            }
+
+            @Override
+            public MotorPercurso.Saida visitarArquivo(Arquivo arquivo, Void contexto) {
+                if (!arquivo.getNome().equals(nomeBuscado)) return null;
+                return MotorPercurso.Saida.de(montarCaminho(arquivo) + "\n");
+            }
+
+            @Override
+            public MotorPercurso.Saida visitarDiretorio(Diretorio dir, Void contexto, List<MotorPercurso.Saida> filhos) {
+                StringBuilder antes = new StringBuilder();
+                if (dir.getNome().equals(nomeBuscado)) {
+                    antes.append(montarCaminho(dir)).append("\n");
+                }
+                if (!verificarPermissao(dir, 'r')) {
+                    antes.append("find: '").append(montarCaminho(dir)).append("': Permissão negada\n");
+                }
+                return MotorPercurso.Saida.de(antes.toString(), filhos, "");
+            }
+        });
+    }
+
     // Metodo auxiliar: monta caminho do nó até o topo
     private String montarCaminho(NoSistema no) {
         if (no == null || no.getPai() == null) return "/";
 
-        String pai = montarCaminho(no.getPai());
-        return (pai.equals("/") ? "" : pai) + "/" + no.getNome();
+        // Junta os nomes subindo pelos pais (sem recursão e sem concatenar strings a cada nível)
+        List<String> partes = new ArrayList<>();
+        for (NoSistema atual = no; atual.getPai() != null; atual = atual.getPai()) {
+            partes.add(atual.getNome());
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = partes.size() - 1; i >= 0; i--) {
+            sb.append("/").append(partes.get(i));
+        }
+        return sb.toString();
     }
 
-    // GREP
+    // GREP (Um termo em um arquivo; atalho para o grep completo abaixo)
     public String grep(String termo, String caminho) {
+        StringBuilder sb = new StringBuilder();
+        grep(termo, List.of(caminho), OpcoesGrep.PADRAO, sb::append);
+        return sb.toString();
+    }
+
+    // GREP -R (Busca o termo em todos os arquivos de uma subárvore)
+    public String grepRecursivo(String termo, String caminho) {
+        StringBuilder sb = new StringBuilder();
+        grep(termo, List.of(caminho), new OpcoesGrep(false, false, false, false, true), sb::append);
+        return sb.toString();
+    }
+
+    // Um alvo do grep já resolvido: o arquivo e o nome exibido, ou a mensagem de erro daquele alvo
+    private record AlvoGrep(Arquivo arquivo, String nomeExibicao, String erro) {}
+
+    // Saída de um arquivo processado numa thread do motor
+    private record ResultadoGrep(String texto, boolean falhou) {}
+
+    // GREP completo: vários alvos (com globs * e ?), -E, -c, -l, -n e -r
+    // A saída é entregue ao consumidor assim que cada arquivo termina, sempre na ordem dos alvos
+    public void grep(String termo, List<String> caminhos, OpcoesGrep opcoes, Consumer<String> saida) {
+        // Expressão compilada uma vez e compartilhada entre os arquivos (Pattern é thread-safe)
+        Pattern padrao = null;
+        if (opcoes.regex()) {
+            try {
+                padrao = Pattern.compile(termo);
+            } catch (PatternSyntaxException e) {
+                saida.accept(falha("grep: expressão regular inválida: " + e.getDescription() + "\n"));
+                return;
+            }
+        }
+
+        // Com o índice de conteúdo ligado, arquivos fora dos candidatos nem são lidos
+        Set<Arquivo> candidatos = (comum.indiceConteudo == null || padrao != null) ? null : comum.indiceConteudo.candidatos(termo);
+
+        List<AlvoGrep> alvos = resolverAlvosGrep(caminhos, opcoes.recursivo(), candidatos);
+        boolean prefixar = opcoes.recursivo() || alvos.size() > 1;
+        Pattern padraoFinal = padrao;
+
+        // Um arquivo só (ou sem paralelismo): as linhas vão direto para a saída, conforme são encontradas
+        if (alvos.size() == 1 || comum.motorPercurso.getParalelismo() == 1) {
+            for (AlvoGrep alvo : alvos) {
+                if (!processarAlvoGrep(alvo, termo, padraoFinal, opcoes, prefixar, candidatos, saida)) falhou = true;
+            }
+            return;
+        }
+
+        // Vários arquivos em paralelo, com uma janela limitada de tarefas em andamento
+        // Cada arquivo é entregue inteiro, na ordem dos alvos, assim que ele e os anteriores terminam
+        // A falha de um arquivo é marcada aqui, na thread da sessão (as tarefas só devolvem o resultado)
+        JanelaOrdenada<AlvoGrep, ResultadoGrep> janela = new JanelaOrdenada<>(2 * comum.motorPercurso.getParalelismo(),
+                comum.motorPercurso::submeter, (alvo, resultado) -> {
+                    saida.accept(resultado.texto());
+                    if (resultado.falhou()) falhou = true;
+                });
         try {
-            Arquivo arq = obterArquivoTexto(caminho);
-            String conteudo = arq.getConteudo();
+            for (AlvoGrep alvo : alvos) {
+                janela.enviar(alvo, () -> {
+                    StringBuilder sb = new StringBuilder();
+                    try {
+                        boolean lido = processarAlvoGrep(alvo, termo, padraoFinal, opcoes, prefixar, candidatos, sb::append);
+                        return new ResultadoGrep(sb.toString(), !lido);
+                    } catch (RuntimeException e) {
+                        return new ResultadoGrep("grep: " + e.getMessage() + "\n", true); // Só este arquivo falha
+                    }
+                });
+            }
+            janela.concluir();
+        } catch (IOException e) {
+            saida.accept(falha("grep: " + e.getMessage() + "\n"));
+        }
+    }
 
-            StringBuilder sb = new StringBuilder();
-            String[] linhas = conteudo.split("\n");
+    // Transforma os caminhos digitados na lista final de arquivos, na ordem em que serão exibidos
+    private List<AlvoGrep> resolverAlvosGrep(List<String> caminhos, boolean recursivo, Set<Arquivo> candidatos) {
+        List<AlvoGrep> alvos = new ArrayList<>();
+        for (String caminho : caminhos) {
+            List<NoSistema> nos;
+            try {
+                nos = expandirGlob(caminho);
+            } catch (Exception e) {
+                alvos.add(new AlvoGrep(null, caminho, "grep: " + e.getMessage() + "\n"));
+                continue;
+            }
+            if (nos.isEmpty()) {
+                alvos.add(new AlvoGrep(null, caminho, "grep: " + caminho + ": Nenhum arquivo corresponde ao padrão\n"));
+                continue;
+            }
 
-            for (String linha : linhas) {
-                if (linha.contains(termo)) {
-                    sb.append(linha).append("\n");
+            boolean expandido = temCuringa(caminho);
+            for (NoSistema no : nos) {
+                String nomeExibicao = expandido ? montarCaminho(no) : caminho;
+                if (no.isArquivo()) {
+                    alvos.add(new AlvoGrep((Arquivo) no, nomeExibicao, null));
+                } else if (!recursivo) {
+                    alvos.add(new AlvoGrep(null, nomeExibicao, "grep: Erro: '" + nomeExibicao + "' é um diretório.\n"));
+                } else {
+                    for (Arquivo arq : arquivosParaGrepRecursivo((Diretorio) no, candidatos)) {
+                        alvos.add(new AlvoGrep(arq, montarCaminho(arq), null));
+                    }
                 }
             }
+        }
+        return alvos;
+    }
 
-            return sb.toString();
+    // Arquivos legíveis de uma subárvore, em ordem de caminho
+    // Com o índice ligado, só os candidatos (que têm todos os trigramas do termo) entram
+    private List<Arquivo> arquivosParaGrepRecursivo(Diretorio inicio, Set<Arquivo> candidatos) {
+        List<Arquivo> arquivos = new ArrayList<>();
+        if (candidatos != null) {
+            for (Arquivo candidato : candidatos) {
+                if (estaNaArvore(candidato) && podeLerAPartirDe(inicio, candidato)) arquivos.add(candidato);
+            }
+        } else {
+            coletarArquivosLegiveis(inicio, arquivos);
+        }
+
+        Map<Arquivo, String> caminhos = new HashMap<>();
+        for (Arquivo arq : arquivos) caminhos.put(arq, montarCaminho(arq));
+        arquivos.sort(Comparator.comparing(caminhos::get));
+        return arquivos;
+    }
+
+    // Verifica as linhas de um arquivo e manda cada resultado para o destino
+    // Devolve false se o arquivo não pôde ser lido (não achar nada não é falha)
+    private boolean processarAlvoGrep(AlvoGrep alvo, String termo, Pattern padrao, OpcoesGrep opcoes,
+                                      boolean prefixar, Set<Arquivo> candidatos, Consumer<String> destino) {
+        if (alvo.erro() != null) {
+            destino.accept(alvo.erro());
+            return false;
+        }
+        Arquivo arq = alvo.arquivo();
+        if (!verificarPermissao(arq, 'r')) {
+            destino.accept("grep: " + alvo.nomeExibicao() + ": Permissão negada\n");
+            return false;
+        }
+
+        // As linhas são lidas com o diretório do arquivo travado para leitura (nenhuma escrita no meio)
+        comDiretorioTravado(arq, false, () -> {
+            int contagem = 0;
+            boolean podeTerResultado = candidatos == null || candidatos.contains(arq);
+            int totalLinhas = podeTerResultado ? arq.getNumeroLinhas() : 0;
+            Matcher matcher = padrao == null ? null : padrao.matcher("");
+
+            for (int i = 0; i < totalLinhas; i++) {
+                String linha = arq.getLinha(i);
+                boolean encontrou = matcher == null ? linha.contains(termo) : matcher.reset(linha).find();
+                if (!encontrou) continue;
+
+                contagem++;
+                if (opcoes.soNomes()) {
+                    destino.accept(alvo.nomeExibicao() + "\n");
+                    return null;
+                }
+                if (opcoes.contar()) continue;
+
+                StringBuilder resultado = new StringBuilder();
+                if (prefixar) resultado.append(alvo.nomeExibicao()).append(":");
+                if (opcoes.numerarLinhas()) resultado.append(i + 1).append(":");
+                destino.accept(resultado.append(linha).append("\n").toString());
+            }
+
+            if (opcoes.contar()) {
+                destino.accept((prefixar ? alvo.nomeExibicao() + ":" : "") + contagem + "\n");
+            }
+            return null;
+        });
+        return true;
+    }
+
+    private boolean temCuringa(String caminho) {
+        return caminho.indexOf('*') >= 0 || caminho.indexOf('?') >= 0;
+    }
+
+    // Expande curingas (* e ?) em qualquer parte do caminho, em ordem de caminho
+    // Sem curinga, apenas resolve o caminho normalmente
+    private List<NoSistema> expandirGlob(String padrao) throws Exception {
+        if (!temCuringa(padrao)) return List.of(resolverCaminho(padrao));
+
+        List<NoSistema> atuais = List.of(padrao.startsWith("/") ? comum.raiz : diretorioAtual);
+        for (String parte : padrao.split("/")) {
+            if (parte.isEmpty() || parte.equals(".")) continue;
+
+            List<NoSistema> proximos = new ArrayList<>();
+            for (NoSistema no : atuais) {
+                if (!no.isDiretorio()) continue;
+                Diretorio dir = (Diretorio) no;
+
+                if (parte.equals("..")) {
+                    proximos.add(dir.getPai() != null ? dir.getPai() : dir);
+                } else if (temCuringa(parte)) {
+                    if (!verificarPermissao(dir, 'r')) continue;
+                    Pattern regex = Pattern.compile(globParaRegex(parte));
+                    // Só o intervalo de nomes com o prefixo literal do padrão é testado (ex: "log_*" -> ["log_", "log`"))
+                    // Como no shell, '*' não pega nomes ocultos (a não ser que o padrão comece com '.')
+                    String prefixo = parte.substring(0, primeiroCuringa(parte));
+                    Collection<NoSistema> faixa = prefixo.isEmpty() ? dir.getFilhosOrdenados(false) : dir.getFilhosComPrefixo(prefixo);
+                    for (NoSistema filho : faixa) {
+                        if (regex.matcher(filho.getNome()).matches()) proximos.add(filho);
+                    }
+                } else {
+                    NoSistema filho = dir.getFilho(parte);
+                    if (filho != null) proximos.add(filho);
+                }
+            }
+            atuais = proximos;
+        }
+
+        List<NoSistema> resultado = new ArrayList<>(atuais);
+        resultado.sort(Comparator.comparing(this::montarCaminho));
+        return resultado;
+    }
 
+    private int primeiroCuringa(String parte) {
+        int estrela = parte.indexOf('*');
+        int interrogacao = parte.indexOf('?');
+        if (estrela < 0) return interrogacao;
+        if (interrogacao < 0) return estrela;
+        return Math.min(estrela, interrogacao);
+    }
+
+    private String globParaRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') regex.append(".*");
+            else if (c == '?') regex.append('.');
+            else regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return regex.toString();
+    }
+
+    // Verdadeiro se o arquivo está abaixo de 'inicio' e o usuário pode ler o arquivo e todos os diretórios até ele
+    private boolean podeLerAPartirDe(Diretorio inicio, Arquivo arquivo) {
+        if (!verificarPermissao(arquivo, 'r')) return false;
+        for (Diretorio atual = arquivo.getPai(); atual != null; atual = atual.getPai()) {
+            if (!verificarPermissao(atual, 'r')) return false;
+            if (atual == inicio) return true;
+        }
+        return false;
+    }
+
+    // Sem índice: varre a subárvore juntando os arquivos que podem ser lidos
+    private void coletarArquivosLegiveis(Diretorio inicio, List<Arquivo> arquivos) {
+        Deque<Diretorio> pilha = new ArrayDeque<>();
+        if (verificarPermissao(inicio, 'r')) pilha.push(inicio);
+        while (!pilha.isEmpty()) {
+            Diretorio dir = pilha.pop();
+            for (NoSistema filho : dir.getFilhosOrdenados(true)) {
+                if (!verificarPermissao(filho, 'r')) continue;
+                if (filho.isArquivo()) arquivos.add((Arquivo) filho);
+                else pilha.push((Diretorio) filho);
+            }
+        }
+    }
+
+    // IMPORT (Copia uma árvore real do host para dentro de um diretório do simulador)
+    public String importar(String caminhoHost, String caminhoSim) {
+        // Não passa pelo journal, então pega a trava compartilhada da árvore por conta própria
+        String resultado;
+        Lock compartilhada = comum.travaArvore.readLock();
+        compartilhada.lock();
+        try {
+            resultado = importarInterno(caminhoHost, caminhoSim);
+        } finally {
+            compartilhada.unlock();
+        }
+        // O conteúdo veio de fora do simulador e não é reproduzível pelo journal: vira um checkpoint
+        // (depois de soltar a trava compartilhada, porque o checkpoint pega a exclusiva)
+        if (comum.journal != null && resultado.startsWith("Importados")) resultado += "\n" + checkpoint();
+        return resultado;
+    }
+
+    private String importarInterno(String caminhoHost, String caminhoSim) {
+        try {
+            Path origem = Path.of(caminhoHost);
+            if (!Files.exists(origem, LinkOption.NOFOLLOW_LINKS)) return falha("Erro: '" + caminhoHost + "' não existe no host.");
+
+            NoSistema noDestino = resolverCaminho(caminhoSim);
+            if (!noDestino.isDiretorio()) return falha("Erro: O destino '" + caminhoSim + "' não é um diretório.");
+            Diretorio dirDestino = (Diretorio) noDestino;
+            if (!verificarPermissao(dirDestino, 'w')) return falha("Permissão negada: Escrever no destino.");
+
+            Path nomeHost = origem.toAbsolutePath().normalize().getFileName();
+            if (nomeHost == null) return falha("Erro: Não é possível importar a raiz do host.");
+            if (dirDestino.getFilho(nomeHost.toString()) != null) {
+                return falha("Erro: Já existe um arquivo/diretório chamado '" + nomeHost + "' no destino.");
+            }
+
+            // Monta tudo fora da árvore e liga de uma vez (como no cp)
+            TransferenciaHost.Importacao importacao = new TransferenciaHost(comum.motorPercurso.getParalelismo())
+                    .importar(origem.toAbsolutePath().normalize(), dirDestino, this::nomeAceito);
+            Lock escrita = dirDestino.travaEscrita();
+            escrita.lock();
+            aoTravarEscrita();
+            try {
+                // O destino pode ter mudado durante a leitura do host
+                if (!estaNaArvore(dirDestino)) return falha("Erro: O destino '" + caminhoSim + "' não existe mais.");
+                if (dirDestino.getFilho(nomeHost.toString()) != null) {
+                    return falha("Erro: Já existe um arquivo/diretório chamado '" + nomeHost + "' no destino.");
+                }
+                dirDestino.adicionarFilho(importacao.raiz());
+                indexarSubarvore(importacao.raiz());
+            } finally {
+                escrita.unlock();
+            }
+            return importacao.relatorio().formatar("Importados");
+
+        } catch (IOException | UncheckedIOException e) {
+            return falha("Erro ao importar: " + e.getMessage());
         } catch (Exception e) {
-            return "grep: " + e.getMessage() + "\n";
+            return falha("Erro: " + e.getMessage());
+        }
+    }
+
+    // EXPORT (Grava um arquivo ou diretório do simulador no disco do host)
+    public String exportar(String caminhoSim, String caminhoHost) {
+        try {
+            NoSistema origem = resolverCaminho(caminhoSim);
+            if (!verificarPermissao(origem, 'r')) return falha("Permissão negada: Ler origem.");
+
+            // Como no cp: se o destino já é um diretório no host, o item vai para dentro dele
+            Path destino = Path.of(caminhoHost);
+            if (Files.isDirectory(destino) && origem != comum.raiz) destino = destino.resolve(origem.getNome());
+
+            // Diretórios sem leitura (ou sem execução) e arquivos sem leitura ficam de fora
+            TransferenciaHost.Relatorio relatorio = new TransferenciaHost(comum.motorPercurso.getParalelismo()).exportar(origem, destino,
+                    no -> verificarPermissao(no, 'r') && (no.isArquivo() || verificarPermissao(no, 'x')));
+            return relatorio.formatar("Exportados para '" + destino + "'");
+
+        } catch (IOException | UncheckedIOException e) {
+            return falha("Erro ao exportar: " + e.getMessage());
+        } catch (Exception e) {
+            return falha("Erro: " + e.getMessage());
+        }
+    }
+
+    private boolean nomeAceito(String nome) {
+        try {
+            validarNome(nome);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Um snapshot: a raiz da árvore e a época encerrada por ele (cada nó guarda o próprio estado daquela época,
+    // ver NoSistema.preservarCaminho). A raiz só é outra se um load trocou a árvore depois do snapshot
+    // Os totais são guardados na criação: listar não percorre as cópias congeladas, que mudam junto com as alterações
+    private record Versao(Diretorio raiz, int epoca, long criadaEm, String usuario, int totalNos, int tamanho) {}
+
+    // SNAPSHOT (Congela a árvore atual com um nome, em O(1))
+    public String criarVersao(String nome) {
+        try {
+            validarNome(nome);
+        } catch (IllegalArgumentException e) {
+            return falha("Nome inválido: " + e.getMessage());
+        }
+        // Exclusiva: nenhuma alteração pode estar no meio quando a época muda
+        return exclusivo(() -> criarVersaoInterno(nome));
+    }
+
+    private String criarVersaoInterno(String nome) {
+        if (comum.versoes.containsKey(nome)) return falha("Erro: Já existe um snapshot chamado '" + nome + "'.");
+
+        long inicio = System.nanoTime();
+        // Só encerra a época: a árvore em uso continua a mesma (nós, índices, cache e diretórios atuais das sessões)
+        // e a primeira alteração de cada nó daqui em diante guarda o estado de agora
+        int epoca = comum.raiz.getControleVersoes().criarVersao();
+        comum.versoes.put(nome, new Versao(comum.raiz, epoca, System.currentTimeMillis(), usuarioLogado,
+                comum.raiz.getTotalNos(), comum.raiz.getTamanho()));
+        return String.format("Snapshot '%s' criado (%d nós) em %.3f ms.",
+                nome, comum.raiz.getTotalNos(), (System.nanoTime() - inicio) / 1_000_000.0);
+    }
+
+    // SNAPSHOTS (Lista os snapshots)
+    public String listarVersoes() {
+        // As versões só mudam com a trava exclusiva
+        Lock compartilhada = comum.travaArvore.readLock();
+        compartilhada.lock();
+        try {
+            return listarVersoesInterno();
+        } finally {
+            compartilhada.unlock();
+        }
+    }
+
+    private String listarVersoesInterno() {
+        if (comum.versoes.isEmpty()) return "Nenhum snapshot criado.";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Versao> entrada : comum.versoes.entrySet()) {
+            Versao versao = entrada.getValue();
+            sb.append(String.format("%-20s %s  %-8s %8d nós %10d bytes%n", entrada.getKey(),
+                    NoSistema.formatarData(versao.criadaEm()),
+                    versao.usuario(), versao.totalNos(), versao.tamanho()));
+        }
+        return sb.toString().stripTrailing();
+    }
+
+    // ROLLBACK (Volta a árvore para um snapshot, restaurando só o que mudou desde ele; o snapshot continua disponível)
+    public String rollback(String nome) {
+        return exclusivo(() -> rollbackInterno(nome));
+    }
+
+    private String rollbackInterno(String nome) {
+        Versao versao = comum.versoes.get(nome);
+        if (versao == null) return falha("Erro: Snapshot '" + nome + "' não encontrado.");
+
+        long inicio = System.nanoTime();
+        // Snapshot de antes de um load: volta para a árvore dele (os índices são refeitos, como no load)
+        String aviso = versao.raiz() != comum.raiz ? trocarRaiz(versao.raiz()) : "";
+        int restaurados = restaurarVersao(versao.raiz(), versao.epoca());
+        comum.cacheCaminhos.limpar();
+        sincronizarSessao(); // O diretório atual pode ter saído da árvore (as outras sessões acertam o seu no próximo comando)
+
+        // Com persistência ligada, o estado restaurado vira o novo ponto de partida da recuperação
+        if (comum.journal != null) aviso += " " + checkpoint();
+
+        return String.format("Rollback para '%s' em %.3f ms (%d nós restaurados).%s",
+                nome, (System.nanoTime() - inicio) / 1_000_000.0, restaurados, aviso);
+    }
+
+    // Nó que o rollback pendura de volta num diretório, com o nome que tinha no snapshot
+    private record Religacao(NoSistema no, Diretorio pai, String nome) {}
+
+    // Volta cada nó alterado depois do snapshot para o estado congelado, de cima para baixo
+    // Um nó com época até a do snapshot não mudou desde então, nem nada abaixo dele: a subárvore inteira é pulada
+    // Os nós continuam os mesmos objetos, então os índices só são acertados para os que saíram, entraram ou mudaram
+    // Devolve quantos nós foram restaurados
+    private int restaurarVersao(Diretorio raiz, int versao) {
+        Set<NoSistema> saidas = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<NoSistema, Religacao> religacoes = new IdentityHashMap<>();
+        List<NoSistema> restaurados = new ArrayList<>();
+
+        Deque<Diretorio> pendentes = new ArrayDeque<>();
+        if (raiz.getEpoca() > versao) pendentes.push(raiz);
+        while (!pendentes.isEmpty()) {
+            Diretorio dir = pendentes.pop();
+            NavigableMap<String, NoSistema> anteriores = dir.restaurar((Diretorio) dir.estadoNaVersao(versao));
+            NavigableMap<String, NoSistema> atuais = dir.getFilhos();
+            restaurados.add(dir);
+
+            for (Map.Entry<String, NoSistema> filho : anteriores.entrySet()) {
+                if (atuais.get(filho.getKey()) != filho.getValue()) saidas.add(filho.getValue());
+            }
+            for (Map.Entry<String, NoSistema> filho : atuais.entrySet()) {
+                NoSistema no = filho.getValue();
+                // Pelo próprio nó, e não pelo mapa de antes: um rollback anterior pode tê-lo tirado deste diretório
+                // sem mexer no mapa (ex: o diretório já estava fora da árvore)
+                if (no.getPai() != dir || !no.estaLigado() || !no.getNome().equals(filho.getKey())) {
+                    religacoes.put(no, new Religacao(no, dir, filho.getKey()));
+                }
+                if (no.getEpoca() <= versao) continue;
+                if (no.isDiretorio()) {
+                    pendentes.push((Diretorio) no);
+                } else {
+                    Arquivo arq = (Arquivo) no;
+                    Arquivo estado = (Arquivo) arq.estadoNaVersao(versao);
+                    comDiretorioTravado(arq, true, () -> {
+                        arq.restaurar(estado);
+                        return null;
+                    });
+                    restaurados.add(arq);
+                }
+            }
+        }
+
+        // Índices: primeiro tudo o que sai (com os nomes de antes), depois tudo o que entra
+        // Um nó que só mudou de lugar ou de nome continua com a sua subárvore: só ele é reindexado pelo nome
+        for (NoSistema no : saidas) {
+            if (religacoes.containsKey(no)) comum.indiceNomes.remover(no);
+            else desindexarSubarvore(no);
+        }
+
+        // Mudar um nó de lugar também é alteração: o caminho antigo (que algum snapshot ainda pode enxergar) e o novo
+        // passam para a época atual, como num mv, para que os próximos rollbacks não pulem esses diretórios
+        for (NoSistema no : saidas) no.preservarCaminho();
+        for (NoSistema no : religacoes.keySet()) no.preservarCaminho();
+        for (NoSistema no : saidas) {
+            if (!religacoes.containsKey(no)) no.desligar();
+        }
+        for (Religacao religacao : religacoes.values()) {
+            religacao.no().religar(religacao.pai(), religacao.nome());
+        }
+        for (NoSistema no : religacoes.keySet()) no.preservarCaminho();
+        for (NoSistema no : restaurados) no.preservarCaminho();
+
+        for (NoSistema no : religacoes.keySet()) {
+            if (saidas.contains(no)) comum.indiceNomes.adicionar(no);
+            else indexarSubarvore(no);
+        }
+        IndiceTrigramas indice = comum.indiceConteudo;
+        if (indice != null) {
+            for (NoSistema no : restaurados) {
+                if (no instanceof Arquivo arq && estaNaArvore(arq)) indice.indexar(arq);
+            }
+        }
+        return restaurados.size();
+    }
+
+    // SNAPSHOT -D (Descarta um snapshot)
+    public String removerVersao(String nome) {
+        return exclusivo(() -> {
+            Versao versao = comum.versoes.remove(nome);
+            if (versao == null) return falha("Erro: Snapshot '" + nome + "' não encontrado.");
+            // As cópias congeladas que só ele usava são soltas na próxima alteração de cada nó
+            versao.raiz().getControleVersoes().descartarVersao(versao.epoca());
+            return "Snapshot '" + nome + "' removido.";
+        });
+    }
+
+    // Passa a usar 'novaRaiz' e refaz o que guardava nós da árvore anterior (cache, índices, diretório atual)
+    private String trocarRaiz(Diretorio novaRaiz) {
+        String caminhoAnterior = caminhoAtual(comum.cacheCaminhos.getGeracao());
+        if (caminhoAnterior == null) caminhoAnterior = "/";
+        comum.raiz = novaRaiz;
+        definirDiretorioAtual(novaRaiz);
+        comum.cacheCaminhos.limpar();
+        comum.indiceNomes.marcarDesatualizado();
+        // Remontar o índice de conteúdo leria todos os arquivos, então ele é desligado
+        String aviso = "";
+        if (comum.indiceConteudo != null) {
+            comum.indiceConteudo = null;
+            aviso = " Índice de conteúdo desativado (use grep-index on).";
+        }
+        cd(caminhoAnterior); // Volta para o mesmo caminho, se ele existir na nova árvore
+        return aviso;
+    }
+
+    // SAVE (Grava a árvore inteira num snapshot binário no disco do host)
+    public String salvarSnapshot(String caminhoHost) {
+        // Exclusiva: o arquivo tem que ser uma fotografia de um único instante da árvore
+        return exclusivo(() -> salvarSnapshotInterno(caminhoHost));
+    }
+
+    private String salvarSnapshotInterno(String caminhoHost) {
+        try {
+            long inicio = System.nanoTime();
+            Path destino = Path.of(caminhoHost);
+            long totalNos = Snapshot.salvar(comum.raiz, destino);
+            return String.format("Snapshot salvo em '%s' (%d nós, %d bytes) em %.1f ms.",
+                    caminhoHost, totalNos, Files.size(destino), (System.nanoTime() - inicio) / 1_000_000.0);
+        } catch (IOException | UncheckedIOException e) {
+            return falha("Erro ao salvar snapshot: " + e.getMessage());
+        }
+    }
+
+    // LOAD (Troca a árvore atual pela do snapshot; os nós só são lidos do arquivo quando acessados)
+    public String carregarSnapshot(String caminhoHost) {
+        return exclusivo(() -> carregarSnapshotInterno(caminhoHost));
+    }
+
+    private String carregarSnapshotInterno(String caminhoHost) {
+        try {
+            long inicio = System.nanoTime();
+            Snapshot snapshot = Snapshot.abrir(Path.of(caminhoHost));
+            Diretorio novaRaiz = criarRaiz();
+            snapshot.carregarRaiz(novaRaiz);
+            String avisoIndice = trocarRaiz(novaRaiz);
+
+            // Com persistência ligada, o estado carregado vira o novo ponto de partida da recuperação
+            if (comum.journal != null) avisoIndice += " " + checkpoint();
+
+            return String.format("Snapshot carregado de '%s' (%d nós) em %.1f ms.%s",
+                    caminhoHost, snapshot.getTotalNos(), (System.nanoTime() - inicio) / 1_000_000.0, avisoIndice);
+        } catch (IOException e) {
+            return falha("Erro ao carregar snapshot: " + e.getMessage());
+        }
+    }
+
+    // GREP-INDEX (Liga, desliga ou mostra estatísticas do índice de trigramas)
+    public String indiceConteudo(String opcao) {
+        switch (opcao) {
+            case "on":
+                // Construído com as alterações bloqueadas: nenhuma escrita escapa do índice novo
+                return exclusivo(() -> {
+                    IndiceTrigramas novo = new IndiceTrigramas();
+                    novo.construir(comum.raiz);
+                    comum.indiceConteudo = novo;
+                    return String.format("Índice de conteúdo construído em %.1f ms.", novo.getTempoConstrucaoNs() / 1_000_000.0);
+                });
+            case "off":
+                return exclusivo(() -> {
+                    comum.indiceConteudo = null;
+                    return "Índice de conteúdo desativado.";
+                });
+            case "stats":
+                IndiceTrigramas indice = comum.indiceConteudo;
+                if (indice == null) return "Índice de conteúdo desativado. (Use grep-index on)";
+                return String.format("Arquivos: %d | trigramas: %d | postagens: %d | memória estimada: %.1f KB | construção: %.1f ms",
+                        indice.getTotalArquivos(),
+                        indice.getTotalTrigramas(),
+                        indice.getTotalPostagens(),
+                        indice.getMemoriaEstimadaBytes() / 1024.0,
+                        indice.getTempoConstrucaoNs() / 1_000_000.0);
+            default:
+                return falha("Uso: grep-index <on|off|stats>");
         }
     }
 
@@ -860,7 +2160,7 @@ public class SistemaArquivos {
             return sb.toString();
 
         } catch (Exception e) {
-            return "stat: " + e.getMessage() + "\n";
+            return falha("stat: " + e.getMessage() + "\n");
         }
     }
 
@@ -871,42 +2171,60 @@ public class SistemaArquivos {
             NoSistema no = resolverCaminho(alvo);
 
             if (!verificarPermissao(no, 'r')) {
-                return "du: permissão negada para '" + alvo + "'\n";
+                return falha("du: permissão negada para '" + alvo + "'\n");
             }
 
-            StringBuilder sb = new StringBuilder();
-            gerarSaidaDuRecursivo(no, sb, alvo);
-            return sb.toString();
+            return gerarSaidaDu(no, alvo).toString();
         } catch (Exception e) {
-            return "du: " + e.getMessage() + "\n";
+            return falha("du: " + e.getMessage() + "\n");
         }
     }
 
-    // DU: Metodo auxiliar para imprimir diretorios recursivamente
-    private void gerarSaidaDuRecursivo(NoSistema no, StringBuilder sb, String caminhoExibicao) {
-        if (no instanceof Diretorio) {
-            if (verificarPermissao(no, 'r') && verificarPermissao(no, 'x')) {
-                Diretorio dir = (Diretorio) no;
+    // DU: Metodo auxiliar que lista os diretórios em pós-ordem (filhos antes do pai)
+    // Cada diretório já guarda o tamanho agregado da subárvore, então é uma única passada linear
+    private MotorPercurso.Saida gerarSaidaDu(NoSistema inicio, String caminhoExibicao) {
+        return comum.motorPercurso.percorrer(inicio, caminhoExibicao, new MotorPercurso.Visitante<String, MotorPercurso.Saida>() {
+            @Override
+            public Collection<NoSistema> filhos(Diretorio dir, String caminho) {
+                if (!verificarPermissao(dir, 'r') || !verificarPermissao(dir, 'x')) return Collections.emptyList();
 
-                for (NoSistema filho : dir.getFilhos().values()) {
-                    if (filho.isDiretorio()) {
-                        String separador = caminhoExibicao.endsWith("/") ? "" : "/";
-                        String caminhoFilho = caminhoExibicao + separador + filho.getNome();
-                        gerarSaidaDuRecursivo(filho, sb, caminhoFilho);
-                    }
+                // Só subdiretórios aparecem no du
+                List<NoSistema> subDiretorios = new ArrayList<>();
+                for (NoSistema filho : dir.getFilhosOrdenados(true)) {
+                    if (filho.isDiretorio()) subDiretorios.add(filho);
                 }
-            } else {
-                sb.append("du: não foi possível ler diretório '").append(caminhoExibicao).append("': Permissão negada\n");
+                return subDiretorios;
             }
 
-            sb.append(no.getTamanho()).append("\t").append(caminhoExibicao).append("\n");
-        } else if (no.isArquivo()) {
-            sb.append(no.getTamanho()).append("\t").append(caminhoExibicao).append("\n");
-        }
+            @Override
+            public String contextoFilho(NoSistema filho, int indice, int total, String caminhoPai) {
+                String separador = caminhoPai.endsWith("/") ? "" : "/";
+                return caminhoPai + separador + filho.getNome();
+            }
+
+            @Override
+            public MotorPercurso.Saida visitarArquivo(Arquivo arquivo, String caminho) {
+                return MotorPercurso.Saida.de(arquivo.getTamanho() + "\t" + caminho + "\n");
+            }
+
+            @Override
+            public MotorPercurso.Saida visitarDiretorio(Diretorio dir, String caminho, List<MotorPercurso.Saida> filhos) {
+                String aviso = "";
+                if (!verificarPermissao(dir, 'r') || !verificarPermissao(dir, 'x')) {
+                    aviso = "du: não foi possível ler diretório '" + caminho + "': Permissão negada\n";
+                }
+                return MotorPercurso.Saida.de(aviso, filhos, dir.getTamanho() + "\t" + caminho + "\n");
+            }
+        });
     }
 
     // cp Copia arquivos ou diretórios de um lugar para outro.
     public String cp(String origem, String destino) {
+        return registrarOperacao(Journal.CP, () -> cpInterno(origem, destino), origem, destino);
+    }
+
+    // cp Copia arquivos ou diretórios de um lugar para outro.
+    private String cpInterno(String origem, String destino) {
         try {
             // Busca a origem
             NoSistema noOrigem = resolverCaminho(origem);
@@ -916,114 +2234,211 @@ public class SistemaArquivos {
 
             if (!noDestino.isDiretorio()) {
                 //Se o destino existe mas é um arquivo não podemos copiar para dentro dele
-                return "Erro: O destino '" + destino + "' não é um diretório.";
+                return falha("Erro: O destino '" + destino + "' não é um diretório.");
             }
 
             Diretorio dirDestino = (Diretorio) noDestino;
 
             // Verifica permissões
-            if (!verificarPermissao(noOrigem, 'r')) return "Permissão negada: Ler origem.";
-            if (!verificarPermissao(dirDestino, 'w')) return "Permissão negada: Escrever no destino.";
+            if (!verificarPermissao(noOrigem, 'r')) return falha("Permissão negada: Ler origem.");
+            if (!verificarPermissao(dirDestino, 'w')) return falha("Permissão negada: Escrever no destino.");
+
+            // Monta a cópia inteira fora da árvore e só depois liga no destino
+            // A origem é lida um diretório por vez (cada um sob a sua trava de leitura); só o destino é travado para escrita,
+            // então o cp nunca segura duas travas e não precisa de ordem entre elas
+            NoSistema copia = copiarSubarvore(noOrigem);
+
+            Lock escrita = dirDestino.travaEscrita();
+            escrita.lock();
+            aoTravarEscrita();
+            try {
+                if (!estaNaArvore(dirDestino)) return falha("Erro ao copiar: Caminho não encontrado: " + destino);
 
-            // Copia
-            copiarRecursivo(noOrigem, dirDestino, noOrigem.getNome());
+                // O adicionarFilho substitui um nó de mesmo nome no destino, então o caminho antigo sai do cache
+                NoSistema substituido = dirDestino.getFilho(copia.getNome());
+                if (substituido != null) {
+                    invalidarCache(substituido);
+                    desindexarSubarvore(substituido);
+                }
 
-            return "Sucesso: Copiado para '" + dirDestino.getNome() + "/" + noOrigem.getNome() + "'";
+                copia.pai = dirDestino;
+                dirDestino.adicionarFilho(copia);
+                if (substituido != null) comum.cacheCaminhos.avancarGeracao();
+                // Ainda com o destino travado: ninguém alcança a cópia antes de ela estar nos índices
+                indexarSubarvore(copia);
+            } finally {
+                escrita.unlock();
+            }
+
+            return "Sucesso: Copiado para '" + dirDestino.getNome() + "/" + copia.getNome() + "'";
 
         } catch (Exception e) {
-            return "Erro ao copiar: " + e.getMessage();
+            return falha("Erro ao copiar: " + e.getMessage());
         }
     }
 
 
     // Realiza a Cópia Profunda
-    private void copiarRecursivo(NoSistema original, Diretorio paiDestino, String novoNome) {
-        if (original.isArquivo()) {
-            Arquivo originalArq = (Arquivo) original; // Cast para acessar métodos de Arquivo
-
-            // Cria um novo objeto na memória
-            Arquivo copia = new Arquivo(novoNome, paiDestino);
-
-            // Copia os dados manuamente
-            copia.setConteudo(originalArq.getConteudo()); // Clona o texto
-            copia.setPermissoes(originalArq.getPermissoes()); // Clona permissões
-            copia.setDono(this.usuarioLogado); // O dono da cópia é quem está copiando (eu), não o dono original
-
-            // Adiciona a cópia na lista de filhos do diretório de destino
-            paiDestino.adicionarFilho(copia);
-
-        } else {
-            // Diretório
-            Diretorio originalDir = (Diretorio) original;
-
-            // Cria a nova pasta no destino
-            Diretorio copiaDir = new Diretorio(novoNome, paiDestino);
+    // Cada diretório é copiado depois dos filhos (pós-ordem) e só então os liga em si mesmo,
+    // assim tarefas paralelas nunca mexem no mesmo diretório e a cópia não enxerga a si própria (ex: cp /a /a/b)
+    private NoSistema copiarSubarvore(NoSistema original) {
+        return comum.motorPercurso.percorrer(original, null, new MotorPercurso.Visitante<Void, NoSistema>() {
+            @Override
+            public Collection<NoSistema> filhos(Diretorio dir, Void contexto) {
+                return dir.getFilhosOrdenados(true);
+            }
 
-            // Copia metadados
-            copiaDir.setPermissoes(originalDir.getPermissoes());
-            copiaDir.setDono(this.usuarioLogado);
+            @Override
+            public Void contextoFilho(NoSistema filho, int indice, int total, Void contextoPai) {
+                return null;
+            }
 
-            // Adiciona a nova pasta no destino
-            paiDestino.adicionarFilho(copiaDir);
+            @Override
+            public NoSistema visitarArquivo(Arquivo originalArq, Void contexto) {
+                // Cria um novo objeto na memória (o pai é definido quando o diretório da cópia for montado)
+                Arquivo copia = new Arquivo(originalArq.getNome(), null);
+
+                // Copia os dados manuamente (o original é lido com o diretório dele travado para leitura)
+                comDiretorioTravado(originalArq, false, () -> {
+                    copia.copiarConteudoDe(originalArq); // Reaproveita os blocos do texto
+                    copia.setModo(originalArq.getModo()); // Clona permissões
+                    return null;
+                });
+                copia.setIdDono(idUsuarioLogado); // O dono da cópia é quem está copiando (eu), não o dono original
+                return copia;
+            }
 
-            // Percorre todos os filhos da pasta original
-            for (NoSistema filho : originalDir.getFilhos().values()) {
-                // Chama para cada filho.
-                copiarRecursivo(filho, copiaDir, filho.getNome());
+            @Override
+            public NoSistema visitarDiretorio(Diretorio originalDir, Void contexto, List<NoSistema> copiasFilhos) {
+                // Cria a nova pasta
+                Diretorio copiaDir = new Diretorio(originalDir.getNome(), null);
+
+                // Copia metadados
+                copiaDir.setModo(originalDir.getModo());
+                copiaDir.setIdDono(idUsuarioLogado);
+
+                // Liga as cópias dos filhos (a pasta ainda está solta, então os totais não sobem além dela)
+                for (NoSistema copiaFilho : copiasFilhos) {
+                    copiaFilho.pai = copiaDir;
+                    copiaDir.adicionarFilho(copiaFilho);
+                }
+                return copiaDir;
             }
-        }
+        });
     }
 
     // MV
     public String mv(String origem, String destino) {
+        return registrarOperacao(Journal.MV, () -> mvInterno(origem, destino), origem, destino);
+    }
+
+    // MV
+    // O único comando que trava dois diretórios: um mv por vez, para que nenhum outro mude quem é ancestral de quem
+    // enquanto as travas são escolhidas (como o rename_mutex do Linux)
+    private String mvInterno(String origem, String destino) {
+        comum.travaMovimentacao.lock();
+        try {
+            return mvTravado(origem, destino);
+        } finally {
+            comum.travaMovimentacao.unlock();
+        }
+    }
+
+    private String mvTravado(String origem, String destino) {
         try {
             // Busca quem vamos mover
             NoSistema noOrigem = resolverCaminho(origem);
 
             // Não podemos mover a raiz do sistema
-            if (noOrigem == raiz) return "Erro: Não é possível mover o diretório raiz.";
+            if (noOrigem == comum.raiz) return falha("Erro: Não é possível mover o diretório raiz.");
 
             // Busca para onde vamos levar
             NoSistema noDestino = resolverCaminho(destino);
 
             if (!noDestino.isDiretorio()) {
-                return "Erro: O destino '" + destino + "' não é um diretório válido.";
+                return falha("Erro: O destino '" + destino + "' não é um diretório válido.");
             }
 
             Diretorio dirDestino = (Diretorio) noDestino;
             Diretorio paiAntigo = noOrigem.getPai();
 
+            // Um diretório não pode ir para dentro de si mesmo (a subárvore ficaria solta, num ciclo)
+            if (isAncestral(noOrigem, dirDestino)) {
+                return falha("Erro: Não é possível mover '" + noOrigem.getNome() + "' para dentro de si mesmo.");
+            }
+
             // Verificações de Permissão
             if (!verificarPermissao(paiAntigo, 'w')) {
-                return "Permissão negada: Não pode remover de '" + paiAntigo.getNome() + "'";
+                return falha("Permissão negada: Não pode remover de '" + paiAntigo.getNome() + "'");
             }
             if (!verificarPermissao(dirDestino, 'w')) {
-                return "Permissão negada: Não pode mover para '" + dirDestino.getNome() + "'";
+                return falha("Permissão negada: Não pode mover para '" + dirDestino.getNome() + "'");
             }
 
-            // Verificação de Colisão
-            if (dirDestino.getFilho(noOrigem.getNome()) != null) {
-                return "Erro: Já existe um arquivo/diretório chamado '" + noOrigem.getNome() + "' no destino.";
-            }
+            List<Lock> travas = travarEmOrdem(paiAntigo, dirDestino);
+            try {
+                // Outra thread pode ter removido a origem ou o destino depois da resolução
+                if (paiAntigo.getFilho(noOrigem.getNome()) != noOrigem || !estaNaArvore(dirDestino)) {
+                    return falha("Erro ao mover: Caminho não encontrado: " + origem);
+                }
 
-            // Remove da lista do pai antigo
-            paiAntigo.removerFilho(noOrigem.getNome());
+                // Verificação de Colisão
+                if (dirDestino.getFilho(noOrigem.getNome()) != null) {
+                    return falha("Erro: Já existe um arquivo/diretório chamado '" + noOrigem.getNome() + "' no destino.");
+                }
 
-            // Atualiza a referência de pai dentro do objeto
-            noOrigem.pai = dirDestino;
+                // O caminho antigo (e tudo abaixo dele) deixa de existir
+                invalidarCache(noOrigem);
 
-            // Adiciona na lista do novo pai
-            dirDestino.adicionarFilho(noOrigem);
+                // Remove da lista do pai antigo
+                paiAntigo.removerFilho(noOrigem.getNome());
+
+                // Atualiza a referência de pai dentro do objeto (o nome não muda, então o índice de nomes continua válido)
+                noOrigem.pai = dirDestino;
+
+                // Adiciona na lista do novo pai
+                dirDestino.adicionarFilho(noOrigem);
+                comum.cacheCaminhos.avancarGeracao();
+            } finally {
+                destravar(travas);
+            }
+            atualizarCaminhoAtual();
 
             return "Sucesso: '" + noOrigem.getNome() + "' movido para '" + dirDestino.getNome() + "'";
 
         } catch (Exception e) {
-            return "Erro ao mover: " + e.getMessage();
+            return falha("Erro ao mover: " + e.getMessage());
         }
     }
 
+    // Trava dois diretórios para escrita sem risco de deadlock: o ancestral antes do descendente (a mesma ordem
+    // das caminhadas de cima para baixo); se não forem parentes, o de menor id primeiro
+    private List<Lock> travarEmOrdem(Diretorio a, Diretorio b) {
+        if (a == b) {
+            a.travaEscrita().lock();
+            aoTravarEscrita();
+            return List.of(a.travaEscrita());
+        }
+        boolean aPrimeiro = isAncestral(a, b) || (!isAncestral(b, a) && a.getId() < b.getId());
+        Lock primeira = (aPrimeiro ? a : b).travaEscrita();
+        Lock segunda = (aPrimeiro ? b : a).travaEscrita();
+        primeira.lock();
+        segunda.lock();
+        aoTravarEscrita();
+        return List.of(primeira, segunda);
+    }
+
+    private static void destravar(List<Lock> travas) {
+        for (int i = travas.size() - 1; i >= 0; i--) travas.get(i).unlock();
+    }
+
     // zip
     public String zip(String nomeZip, String caminhoAlvo) {
+        return registrarOperacao(Journal.ZIP, () -> zipInterno(nomeZip, caminhoAlvo), nomeZip, caminhoAlvo);
+    }
+
+    // zip
+    private String zipInterno(String nomeZip, String caminhoAlvo) {
         try {
 
             // Se o usuário não digitar .zip
@@ -1035,89 +2450,117 @@ public class SistemaArquivos {
             // O que compactar?
             NoSistema alvo = resolverCaminho(caminhoAlvo);
 
-            // Preparação do Conteúdo
-            StringBuilder dadosZip = new StringBuilder();
-
-            // Cabeçalho do arquivo
-            dadosZip.append("ARQUIVO ZIPADO\n");
-
-            /*
-             "compactarRecursivo" vai encher o StringBuilder com os dados da árvore
-             O segundo parâmetro "" é o prefixo do caminho (começa vazio)
-             */
-
-            compactarRecursivo(alvo, "", dadosZip);
-
             // Criação do Arquivo ZIP no sistema
             String resultadoTouch = touch(nomeZip);
 
             // Se o touch der erro
             if (resultadoTouch.startsWith("Erro") || resultadoTouch.startsWith("Permissão")) {
-                return resultadoTouch;
+                return falha(resultadoTouch);
             }
+            NoSistema noZip = resolverCaminho(nomeZip);
+            if (noZip.isDiretorio()) return falha("Erro: '" + nomeZip + "' é um diretório.");
+            Arquivo arquivoZip = (Arquivo) noZip;
+            // O zip é montado num arquivo solto e publicado de uma vez no fim: o diretório do zip não fica travado
+            // durante a compressão e ninguém lê um zip pela metade
+            Arquivo montagem = new Arquivo(arquivoZip.getNome(), null);
 
-            // Gravação dos dados
-            escreverNoArquivo(nomeZip, dadosZip.toString());
+            /*
+             Pipeline: percorre a árvore aqui, comprime cada arquivo nas threads do motor de percurso
+             e grava no zip na ordem do percurso (cada diretório antes do seu conteúdo)
+             No máximo 2 * paralelismo itens ficam em andamento: a memória não depende do tamanho da árvore
+             O caminho relativo começa pelo nome do próprio alvo
+             */
 
-            return "Sucesso: Arquivo '" + nomeZip + "' criado com o conteúdo de '" + alvo.getNome() + "'";
+            ContainerZip.Escritor escritor = new ContainerZip.Escritor(montagem);
+            JanelaOrdenada<ItemZip, Comprimido> janela = new JanelaOrdenada<>(2 * comum.motorPercurso.getParalelismo(),
+                    comum.motorPercurso::submeter, (item, dados) -> gravarNoZip(escritor, item, dados));
+            Deque<ItemZip> pilha = new ArrayDeque<>();
+            pilha.push(new ItemZip(alvo.getNome(), alvo));
+
+            while (!pilha.isEmpty()) {
+                ItemZip item = pilha.pop();
+                if (item.no() == arquivoZip) continue; // O próprio zip, se ele estiver dentro do alvo
+
+                if (item.no().isDiretorio()) {
+                    janela.enviar(item, null);
+                    // Empilhados ao contrário para sair na ordem dos filhos
+                    List<NoSistema> filhos = ((Diretorio) item.no()).listarFilhos(0, -1, true);
+                    for (int i = filhos.size() - 1; i >= 0; i--) {
+                        NoSistema filho = filhos.get(i);
+                        pilha.push(new ItemZip(item.caminho() + "/" + filho.getNome(), filho));
+                    }
+                } else {
+                    Arquivo arq = (Arquivo) item.no();
+                    janela.enviar(item, () -> comprimir(arq));
+                }
+            }
+            janela.concluir();
+
+            escritor.finalizar();
+            comDiretorioTravado(arquivoZip, true, () -> {
+                arquivoZip.copiarConteudoDe(montagem);
+                aoAlterarConteudo(arquivoZip, -1);
+                return null;
+            });
+
+            return "Sucesso: Arquivo '" + nomeZip + "' criado com o conteúdo de '" + alvo.getNome() + "' (" + escritor.getTotalEntradas() + " itens)";
 
         } catch (Exception e) {
-            return "Erro ao zipar: " + e.getMessage();
+            return falha("Erro ao zipar: " + e.getMessage());
         }
     }
 
+    // Um item do zip, com o caminho relativo dentro dele
+    private record ItemZip(String caminho, NoSistema no) {}
 
-    //Compactar recursivo
-    private void compactarRecursivo(NoSistema no, String caminhoRelativo, StringBuilder sb) {
-        String pathAtual = caminhoRelativo.isEmpty() ? no.getNome() : caminhoRelativo + "/" + no.getNome();
-
-        // Recupera metadados
-        String perms = no.getPermissoes();
-        String dono = no.getDono();
+    private record Comprimido(byte[] bytes, int tamanhoOriginal, int crc) {}
 
-        if (no.isArquivo()) {
-            Arquivo arq = (Arquivo) no;
-
-            // Usa a compressão REAL (Deflate+Base64) que fizemos antes
-            String conteudoComprimido = comprimir(arq.getConteudo());
-
-            // NOVO FORMATO: FILE | CAMINHO | PERMS | DONO | DADOS
-            sb.append("FILE|")
-                    .append(pathAtual).append("|")
-                    .append(perms).append("|")
-                    .append(dono).append("|")
-                    .append(conteudoComprimido).append("\n");
-
-        } else {
-            Diretorio dir = (Diretorio) no;
-
-            // NOVO FORMATO: DIR | CAMINHO | PERMS | DONO
-            sb.append("DIR|")
-                    .append(pathAtual).append("|")
-                    .append(perms).append("|")
-                    .append(dono).append("\n");
-
-            for(NoSistema filho : dir.getFilhos().values()) {
-                compactarRecursivo(filho, pathAtual, sb);
-            }
+    // 'dados' é null para diretórios
+    private void gravarNoZip(ContainerZip.Escritor escritor, ItemZip item, Comprimido dados) throws IOException {
+        if (dados == null) {
+            escritor.adicionarDiretorio(item.caminho(), item.no());
+            return;
         }
+        escritor.adicionarArquivo(item.caminho(), item.no(), dados.bytes(), dados.tamanhoOriginal(), dados.crc());
     }
 
     //Unzip
     public String unzip(String caminhoZip) {
+        return unzip(caminhoZip, null);
+    }
+
+    // unzip <zip> <entrada>: extrai só um item (e o que estiver dentro dele, se for um diretório)
+    public String unzip(String caminhoZip, String entrada) {
+        if (entrada == null) return registrarOperacao(Journal.UNZIP, () -> unzipInterno(caminhoZip, null), caminhoZip);
+        return registrarOperacao(Journal.UNZIP, () -> unzipInterno(caminhoZip, entrada), caminhoZip, entrada);
+    }
+
+    //Unzip
+    private String unzipInterno(String caminhoZip, String entrada) {
         try {
             Arquivo zipFile = obterArquivoTexto(caminhoZip);
-            String conteudoTotal = zipFile.getConteudo();
-            String[] linhas = conteudoTotal.split("\n");
-
-            if (linhas.length == 0 || !linhas[0].equals("ARQUIVO ZIPADO")) {
-                return "Erro: Arquivo corrompido ou formato inválido.";
+            if (!verificarPermissao(zipFile, 'r')) return falha("Permissão negada: Ler '" + zipFile.getNome() + "'");
+
+            if (comDiretorioTravado(zipFile, false, () -> ContainerZip.ehContainer(zipFile))) return extrairContainer(zipFile, entrada);
+            if (entrada != null) return falha("Erro: Extrair um único item exige o formato binário (recrie o zip).");
+
+            // Formato de texto antigo ("ARQUIVO ZIPADO" + uma linha por item)
+            // As linhas são copiadas antes: mkdir/touch abaixo travam outros diretórios (não pode segurar a do zip)
+            List<String> linhas = comDiretorioTravado(zipFile, false, () -> {
+                List<String> copia = new ArrayList<>(zipFile.getNumeroLinhas());
+                for (int i = 0; i < zipFile.getNumeroLinhas(); i++) copia.add(zipFile.getLinha(i));
+                return copia;
+            });
+            int totalLinhas = linhas.size();
+
+            if (totalLinhas == 0 || !linhas.get(0).equals("ARQUIVO ZIPADO")) {
+                return falha("Erro: Arquivo corrompido ou formato inválido.");
             }
 
             int itensProcessados = 0;
 
-            for (int i = 1; i < linhas.length; i++) {
-                String linha = linhas[i];
+            for (int i = 1; i < totalLinhas; i++) {
+                String linha = linhas.get(i);
                 if (linha.trim().isEmpty()) continue;
 
                 String[] partes = linha.split("\\|");
@@ -1159,7 +2602,99 @@ public class SistemaArquivos {
             return "Sucesso: " + itensProcessados + " itens restaurados com metadados.";
 
         } catch (Exception e) {
-            return "Erro no unzip: " + e.getMessage();
+            return falha("Erro no unzip: " + e.getMessage());
+        }
+    }
+
+    // Extrai do formato binário: lê só o diretório central e, de cada item escolhido, só o trecho dos seus dados
+    // Cada leitura do zip trava o diretório dele só durante a leitura (o CRC de cada item pega um zip trocado no meio)
+    private String extrairContainer(Arquivo zipFile, String entrada) throws IOException {
+        List<ContainerZip.Entrada> entradas = comDiretorioTravado(zipFile, false, () -> ContainerZip.lerEntradas(zipFile));
+
+        String prefixo = null;
+        if (entrada != null) {
+            while (entrada.endsWith("/") && entrada.length() > 1) entrada = entrada.substring(0, entrada.length() - 1);
+            prefixo = entrada + "/";
+        }
+
+        // Os dados comprimidos são lidos aqui, descomprimidos nas threads do motor e aplicados na ordem do zip
+        int[] itensProcessados = {0};
+        JanelaOrdenada<ContainerZip.Entrada, byte[]> janela = new JanelaOrdenada<>(2 * comum.motorPercurso.getParalelismo(),
+                comum.motorPercurso::submeter, (item, conteudo) -> restaurarItem(item, conteudo, itensProcessados));
+        boolean paisCriados = false;
+        for (ContainerZip.Entrada item : entradas) {
+            if (entrada != null && !item.caminho().equals(entrada) && !item.caminho().startsWith(prefixo)) continue;
+
+            // Um item isolado pode estar dentro de diretórios que ainda não existem aqui
+            if (entrada != null && !paisCriados) {
+                for (int barra = item.caminho().indexOf('/'); barra != -1; barra = item.caminho().indexOf('/', barra + 1)) {
+                    this.mkdir(item.caminho().substring(0, barra));
+                }
+                paisCriados = true;
+            }
+
+            if (item.diretorio()) {
+                janela.enviar(item, null);
+            } else {
+                byte[] comprimido = comDiretorioTravado(zipFile, false, () -> ContainerZip.lerDados(zipFile, item));
+                janela.enviar(item, () -> descomprimir(comprimido, item));
+            }
+        }
+        janela.concluir();
+
+        if (entrada != null && itensProcessados[0] == 0) return falha("Erro: '" + entrada + "' não está no zip.");
+        return "Sucesso: " + itensProcessados[0] + " itens restaurados com metadados.";
+    }
+
+    // 'conteudo' é o item já descomprimido (null para diretórios)
+    private void restaurarItem(ContainerZip.Entrada item, byte[] conteudo, int[] itensProcessados) throws IOException {
+        if (item.diretorio()) {
+            this.mkdir(item.caminho());
+        } else {
+            String resultado = this.touch(item.caminho());
+            if (resultado.startsWith("Erro") || resultado.startsWith("Permissão")) return;
+            // Bytes gravados como vieram (o arquivo pode ser binário)
+            NoSistema no;
+            try {
+                no = resolverCaminho(item.caminho());
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (!(no instanceof Arquivo arq) || !verificarPermissao(arq, 'w')) return;
+            comDiretorioTravado(arq, true, () -> {
+                arq.setBytes(conteudo);
+                aoAlterarConteudo(arq, -1);
+                return null;
+            });
+        }
+        aplicarMetadados(item.caminho(), item.modo(), item.dono());
+        itensProcessados[0]++;
+    }
+    // ZIP -L (Lista o conteúdo do zip lendo só o diretório central)
+    public String listarZip(String caminhoZip) {
+        try {
+            Arquivo zipFile = obterArquivoTexto(caminhoZip);
+            if (!verificarPermissao(zipFile, 'r')) return falha("Permissão negada: Ler '" + zipFile.getNome() + "'");
+            if (!comDiretorioTravado(zipFile, false, () -> ContainerZip.ehContainer(zipFile))) {
+                return falha("Erro: '" + caminhoZip + "' não é um zip no formato binário.");
+            }
+
+            List<ContainerZip.Entrada> entradas = comDiretorioTravado(zipFile, false, () -> ContainerZip.lerEntradas(zipFile));
+            StringBuilder sb = new StringBuilder();
+            long totalOriginal = 0;
+            long totalComprimido = 0;
+            sb.append(String.format("%-10s %-8s %10s %10s  %s%n", "Permissões", "Dono", "Tamanho", "Comprimido", "Caminho"));
+            for (ContainerZip.Entrada item : entradas) {
+                sb.append(String.format("%-10s %-8s %10d %10d  %s%s%n", NoSistema.formatarPermissoes(item.diretorio(), item.modo()), item.dono(),
+                        item.tamanhoOriginal(), item.tamanhoComprimido(), item.caminho(), item.diretorio() ? "/" : ""));
+                totalOriginal += item.tamanhoOriginal();
+                totalComprimido += item.tamanhoComprimido();
+            }
+            sb.append(String.format("%d itens, %d bytes (%d comprimidos)", entradas.size(), totalOriginal, totalComprimido));
+            return sb.toString();
+
+        } catch (Exception e) {
+            return falha("Erro: " + e.getMessage());
         }
     }
 
@@ -1168,64 +2703,115 @@ public class SistemaArquivos {
         try {
             NoSistema no = resolverCaminho(caminho);
             if (no != null) {
-                no.setPermissoes(perms);
-                no.setDono(dono);
+                comDiretorioTravado(no, true, () -> {
+                    no.setPermissoes(perms);
+                    no.setDono(dono);
+                    return null;
+                });
             }
         } catch (Exception e) {
             // Ignora silenciosamente se falhar ao aplicar metadados, pois o arquivo já foi criado
         }
     }
 
+    private void aplicarMetadados(String caminho, int modo, String dono) {
+        try {
+            NoSistema no = resolverCaminho(caminho);
+            comDiretorioTravado(no, true, () -> {
+                no.setModo(modo);
+                no.setDono(dono);
+                return null;
+            });
+        } catch (Exception e) {
+            // Ignora silenciosamente se falhar ao aplicar metadados, pois o arquivo já foi criado
+        }
+    }
+
     /**
-     * Deflate + Base64
-     * Usa o algoritmo padrão do ZIP (zlib) e codifica em texto legível.
+     * Deflate
+     * Usa o algoritmo padrão do ZIP (zlib); o CRC32 e o tamanho são do texto em UTF-8.
      */
 
-    private String comprimir(String texto) {
-        if (texto == null || texto.isEmpty()) return "";
+    private Comprimido comprimir(Arquivo arquivo) {
+        // Roda numa thread do motor: o arquivo é lido com o diretório dele travado para leitura
+        return comDiretorioTravado(arquivo, false, () -> comprimirTravado(arquivo));
+    }
 
-        try {
-            // Converte o texto para bytes
-            byte[] entrada = texto.getBytes("UTF-8");
+    private Comprimido comprimirTravado(Arquivo arquivo) {
+        if (arquivo.getTamanho() == 0) return new Comprimido(new byte[0], 0, 0);
 
-            // Configura o compressor
-            Deflater deflater = new Deflater();
-            deflater.setLevel(Deflater.BEST_COMPRESSION);
-            deflater.setInput(entrada);
-            deflater.finish();
+        // Compressor emprestado do pool (já configurado com BEST_COMPRESSION) e devolvido no final
+        Deflater deflater = comum.poolCompressao.emprestarDeflater();
+        try {
+            CRC32 crc = new CRC32();
 
             // Buffer para receber os dados comprimidos
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(entrada.length);
-            byte[] buffer = new byte[1024];
-
-            while (!deflater.finished()) {
-                int count = deflater.deflate(buffer);
-                outputStream.write(buffer, 0, count);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(arquivo.getTamanho());
+
+            // Os blocos do arquivo (já em bytes) são comprimidos um a um, sem montar o conteúdo inteiro
+            try (CheckedOutputStream saida = new CheckedOutputStream(new DeflaterOutputStream(outputStream, deflater), crc)) {
+                arquivo.paraCadaBloco((bloco, tamanho) -> {
+                    try {
+                        saida.write(bloco, 0, tamanho);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
             }
-            outputStream.close();
 
-            byte[] dadosComprimidos = outputStream.toByteArray();
+            return new Comprimido(outputStream.toByteArray(), (int) deflater.getBytesRead(), (int) crc.getValue());
 
-            // Converte binário feio para Texto Base64 (para salvar no seu sistema)
-            return Base64.getEncoder().encodeToString(dadosComprimidos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            comum.poolCompressao.devolver(deflater);
+        }
+    }
 
-        } catch (Exception e) {
-            return "Erro na compressão: " + e.getMessage();
+    // Descomprime uma entrada do formato binário conferindo tamanho e CRC32
+    private byte[] descomprimir(byte[] entrada, ContainerZip.Entrada item) throws IOException {
+        if (item.tamanhoOriginal() == 0) return new byte[0];
+        Inflater inflater = comum.poolCompressao.emprestarInflater();
+        try {
+            inflater.setInput(entrada);
+            // O tamanho original vem do cabeçalho: só limita o buffer, que cresce com os dados que saem de verdade
+            int declarado = item.tamanhoOriginal();
+            byte[] original = new byte[Math.min(declarado, Math.max(64 * 1024, entrada.length * 4))];
+            int total = 0;
+            while (!inflater.finished()) {
+                if (total == original.length) {
+                    if (total == declarado) break;
+                    original = Arrays.copyOf(original, (int) Math.min(declarado, 2L * total));
+                }
+                int lidos = inflater.inflate(original, total, original.length - total);
+                if (lidos == 0 && inflater.needsInput()) break;
+                total += lidos;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(original, 0, total);
+            if (total != declarado || (int) crc.getValue() != item.crc()) {
+                throw new IOException("'" + item.caminho() + "' corrompido (CRC não confere).");
+            }
+            return original;
+        } catch (DataFormatException e) {
+            throw new IOException("'" + item.caminho() + "' corrompido: " + e.getMessage());
+        } finally {
+            comum.poolCompressao.devolver(inflater);
         }
     }
 
     /**
-     * Descompactação
+     * Descompactação do formato de texto antigo (Deflate + Base64)
      */
     private String descomprimir(String textoComprimidoBase64) {
         if (textoComprimidoBase64 == null || textoComprimidoBase64.isEmpty()) return "";
 
+        // Descompressor emprestado do pool e devolvido no final
+        Inflater inflater = comum.poolCompressao.emprestarInflater();
         try {
             // Decodifica o texto Base64 de volta para binário
             byte[] entrada = Base64.getDecoder().decode(textoComprimidoBase64);
 
-            // Configura o descompressor
-            Inflater inflater = new Inflater();
             inflater.setInput(entrada);
 
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream(entrada.length);
@@ -1233,6 +2819,7 @@ public class SistemaArquivos {
 
             while (!inflater.finished()) {
                 int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsInput()) break; // Dados cortados: não fica preso no laço
                 outputStream.write(buffer, 0, count);
             }
             outputStream.close();
@@ -1243,6 +2830,13 @@ public class SistemaArquivos {
         } catch (Exception e) {
             // Se der erro (ex: tentar unzipar algo que não é zip), retorna o original ou erro
             return "Erro na descompressão: Arquivo corrompido ou formato inválido.";
+        } finally {
+            comum.poolCompressao.devolver(inflater);
         }
     }
+
+    // Quantos Deflaters/Inflaters o pool já criou (o resto das compressões reaproveitou algum)
+    public int getCompressoresCriados() {
+        return comum.poolCompressao.getCriados();
+    }
 }
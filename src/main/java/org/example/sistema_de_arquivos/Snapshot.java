@@ -0,0 +1,374 @@
+package org.example.sistema_de_arquivos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Snapshot binário da árvore inteira, gravado no disco do host
+//
+// Formato (big-endian):
+//   cabeçalho: MAGICO (int) | VERSAO (int)
+//   nós em pós-ordem (os filhos sempre antes do pai, então o pai já conhece o offset de cada filho):
+//     tipo (byte) | permissões (short) | dono (int) | data (long) | nome (int + UTF-8)
+//     arquivo:   tamanho em bytes (int) | conteúdo (int + bytes; até a versão 2 o tamanho era em caracteres)
+//     diretório: tamanho da subárvore (int) | total de nós (int) | quantidade de filhos (int) | offsets dos filhos (long[])
+//   tabela de usuários: quantidade (int) | nomes (int + UTF-8)
+//   rodapé: offset da raiz (long) | offset da tabela de usuários (long) | total de nós (long)
+//           | última operação do journal já incluída (long, a partir da versão 2) | MAGICO (int)
+//
+// A leitura mapeia o arquivo na memória e só monta os nós quando alguém olha para eles:
+// um diretório lê a lista de filhos no primeiro acesso e um arquivo decodifica o conteúdo na primeira leitura
+public class Snapshot {
+    private static final int MAGICO = 0x53414653; // "SAFS"
+    private static final int VERSAO = 3;
+    private static final int TAMANHO_RODAPE_V1 = 8 + 8 + 8 + 4;
+    private static final int TAMANHO_RODAPE = TAMANHO_RODAPE_V1 + 8;
+
+    private static final byte TIPO_ARQUIVO = 0;
+    private static final byte TIPO_DIRETORIO = 1;
+
+    // Cada MappedByteBuffer endereça no máximo 2 GB, então arquivos grandes são mapeados em segmentos de 1 GB
+    private static final int BITS_SEGMENTO = 30;
+    private static final long TAMANHO_SEGMENTO = 1L << BITS_SEGMENTO;
+
+    private final Path arquivo;
+    private final ByteBuffer[] segmentos;
+    private final long tamanhoArquivo;
+    private final long offsetRaiz;
+    private final long totalNos;
+    private final long seqJournal; // Operações do journal com sequência até aqui já estão no snapshot
+    private final int[] idsUsuarios; // ID gravado no snapshot -> ID na TabelaUsuarios atual
+
+    private Snapshot(Path arquivo, ByteBuffer[] segmentos, long tamanhoArquivo) throws IOException {
+        this.arquivo = arquivo;
+        this.segmentos = segmentos;
+        this.tamanhoArquivo = tamanhoArquivo;
+
+        if (tamanhoArquivo < 8 + TAMANHO_RODAPE_V1 || lerInt(0) != MAGICO || lerInt(tamanhoArquivo - 4) != MAGICO) {
+            throw new IOException("'" + arquivo + "' não é um snapshot válido.");
+        }
+        int versao = lerInt(4);
+        if (versao < 1 || versao > VERSAO) {
+            throw new IOException("Versão de snapshot não suportada: " + versao);
+        }
+
+        // A versão 1 não tinha a sequência do journal no rodapé
+        long rodape = tamanhoArquivo - (versao == 1 ? TAMANHO_RODAPE_V1 : TAMANHO_RODAPE);
+        this.offsetRaiz = lerLong(rodape);
+        long offsetUsuarios = lerLong(rodape + 8);
+        this.totalNos = lerLong(rodape + 16);
+        this.seqJournal = versao == 1 ? 0 : lerLong(rodape + 24);
+
+        int quantidadeUsuarios = lerInt(offsetUsuarios);
+        this.idsUsuarios = new int[quantidadeUsuarios];
+        long posicao = offsetUsuarios + 4;
+        for (int i = 0; i < quantidadeUsuarios; i++) {
+            int tamanho = lerInt(posicao);
+            idsUsuarios[i] = TabelaUsuarios.idDe(lerTexto(posicao + 4, tamanho));
+            posicao += 4 + tamanho;
+        }
+    }
+
+    // Mapeia o arquivo (só leitura) e valida cabeçalho e rodapé; nenhum nó é lido aqui
+    public static Snapshot abrir(Path arquivo) throws IOException {
+        if (!Files.isRegularFile(arquivo)) throw new IOException("Arquivo não encontrado: " + arquivo);
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            int quantidade = (int) ((tamanho + TAMANHO_SEGMENTO - 1) >>> BITS_SEGMENTO);
+            ByteBuffer[] segmentos = new ByteBuffer[Math.max(1, quantidade)];
+            for (int i = 0; i < segmentos.length; i++) {
+                long inicio = (long) i << BITS_SEGMENTO;
+                long tamanhoSegmento = Math.min(TAMANHO_SEGMENTO, tamanho - inicio);
+                segmentos[i] = canal.map(FileChannel.MapMode.READ_ONLY, inicio, Math.max(0, tamanhoSegmento));
+            }
+            // O mapeamento continua válido depois de fechar o canal
+            return new Snapshot(arquivo, segmentos, tamanho);
+        }
+    }
+
+    public Path getArquivo() { return arquivo; }
+    public long getTotalNos() { return totalNos; }
+    public long getSeqJournal() { return seqJournal; }
+    public long getTamanhoArquivo() { return tamanhoArquivo; }
+
+    // Monta só a raiz: os filhos ficam para o primeiro acesso
+    public void carregarRaiz(Diretorio raiz) {
+        lerMetadados(raiz, offsetRaiz);
+        long posicao = posicaoDepoisDoNome(offsetRaiz);
+        raiz.ligarSnapshot(this, posicao + 8, lerInt(posicao), lerInt(posicao + 4));
+    }
+
+    // Chamado pelo Diretorio no primeiro acesso aos filhos
+    // 'posicao' aponta para a quantidade de filhos do registro do diretório
+    NavigableMap<String, NoSistema> carregarFilhos(Diretorio dir, long posicao) {
+        int quantidade = lerInt(posicao);
+        TreeMap<String, NoSistema> filhos = new TreeMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            NoSistema filho = criarNo(dir, lerLong(posicao + 4 + 8L * i));
+            filhos.put(filho.getNome(), filho);
+        }
+        return filhos;
+    }
+
+    // Chamado pelo Arquivo na primeira leitura do conteúdo
+    // 'posicao' aponta para o tamanho em bytes do conteúdo
+    byte[] carregarConteudo(long posicao) {
+        return lerBytes(posicao + 4, lerInt(posicao));
+    }
+
+    private NoSistema criarNo(Diretorio pai, long offset) {
+        byte tipo = lerByte(offset);
+        String nome = lerTexto(offset + 19, lerInt(offset + 15));
+        long posicao = posicaoDepoisDoNome(offset);
+
+        NoSistema no;
+        if (tipo == TIPO_ARQUIVO) {
+            Arquivo arq = new Arquivo(nome, pai);
+            // Tamanho tirado do prefixo do conteúdo: em bytes também nos snapshots antigos
+            arq.ligarSnapshot(this, posicao + 4, lerInt(posicao + 4));
+            no = arq;
+        } else {
+            Diretorio dir = new Diretorio(nome, pai);
+            dir.ligarSnapshot(this, posicao + 8, lerInt(posicao), lerInt(posicao + 4));
+            no = dir;
+        }
+        lerMetadados(no, offset);
+        // Está no disco desde que a árvore foi aberta: não mudou desde nenhum snapshot dela (ver NoSistema.preservarCaminho)
+        no.epoca = 0;
+        return no;
+    }
+
+    private void lerMetadados(NoSistema no, long offset) {
+        no.permissoes = lerShort(offset + 1);
+        int idGravado = lerInt(offset + 3);
+        no.idDono = idGravado >= 0 && idGravado < idsUsuarios.length ? idsUsuarios[idGravado] : TabelaUsuarios.USER;
+        no.dataModificacao = lerLong(offset + 7);
+    }
+
+    private long posicaoDepoisDoNome(long offset) {
+        return offset + 19 + lerInt(offset + 15);
+    }
+
+    // --- Leitura do arquivo mapeado (posições long, atravessando segmentos quando preciso) ---
+
+    private byte lerByte(long posicao) {
+        return segmentos[(int) (posicao >>> BITS_SEGMENTO)].get((int) (posicao & (TAMANHO_SEGMENTO - 1)));
+    }
+
+    private short lerShort(long posicao) {
+        ByteBuffer segmento = segmentos[(int) (posicao >>> BITS_SEGMENTO)];
+        int local = (int) (posicao & (TAMANHO_SEGMENTO - 1));
+        if (local + 2 <= segmento.limit()) return segmento.getShort(local);
+        return (short) (((lerByte(posicao) & 0xFF) << 8) | (lerByte(posicao + 1) & 0xFF));
+    }
+
+    private int lerInt(long posicao) {
+        ByteBuffer segmento = segmentos[(int) (posicao >>> BITS_SEGMENTO)];
+        int local = (int) (posicao & (TAMANHO_SEGMENTO - 1));
+        if (local + 4 <= segmento.limit()) return segmento.getInt(local);
+        return ((lerShort(posicao) & 0xFFFF) << 16) | (lerShort(posicao + 2) & 0xFFFF);
+    }
+
+    private long lerLong(long posicao) {
+        ByteBuffer segmento = segmentos[(int) (posicao >>> BITS_SEGMENTO)];
+        int local = (int) (posicao & (TAMANHO_SEGMENTO - 1));
+        if (local + 8 <= segmento.limit()) return segmento.getLong(local);
+        return ((long) lerInt(posicao) << 32) | (lerInt(posicao + 4) & 0xFFFFFFFFL);
+    }
+
+    private String lerTexto(long posicao, int tamanho) {
+        return new String(lerBytes(posicao, tamanho), StandardCharsets.UTF_8);
+    }
+
+    private byte[] lerBytes(long posicao, int tamanho) {
+        byte[] bytes = new byte[tamanho];
+        int copiados = 0;
+        while (copiados < tamanho) {
+            long atual = posicao + copiados;
+            ByteBuffer segmento = segmentos[(int) (atual >>> BITS_SEGMENTO)];
+            int local = (int) (atual & (TAMANHO_SEGMENTO - 1));
+            int quantidade = Math.min(tamanho - copiados, segmento.limit() - local);
+            segmento.get(local, bytes, copiados, quantidade);
+            copiados += quantidade;
+        }
+        return bytes;
+    }
+
+    // --- Gravação ---
+
+    // Grava a árvore inteira em 'destino' e devolve o total de nós gravados
+    // Escreve num arquivo temporário e troca no final: um snapshot antigo (talvez ainda mapeado) nunca fica pela metade
+    public static long salvar(Diretorio raiz, Path destino) throws IOException {
+        return salvar(raiz, destino, 0);
+    }
+
+    // 'seqJournal': última operação do journal que já está refletida na árvore (usado no checkpoint)
+    public static long salvar(Diretorio raiz, Path destino, long seqJournal) throws IOException {
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        long totalNos;
+        try (Escritor escritor = new Escritor(FileChannel.open(temporario,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            escritor.escreverInt(MAGICO);
+            escritor.escreverInt(VERSAO);
+
+            Map<Integer, Integer> idsGravados = new HashMap<>();
+            List<String> usuarios = new ArrayList<>();
+            long[] contador = new long[1];
+
+            // Percurso sequencial: os registros precisam sair um depois do outro, na ordem do arquivo
+            long offsetRaiz = MotorPercurso.percorrerIterativo(raiz, null, new MotorPercurso.Visitante<Void, Long>() {
+                @Override
+                public Collection<NoSistema> filhos(Diretorio dir, Void contexto) {
+                    return dir.getFilhosOrdenados(true);
+                }
+
+                @Override
+                public Void contextoFilho(NoSistema filho, int indice, int total, Void contextoPai) {
+                    return null;
+                }
+
+                @Override
+                public Long visitarArquivo(Arquivo arq, Void contexto) {
+                    long offset = escreverMetadados(arq, TIPO_ARQUIVO);
+                    escritor.escreverInt(arq.getTamanho());
+                    // Os blocos vão direto para o disco, sem montar o conteúdo nem recodificar
+                    escritor.escreverInt(arq.getTamanho());
+                    arq.paraCadaBloco(escritor::escreverBytes);
+                    return offset;
+                }
+
+                @Override
+                public Long visitarDiretorio(Diretorio dir, Void contexto, List<Long> offsetsFilhos) {
+                    long offset = escreverMetadados(dir, TIPO_DIRETORIO);
+                    escritor.escreverInt(dir.getTamanho());
+                    escritor.escreverInt(dir.getTotalNos());
+                    escritor.escreverInt(offsetsFilhos.size());
+                    for (long offsetFilho : offsetsFilhos) escritor.escreverLong(offsetFilho);
+                    return offset;
+                }
+
+                private long escreverMetadados(NoSistema no, byte tipo) {
+                    contador[0]++;
+                    long offset = escritor.getPosicao();
+                    escritor.escreverByte(tipo);
+                    escritor.escreverShort((short) no.getModo());
+                    escritor.escreverInt(idsGravados.computeIfAbsent(no.getIdDono(), id -> {
+                        usuarios.add(TabelaUsuarios.nomeDe(id));
+                        return usuarios.size() - 1;
+                    }));
+                    escritor.escreverLong(no.getDataModificacao());
+                    escritor.escreverTexto(no.getNome());
+                    return offset;
+                }
+            });
+
+            long offsetUsuarios = escritor.getPosicao();
+            escritor.escreverInt(usuarios.size());
+            for (String usuario : usuarios) escritor.escreverTexto(usuario);
+
+            escritor.escreverLong(offsetRaiz);
+            escritor.escreverLong(offsetUsuarios);
+            escritor.escreverLong(contador[0]);
+            escritor.escreverLong(seqJournal);
+            escritor.escreverInt(MAGICO);
+            escritor.forcar();
+            totalNos = contador[0];
+        }
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return totalNos;
+    }
+
+    // Escrita bufferizada num FileChannel, contando a posição absoluta (arquivos podem passar de 2 GB)
+    private static class Escritor implements AutoCloseable {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private long posicao;
+
+        Escritor(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        long getPosicao() {
+            return posicao;
+        }
+
+        private void garantir(int bytes) {
+            if (buffer.remaining() < bytes) esvaziar();
+        }
+
+        void escreverByte(byte valor) {
+            garantir(1);
+            buffer.put(valor);
+            posicao += 1;
+        }
+
+        void escreverShort(short valor) {
+            garantir(2);
+            buffer.putShort(valor);
+            posicao += 2;
+        }
+
+        void escreverInt(int valor) {
+            garantir(4);
+            buffer.putInt(valor);
+            posicao += 4;
+        }
+
+        void escreverLong(long valor) {
+            garantir(8);
+            buffer.putLong(valor);
+            posicao += 8;
+        }
+
+        void escreverTexto(String texto) {
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            escreverInt(bytes.length);
+            escreverBytes(bytes, bytes.length);
+        }
+
+        // Os primeiros 'tamanho' bytes do array, sem prefixo de tamanho
+        void escreverBytes(byte[] bytes, int tamanho) {
+            int escritos = 0;
+            while (escritos < tamanho) {
+                garantir(1);
+                int quantidade = Math.min(buffer.remaining(), tamanho - escritos);
+                buffer.put(bytes, escritos, quantidade);
+                escritos += quantidade;
+            }
+            posicao += tamanho;
+        }
+
+        private void esvaziar() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) canal.write(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+
+        void forcar() throws IOException {
+            esvaziar();
+            canal.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+}
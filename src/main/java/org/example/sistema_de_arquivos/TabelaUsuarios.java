@@ -0,0 +1,42 @@
+package org.example.sistema_de_arquivos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tabela global de usuários: cada nome recebe um ID inteiro uma única vez
+// Os nós guardam só o ID do dono; o nome é buscado aqui na hora de exibir (ls -l, stat)
+public final class TabelaUsuarios {
+    public static final int ROOT = 0;
+    public static final int USER = 1;
+
+    private static final Map<String, Integer> idsPorNome = new HashMap<>();
+    private static final List<String> nomesPorId = new ArrayList<>();
+
+    static {
+        idDe("root");
+        idDe("user");
+    }
+
+    private TabelaUsuarios() {
+    }
+
+    // Devolve o ID do usuário, registrando o nome se for a primeira vez
+    public static synchronized int idDe(String nome) {
+        Integer id = idsPorNome.get(nome);
+        if (id != null) return id;
+
+        nomesPorId.add(nome);
+        idsPorNome.put(nome, nomesPorId.size() - 1);
+        return nomesPorId.size() - 1;
+    }
+
+    public static synchronized String nomeDe(int id) {
+        return id >= 0 && id < nomesPorId.size() ? nomesPorId.get(id) : String.valueOf(id);
+    }
+
+    public static synchronized int getTotalUsuarios() {
+        return nomesPorId.size();
+    }
+}
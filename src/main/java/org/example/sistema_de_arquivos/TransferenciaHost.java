@@ -0,0 +1,211 @@
+package org.example.sistema_de_arquivos;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// Import e export de árvores reais do disco do host (java.nio.file)
+// - O percurso e a montagem/leitura da árvore simulada são sequenciais
+// - Ler e gravar o conteúdo dos arquivos (a parte cara) roda em paralelo, com uma janela limitada de tarefas
+public class TransferenciaHost {
+
+    // Resumo de uma transferência (usado para a mensagem de arquivos/s e MB/s)
+    public record Relatorio(int diretorios, int arquivos, long bytes, int ignorados, long nanos) {
+        public String formatar(String operacao) {
+            double segundos = Math.max(nanos, 1) / 1e9;
+            return String.format("%s: %d diretórios, %d arquivos, %d bytes em %.1f ms (%.0f arquivos/s, %.1f MB/s)%s",
+                    operacao, diretorios, arquivos, bytes, nanos / 1e6, arquivos / segundos, bytes / segundos / (1024 * 1024),
+                    ignorados > 0 ? " | " + ignorados + " itens ignorados" : "");
+        }
+    }
+
+    private final int threads;
+
+    // A leitura/gravação é limitada pelo disco, não pela CPU: vale ter mais threads que núcleos
+    public TransferenciaHost(int paralelismo) {
+        this.threads = Math.max(4, 2 * paralelismo);
+    }
+
+    // --- Import ---
+
+    // Monta uma cópia de 'origem' como filho (ainda não ligado) de 'pai'
+    // 'nomeValido' filtra nomes que o simulador não aceita; esses itens (e o que estiver abaixo deles) são ignorados
+    public Importacao importar(Path origem, Diretorio pai, Predicate<String> nomeValido) throws IOException {
+        long inicio = System.nanoTime();
+        Map<Path, Diretorio> diretorios = new HashMap<>();
+        List<Arquivo> arquivos = new ArrayList<>();
+        List<Path> caminhosArquivos = new ArrayList<>();
+        NoSistema[] raiz = new NoSistema[1];
+        int[] ignorados = {0};
+
+        // 1. Percurso sequencial do host, criando os nós (sem conteúdo)
+        Files.walkFileTree(origem, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes atributos) {
+                Diretorio paiNo = dir.equals(origem) ? pai : diretorios.get(dir.getParent());
+                String nome = nomeDe(dir);
+                if (!nomeValido.test(nome)) {
+                    ignorados[0]++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Diretorio novo = new Diretorio(nome, paiNo);
+                aplicarAtributos(novo, dir, atributos);
+                if (dir.equals(origem)) raiz[0] = novo;
+                else paiNo.adicionarFilho(novo);
+                diretorios.put(dir, novo);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path arquivo, BasicFileAttributes atributos) {
+                String nome = nomeDe(arquivo);
+                // Links simbólicos e arquivos especiais não existem no simulador
+                if (!atributos.isRegularFile() || !nomeValido.test(nome)) {
+                    ignorados[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+                Diretorio paiNo = arquivo.equals(origem) ? pai : diretorios.get(arquivo.getParent());
+                Arquivo novo = new Arquivo(nome, paiNo);
+                aplicarAtributos(novo, arquivo, atributos);
+                if (arquivo.equals(origem)) raiz[0] = novo;
+                else paiNo.adicionarFilho(novo);
+                arquivos.add(novo);
+                caminhosArquivos.add(arquivo);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path arquivo, IOException e) {
+                ignorados[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (raiz[0] == null) throw new IOException("Nada para importar em '" + origem + "'.");
+
+        // 2. Leitura paralela; o conteúdo é aplicado aqui, na ordem, então a árvore só é alterada por esta thread
+        long[] bytes = {0};
+        JanelaOrdenada.emParalelo(caminhosArquivos.size(), threads, i -> Files.readAllBytes(caminhosArquivos.get(i)), (i, conteudo) -> {
+            Arquivo arq = arquivos.get(i);
+            long data = arq.dataModificacao;
+            arq.setBytes(conteudo); // Bytes do host sem conversão (arquivos binários também)
+            arq.dataModificacao = data; // Mantém a data do host
+            bytes[0] += conteudo.length;
+        });
+
+        Relatorio relatorio = new Relatorio(diretorios.size(), arquivos.size(), bytes[0], ignorados[0], System.nanoTime() - inicio);
+        return new Importacao(raiz[0], relatorio);
+    }
+
+    public record Importacao(NoSistema raiz, Relatorio relatorio) {}
+
+    private static String nomeDe(Path caminho) {
+        Path nome = caminho.getFileName();
+        return nome == null ? caminho.toString() : nome.toString();
+    }
+
+    // Permissões e dono do host, quando o sistema de arquivos é POSIX; senão ficam os padrões do simulador
+    private static void aplicarAtributos(NoSistema no, Path caminho, BasicFileAttributes basicos) {
+        no.dataModificacao = basicos.lastModifiedTime().toMillis();
+        try {
+            PosixFileAttributes posix = Files.readAttributes(caminho, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            int modo = 0;
+            for (PosixFilePermission permissao : posix.permissions()) modo |= bitDe(permissao);
+            no.permissoes = (short) modo;
+            no.idDono = TabelaUsuarios.idDe(posix.owner().getName());
+        } catch (UnsupportedOperationException | IOException e) {
+            // Mantém os padrões
+        }
+    }
+
+    // PosixFilePermission segue a ordem OWNER_READ..OTHERS_EXECUTE, igual aos bits 0400..01
+    private static int bitDe(PosixFilePermission permissao) {
+        return 1 << (8 - permissao.ordinal());
+    }
+
+    // --- Export ---
+
+    // Grava 'origem' em 'destino' (que passa a ser o caminho do próprio nó no host)
+    // 'legivel' decide o que o usuário pode exportar; o resto é ignorado
+    public Relatorio exportar(NoSistema origem, Path destino, Predicate<NoSistema> legivel) throws IOException {
+        long inicio = System.nanoTime();
+        List<Arquivo> arquivos = new ArrayList<>();
+        List<Path> caminhosArquivos = new ArrayList<>();
+        List<Diretorio> diretorios = new ArrayList<>();
+        List<Path> caminhosDiretorios = new ArrayList<>();
+        int ignorados = 0;
+
+        // 1. Percurso sequencial da árvore simulada, criando os diretórios no host
+        Deque<NoSistema> pilha = new ArrayDeque<>();
+        Deque<Path> destinos = new ArrayDeque<>();
+        pilha.push(origem);
+        destinos.push(destino);
+        while (!pilha.isEmpty()) {
+            NoSistema no = pilha.pop();
+            Path alvo = destinos.pop();
+            if (!legivel.test(no)) {
+                ignorados++;
+                continue;
+            }
+            if (no.isArquivo()) {
+                arquivos.add((Arquivo) no);
+                caminhosArquivos.add(alvo);
+                continue;
+            }
+            Files.createDirectories(alvo);
+            diretorios.add((Diretorio) no);
+            caminhosDiretorios.add(alvo);
+            for (NoSistema filho : ((Diretorio) no).getFilhosOrdenados(true)) {
+                pilha.push(filho);
+                destinos.push(alvo.resolve(filho.getNome()));
+            }
+        }
+
+        // 2. Gravação paralela dos arquivos
+        long[] bytes = {0};
+        JanelaOrdenada.emParalelo(arquivos.size(), threads, i -> {
+            Arquivo arquivo = arquivos.get(i);
+            byte[] conteudo = SistemaArquivos.comDiretorioTravado(arquivo, false, arquivo::getBytes);
+            Path alvo = caminhosArquivos.get(i);
+            Files.write(alvo, conteudo);
+            aplicarNoHost(arquivos.get(i), alvo);
+            return conteudo.length;
+        }, (i, tamanho) -> bytes[0] += tamanho);
+
+        // 3. Permissões dos diretórios por último (de baixo para cima): um 'd---------' antes bloquearia a gravação dos filhos
+        for (int i = diretorios.size() - 1; i >= 0; i--) {
+            aplicarNoHost(diretorios.get(i), caminhosDiretorios.get(i));
+        }
+
+        return new Relatorio(diretorios.size(), arquivos.size(), bytes[0], ignorados, System.nanoTime() - inicio);
+    }
+
+    // Permissões e data no host (o dono não é alterado: exigiria privilégios e o usuário pode não existir no host)
+    private static void aplicarNoHost(NoSistema no, Path alvo) throws IOException {
+        Files.setLastModifiedTime(alvo, FileTime.fromMillis(no.getDataModificacao()));
+        PosixFileAttributeView visao = Files.getFileAttributeView(alvo, PosixFileAttributeView.class);
+        if (visao == null) return;
+        Set<PosixFilePermission> permissoes = EnumSet.noneOf(PosixFilePermission.class);
+        for (PosixFilePermission permissao : PosixFilePermission.values()) {
+            if (no.temBit(bitDe(permissao))) permissoes.add(permissao);
+        }
+        visao.setPermissions(permissoes);
+    }
+}